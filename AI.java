@@ -1,8 +1,13 @@
 package jump61;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
-/** An automated Player.
+/** An automated Player.  Searches run asynchronously on a private copy of
+ *  the position, so that the game's board is never touched by the search
+ *  and the game may keep accepting commands while this thinks.
  *  @author Austin Gandy
  */
 class AI extends Player {
@@ -18,93 +23,548 @@ class AI extends Player {
         _maxDepth = maxDepth;
     }
 
+    /** A new player of no particular game, playing COLOR and looking
+     *  MAXDEPTH moves ahead, that chooses moves on positions passed to
+     *  chooseMove. */
+    AI(Color color, int maxDepth) {
+        this(null, color, maxDepth, null);
+    }
+
     @Override
     void makeMove() {
-        int[] bestMove = new int[2];
-        bestMove[0] = 1;
-        bestMove[1] = 1;
-        minimax(_maxDepth, _board, _color,  -Integer.MAX_VALUE,
-                Integer.MAX_VALUE, bestMove);
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        int[] bestMove = _game.awaitMove(this, findMove());
+        if (event.shouldCommit()) {
+            event.player = _color.toString();
+            event.depth = _maxDepth;
+            event.nodes = _nodes;
+            event.moved = bestMove != null;
+            event.commit();
+        }
+        if (bestMove == null) {
+            return;
+        }
         String message = _color + " moves " + bestMove[0] + " " + bestMove[1]
                 + "\n";
         _game.message(message);
         _game.makeMove(bestMove[0],  bestMove[1]);
     }
 
+    /** Start a search for my best move in the current position and return
+     *  a future that yields its row and column.  The search works on a
+     *  copy of my board taken now, so later changes to the board do not
+     *  affect it.  The future completes early, with the best move found so
+     *  far, if stop() is called or the search uses up the budget of my
+     *  game's session.  The search is run by the shared SearchScheduler,
+     *  at the priority my game asks for. */
+    CompletableFuture<int[]> findMove() {
+        final MutableBoard position = _engine.copy(_board);
+        _stopped = false;
+        _nodes = 0;
+        return SearchScheduler.shared()
+            .submit(_game.session(), _game.searchPriority(),
+                    () -> searchMove(position));
+    }
+
+    /** Return my best move on POSITION as its row and column, searching a
+     *  copy of POSITION on the calling thread. */
+    int[] chooseMove(Board position) {
+        _stopped = false;
+        _nodes = 0;
+        return searchMove(_engine.copy(position));
+    }
+
+    /** Cause any search in progress to finish as soon as possible,
+     *  yielding the best move found so far. */
+    void stop() {
+        _stopped = true;
+        Solver solver = _solver;
+        if (solver != null) {
+            solver.stop();
+        }
+        RemoteSearch remote = _remote;
+        if (remote != null) {
+            remote.cancel();
+        }
+    }
+
+    /** Return the score, from my point of view, of my move at row R,
+     *  column C on B, searching the replies to my maximum depth less one.
+     *  B is restored on return.  If stop() is called during the search,
+     *  the result is meaningless. */
+    int scoreMove(MutableBoard b, int r, int c) {
+        _stopped = false;
+        _nodes = 0;
+        begin(b);
+        b.addSpot(_color, r, c);
+        int score = minimax(_maxDepth - 1, b, _color.opposite(),
+                            -Integer.MAX_VALUE, Integer.MAX_VALUE, null);
+        b.undo();
+        return score;
+    }
+
+    /** Return true iff stop() was called during my current or most recent
+     *  search. */
+    boolean stopped() {
+        return _stopped;
+    }
+
+    /** Return the best move for me on B, which is private to this
+     *  search.  Starts a new generation of the cache used, so that deeper
+     *  entries left by earlier searches may give way to this one's. */
+    private int[] searchMove(MutableBoard b) {
+        begin(b);
+        if (_searchCache != null) {
+            _searchCache.newGeneration();
+        }
+        int[] bestMove = new int[2];
+        ArrayList<Integer> moves = findValidMoves(_color, b);
+        if (moves.isEmpty()) {
+            bestMove[0] = bestMove[1] = 1;
+        } else {
+            bestMove[0] = moves.get(0);
+            bestMove[1] = moves.get(1);
+        }
+        if (!moves.isEmpty() && solved(b, bestMove)) {
+            return bestMove;
+        }
+        if (_remote != null && _seed == null && b.accumulator() == null
+            && !moves.isEmpty()) {
+            return searchRemotely(b, bestMove);
+        }
+        _score = minimax(_maxDepth, b, _color,  -Integer.MAX_VALUE,
+                         Integer.MAX_VALUE, bestMove);
+        return bestMove;
+    }
+
+    /** Prepare for a search of B on the current thread, evaluating B
+     *  with my network if it fits B.  Scores from the network are not
+     *  comparable with those in a shared cache, so such a search uses my
+     *  private cache instead.  If I am seeded, this clears my private
+     *  cache and my solver and seeds my random choices from my seed and B,
+     *  so that the search depends only on those. */
+    private void begin(MutableBoard b) {
+        _task = SearchScheduler.current();
+        _searchCache = _cache;
+        _random = null;
+        b.setNetwork(_network);
+        Long seed = _seed;
+        if (_cache != null && (seed != null || b.accumulator() != null)) {
+            if (_ownCache == null) {
+                _ownCache = new SearchCache(OWN_CACHE_BITS);
+            }
+            _searchCache = _ownCache;
+        }
+        if (seed == null) {
+            return;
+        }
+        _random = new Random(seed * SEED_MULTIPLIER
+                             ^ SearchCache.key(b, b.whoseMove()));
+        if (_ownCache != null) {
+            _ownCache.clear();
+        }
+        if (_solver != null) {
+            _solver.clear();
+        }
+    }
+
+    /** If B is tactical (see Solver.tactical) and the solver can prove,
+     *  within my node budget, that I can force a win on it, set BESTMOVE
+     *  to a winning move and return true.  Otherwise return false. */
+    private boolean solved(MutableBoard b, int[] bestMove) {
+        if (_solverNodes == 0 || !Solver.tactical(b)) {
+            return false;
+        }
+        if (_solver == null) {
+            _solver = new Solver(SOLVER_BITS);
+        }
+        if (_solver.solve(b, _solverNodes) != Solver.WIN || _stopped) {
+            return false;
+        }
+        int move = _solver.move();
+        bestMove[0] = move / b.size() + 1;
+        bestMove[1] = move % b.size() + 1;
+        _score = WINNING_VALUE + _maxDepth;
+        return true;
+    }
+
+    /** Return the best move for me on B, scoring each of my moves on the
+     *  workers of _remote, or BESTMOVE if none is finished before stop()
+     *  is called. */
+    private int[] searchRemotely(MutableBoard b, int[] bestMove) {
+        _score = staticEval(_color, b);
+        if (_stopped) {
+            return bestMove;
+        }
+        boolean found = false;
+        for (Analysis.Line line : _remote.scoreMoves(b, _maxDepth)) {
+            if (!found || line.score() > _score) {
+                found = true;
+                _score = line.score();
+                bestMove[0] = line.row();
+                bestMove[1] = line.col();
+            }
+        }
+        return bestMove;
+    }
+
     /** Recurses through all possible moves DEPTH moves forward on board B
      *  determining what is best for player P on board B updating ALPHA and
      *  BETA as it goes to prune the tree accordingly. Updates BESTMOVE and
-     *  returns the score of the best move. */
+     *  returns the score of the best move, which is always from my point
+     *  of view.  Once stop() has been called, returns promptly without
+     *  updating BESTMOVE further. */
     private int minimax(int depth, MutableBoard b, Color p,
             int alpha, int beta, int[] bestMove) {
         int score;
-        if (depth == 0) {
-            return staticEval(p, b);
+        _nodes += 1;
+        if ((_nodes & (CHECKPOINT_NODES - 1)) == 0 && _task != null
+            && !_task.checkpoint() && _seed == null) {
+            _stopped = true;
         }
-        ArrayList<Integer> children = findValidMoves(p, b);
-        if (p == _color) {
-            for (int i = 0; i < children.size(); i += 2) {
-                b.addSpot(p,  children.get(i), children.get(i + 1));
-                score = minimax(depth - 1, b, p.opposite(), alpha, beta,
-                        bestMove);
-                b.undo();
-                if (score > alpha) {
-                    alpha = score;
-                    if (depth == _maxDepth) {
-                        bestMove[0] = children.get(i);
-                        bestMove[1] = children.get(i + 1);
+        if (depth == 0 || _stopped) {
+            return staticEval(_color, b);
+        }
+        if (b.numOfColor(_color) == b.size() * b.size()) {
+            return WINNING_VALUE + depth;
+        } else if (b.numOfColor(_color.opposite())
+                   == b.size() * b.size()) {
+            return -WINNING_VALUE - depth;
+        }
+        long key = 0;
+        int alpha0 = alpha, beta0 = beta, cached = -1;
+        if (_searchCache != null && depth < _maxDepth) {
+            key = SearchCache.key(b, p);
+            long entry = _searchCache.probe(key);
+            if (entry != 0) {
+                cached = SearchCache.move(entry);
+                if (SearchCache.depth(entry) >= depth) {
+                    score = SearchCache.score(entry);
+                    int bound = SearchCache.bound(entry);
+                    if (p != _color) {
+                        score = -score;
+                        bound = bound == SearchCache.EXACT ? bound
+                            : SearchCache.LOWER + SearchCache.UPPER - bound;
                     }
-                } else if (alpha >= beta) {
-                    break;
+                    if (bound == SearchCache.EXACT
+                        || bound == SearchCache.LOWER && score >= beta
+                        || bound == SearchCache.UPPER && score <= alpha) {
+                        return score;
+                    }
+                }
+            }
+        }
+        ArrayList<Integer> children = findValidMoves(p, b);
+        if (depth == _maxDepth && _random != null) {
+            shuffle(children, b);
+        }
+        if (cached >= 0) {
+            first(children, b.row(cached), b.col(cached));
+        }
+        int best = -1;
+        boolean futile = depth == 1 && _pruning.contains(Pruning.FUTILITY)
+            && futile(b, p, alpha, beta);
+        for (int i = 0, k = 0; i < children.size(); i += 2, k += 1) {
+            int r = children.get(i), c = children.get(i + 1);
+            boolean cascade = cascades(b, r, c);
+            if (futile && !cascade) {
+                continue;
+            }
+            score = searchMove(depth, k, cascade, b, p, r, c, alpha, beta,
+                               bestMove);
+            if (_stopped) {
+                break;
+            }
+            if (p == _color && score > alpha) {
+                alpha = score;
+                best = (r - 1) * b.size() + c - 1;
+                if (depth == _maxDepth) {
+                    bestMove[0] = r;
+                    bestMove[1] = c;
                 }
+            } else if (p != _color && score < beta) {
+                beta = score;
+                best = (r - 1) * b.size() + c - 1;
+            }
+            if (alpha >= beta) {
+                break;
             }
-            return alpha;
+        }
+        score = p == _color ? alpha : beta;
+        if (_searchCache != null && depth < _maxDepth && !_stopped) {
+            int bound = score <= alpha0 ? SearchCache.UPPER
+                : score >= beta0 ? SearchCache.LOWER : SearchCache.EXACT;
+            if (p != _color) {
+                bound = bound == SearchCache.EXACT ? bound
+                    : SearchCache.LOWER + SearchCache.UPPER - bound;
+            }
+            _searchCache.store(key, depth, p == _color ? score : -score,
+                               bound, best);
+        }
+        return score;
+    }
+
+    /** Shuffle MOVES, a list of row, column pairs on B as from
+     *  findValidMoves, using _random, keeping the moves that make their
+     *  squares jump ahead of the others.  This breaks ties between equally
+     *  good moves at random, since the first best move found is played. */
+    private void shuffle(ArrayList<Integer> moves, Board b) {
+        int jumps = 0;
+        while (jumps < moves.size()
+               && cascades(b, moves.get(jumps), moves.get(jumps + 1))) {
+            jumps += 2;
+        }
+        shuffle(moves, 0, jumps);
+        shuffle(moves, jumps, moves.size());
+    }
+
+    /** Shuffle the row, column pairs in MOVES[FROM .. TO) using
+     *  _random. */
+    private void shuffle(ArrayList<Integer> moves, int from, int to) {
+        for (int i = to - 2; i > from; i -= 2) {
+            int j = from + 2 * _random.nextInt((i - from) / 2 + 1);
+            for (int k = 0; k < 2; k += 1) {
+                int t = moves.get(i + k);
+                moves.set(i + k, moves.get(j + k));
+                moves.set(j + k, t);
+            }
+        }
+    }
+
+    /** Move the move at row R, column C to the front of MOVES, a list of
+     *  row, column pairs as from findValidMoves, if it is there. */
+    private static void first(ArrayList<Integer> moves, int r, int c) {
+        for (int i = 0; i < moves.size(); i += 2) {
+            if (moves.get(i) == r && moves.get(i + 1) == c) {
+                for (int j = i; j > 0; j -= 1) {
+                    moves.set(j + 1, moves.get(j - 1));
+                }
+                moves.set(0, r);
+                moves.set(1, c);
+                return;
+            }
+        }
+    }
+
+    /** Return the score of the Kth move, by P at row R, column C on board B,
+     *  for a node to be searched to DEPTH within window ALPHA .. BETA,
+     *  updating BESTMOVE as for minimax.  CASCADE indicates that the move
+     *  overfills its square.  Late, quiet moves may be searched to reduced
+     *  depth first, and then re-searched fully only if they look better than
+     *  the moves before them. */
+    private int searchMove(int depth, int k, boolean cascade, MutableBoard b,
+                           Color p, int r, int c, int alpha, int beta,
+                           int[] bestMove) {
+        boolean maximizing = p == _color;
+        int score;
+        b.addSpot(p, r, c);
+        if (cascade || depth < REDUCTION_DEPTH || k < UNREDUCED_MOVES
+            || !_pruning.contains(Pruning.LMR)) {
+            score = minimax(depth - 1, b, p.opposite(), alpha, beta,
+                            bestMove);
         } else {
-            for (int i = 0; i < children.size(); i += 2) {
-                b.addSpot(p,  children.get(0),  children.get(1));
+            int lo = alpha, hi = beta;
+            if (_pruning.contains(Pruning.VERIFY)) {
+                lo = maximizing ? alpha : beta - 1;
+                hi = maximizing ? alpha + 1 : beta;
+            }
+            score = minimax(depth - 2, b, p.opposite(), lo, hi, bestMove);
+            if (improves(maximizing, score, alpha, beta)
+                && _pruning.contains(Pruning.VERIFY)) {
+                score = minimax(depth - 1, b, p.opposite(), lo, hi,
+                                bestMove);
+            }
+            if (improves(maximizing, score, alpha, beta)) {
                 score = minimax(depth - 1, b, p.opposite(), alpha, beta,
-                        bestMove);
-                b.undo();
-                if (score < beta) {
-                    beta = score;
-                    if (depth == _maxDepth) {
-                        bestMove[0] = children.get(i);
-                        bestMove[1] = children.get(i + 1);
-                    }
-                } else if (alpha >= beta) {
-                    break;
-                }
+                                bestMove);
             }
-            return beta;
         }
+        b.undo();
+        return score;
+    }
+
+    /** Return true iff SCORE would raise ALPHA (if MAXIMIZING) or lower
+     *  BETA (otherwise). */
+    private static boolean improves(boolean maximizing, int score,
+                                    int alpha, int beta) {
+        return maximizing ? score > alpha : score < beta;
+    }
+
+    /** Return true iff no move by P on B that does not cascade can bring
+     *  the score of a frontier node inside ALPHA .. BETA.  A quiet move
+     *  changes my lead in squares by at most FUTILITY_MARGIN, and cannot end
+     *  the game unless it fills the last white square. */
+    private boolean futile(MutableBoard b, Color p, int alpha, int beta) {
+        int eval = staticEval(_color, b);
+        if (b.numOfColor(Color.WHITE) <= 1) {
+            return false;
+        } else if (p == _color) {
+            return eval + FUTILITY_MARGIN <= alpha;
+        } else {
+            return eval - FUTILITY_MARGIN >= beta;
+        }
+    }
+
+    /** Return true iff adding a spot to row R, column C of B would make
+     *  that square jump. */
+    private static boolean cascades(Board b, int r, int c) {
+        return b.spots(r, c) == b.neighbors(r, c);
+    }
+
+    /** Enable or disable selective-search technique WHICH according to
+     *  ON. */
+    void setPruning(Pruning which, boolean on) {
+        if (on) {
+            _pruning.add(which);
+        } else {
+            _pruning.remove(which);
+        }
+    }
+
+    /** Use CACHE, which may be shared with other AIs, to remember the
+     *  results of searches, or no cache if CACHE is null. */
+    void setCache(SearchCache cache) {
+        _cache = cache;
+    }
+
+    /** Make my searches reproducible, using SEED, or return to normal if
+     *  SEED is null.  A seeded search breaks ties between equally good
+     *  moves at random (from SEED and the position), uses a private cache
+     *  that it clears first rather than any shared one, clears my solver
+     *  first, and never searches remotely or stops for lack of budget.  So
+     *  the same seed and position always give the same move and node
+     *  count, however many other searches are running.  Only stop() can
+     *  cut a seeded search short. */
+    void setSeed(Long seed) {
+        _seed = seed;
+    }
+
+    /** Evaluate positions with NETWORK, on boards of its size, rather
+     *  than by counting squares, or always count squares if NETWORK is
+     *  null. */
+    void setNetwork(Network network) {
+        _network = network;
+        _ownCache = null;
+    }
+
+    /** Search on boards of ENGINE. */
+    void setEngine(BoardEngine engine) {
+        _engine = engine;
+    }
+
+    /** Split my searches among the workers of REMOTE, or search on this
+     *  process alone if REMOTE is null. */
+    void setRemote(RemoteSearch remote) {
+        _remote = remote;
+    }
+
+    /** Before searching a tactical position, try to prove a forced win
+     *  with a Solver generating at most NODES positions, or never if NODES
+     *  is 0. */
+    void setSolverNodes(long nodes) {
+        _solverNodes = nodes;
+    }
+
+    /** Return the score, from my point of view, of the move chosen by my
+     *  most recent search. */
+    int getScore() {
+        return _score;
+    }
+
+    /** Return the cache used by my current or most recent search, or
+     *  null if it used none. */
+    SearchCache searchCache() {
+        return _searchCache;
+    }
+
+    /** Return the number of positions visited by my most recent search. */
+    long getNodes() {
+        return _nodes;
     }
 
     /** Checks every position on Board B and adds it to the ArrayList<int[]>
-     *  provided it is a valid move for Player P. Returns this ArrayList. */
+     *  provided it is a valid move for Player P. Returns this ArrayList,
+     *  ordered with the moves that make their squares jump first. */
     private ArrayList<Integer> findValidMoves(Color p, Board b) {
         ArrayList<Integer> moves = new ArrayList<Integer>();
+        ArrayList<Integer> quiet = new ArrayList<Integer>();
         for (int i = 1; i <= b.size(); i += 1) {
             for (int j = 1; j <= b.size(); j += 1) {
                 if (b.isLegal(p, i, j)) {
-                    moves.add(i);
-                    moves.add(j);
+                    ArrayList<Integer> list =
+                        cascades(b, i, j) ? moves : quiet;
+                    list.add(i);
+                    list.add(j);
                 }
             }
         }
+        moves.addAll(quiet);
         return moves;
     }
 
     /** Returns heuristic value of board B for player P.
-     *  Higher is better for P. */
-    private int staticEval(Color p, Board b) {
-        if (p == Color.RED) {
-            return b.getNumRed();
-        } else {
-            return b.getNumBlue();
+     *  Higher is better for P.  Without a network, this is the number of
+     *  squares P has less the number the opponent has, so that it is
+     *  always minus the opponent's value, as the entries of a SearchCache
+     *  shared by AIs of both colors require. */
+    private int staticEval(Color p, MutableBoard b) {
+        Network.Accumulator acc = b.accumulator();
+        if (acc != null) {
+            return acc.network().evaluate(acc, p);
         }
+        int lead = b.getNumRed() - b.getNumBlue();
+        return p == Color.RED ? lead : -lead;
+    }
+
+    /** Selective-search techniques, each of which may be switched on or
+     *  off separately (see setPruning).  None of them ever applies to a
+     *  move that makes its square jump, since the cascades that follow can
+     *  change the position drastically. */
+    enum Pruning {
+        /** Late move reductions: search quiet moves ordered after the
+         *  first few one ply shallower, re-searching if they improve. */
+        LMR,
+        /** Futility pruning: at the frontier, skip quiet moves when even
+         *  the best quiet outcome cannot reach the search window. */
+        FUTILITY,
+        /** Null-window verification: search reduced moves with a null
+         *  window, and verify a fail-high at full depth with a null window
+         *  before the full-window re-search. */
+        VERIFY;
     }
 
-    /** Board this is playing on. */
+    /** Score of a won position, before adjustment for depth. */
+    static final int WINNING_VALUE = 1 << 20;
+
+    /** Most a quiet move can change my square count. */
+    private static final int FUTILITY_MARGIN = 1;
+
+    /** Shallowest depth at which moves are reduced. */
+    private static final int REDUCTION_DEPTH = 3;
+
+    /** Number of moves at each node that are never reduced. */
+    private static final int UNREDUCED_MOVES = 3;
+
+    /** Default node budget of the solver. */
+    static final long SOLVER_NODES = 20000;
+
+    /** Log base 2 of the number of entries in the solver's table. */
+    private static final int SOLVER_BITS = 16;
+
+    /** Mixes seeds with position keys. */
+    private static final long SEED_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /** Log base 2 of the number of entries in the private cache of a
+     *  seeded search. */
+    private static final int OWN_CACHE_BITS = 16;
+
+    /** Number of positions between checkpoints of a scheduled search
+     *  (a power of 2). */
+    private static final int CHECKPOINT_NODES = 256;
+
+    /** Board this is playing on.  Searches copy it; they never modify
+     *  it. */
     private MutableBoard _board;
 
     /** The game associated with this. */
@@ -115,6 +575,44 @@ class AI extends Player {
 
     /** How many moves this looks ahead. */
     private int _maxDepth;
-}
 
+    /** Selective-search techniques in use. */
+    private final EnumSet<Pruning> _pruning = EnumSet.noneOf(Pruning.class);
+
+    /** Search results shared with other searches, or null. */
+    private SearchCache _cache;
+    /** The cache used by the current search: _cache, _ownCache, or
+     *  null. */
+    private SearchCache _searchCache;
+    /** The private cache of seeded searches, created when first
+     *  needed. */
+    private SearchCache _ownCache;
+    /** Seed of my searches, or null if they are not seeded. */
+    private volatile Long _seed;
+    /** Source of the random choices of the current seeded search, or
+     *  null. */
+    private Random _random;
+    /** Network with which to evaluate positions, or null. */
+    private volatile Network _network;
+    /** Engine of the boards I search. */
+    private volatile BoardEngine _engine = BoardEngine.STRING;
+    /** Workers among which to split my searches, or null. */
+    private volatile RemoteSearch _remote;
+
+    /** Node budget for proving wins, or 0 to skip proving. */
+    private volatile long _solverNodes = SOLVER_NODES;
+    /** Solver for tactical positions, created when first needed. */
+    private volatile Solver _solver;
+
+    /** The scheduled search I am running, if any. */
+    private SearchScheduler.Task _task;
 
+    /** Score of the move chosen by the last search. */
+    private volatile int _score;
+
+    /** Number of positions visited by the current or last search. */
+    private volatile long _nodes;
+
+    /** True when the current search should wind up. */
+    private volatile boolean _stopped;
+}
@@ -2,11 +2,29 @@ package jump61;
 
 import static org.junit.Assert.*;
 
+import java.io.BufferedReader;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 
@@ -29,6 +47,581 @@ public class AITest {
         AI testee = new AI(game, Color.BLUE, 4, board);
     }
 
+    /** Check that sharing a SearchCache among searches does not change
+     *  their scores. */
+    @Test
+    public void testCacheAgrees() {
+        Random random = new Random(61);
+        SearchCache cache = new SearchCache(12);
+        for (int k = 0; k < 5; k += 1) {
+            MutableBoard b = new MutableBoard(4);
+            for (int n = random.nextInt(12); n > 0; n -= 1) {
+                Color player = b.whoseMove();
+                int r, c;
+                do {
+                    r = random.nextInt(4) + 1;
+                    c = random.nextInt(4) + 1;
+                } while (!b.isLegal(player, r, c));
+                b.addSpot(player, r, c);
+            }
+            String before = b.toString();
+            Color player = b.whoseMove();
+            for (int r = 1; r <= 4; r += 1) {
+                for (int c = 1; c <= 4; c += 1) {
+                    if (b.isLegal(player, r, c)) {
+                        AI plain = new AI(player, 4);
+                        AI cached = new AI(player, 4);
+                        cached.setCache(cache);
+                        assertEquals(plain.scoreMove(b, r, c),
+                                     cached.scoreMove(b, r, c));
+                        assertEquals(before, b.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    /** Check that AIs of different colors and depths can share a
+     *  SearchCache: a search by one color must leave entries that give a
+     *  search by the other exactly the scores it would find alone.  (Every
+     *  move adds a spot, so a position is always the same number of moves
+     *  from the root, and the searches need the same depth for it.) */
+    @Test
+    public void testCacheColors() {
+        Random random = new Random(34);
+        for (int k = 0; k < 12; k += 1) {
+            MutableBoard b = new MutableBoard(5);
+            for (int n = random.nextInt(16); n > 0; n -= 1) {
+                randomMove(b, random);
+            }
+            if (b.getWinner() != null) {
+                continue;
+            }
+            SearchCache cache = new SearchCache(14);
+            Color player = b.whoseMove();
+            int r, c;
+            do {
+                r = random.nextInt(5) + 1;
+                c = random.nextInt(5) + 1;
+            } while (!b.isLegal(player, r, c));
+            AI first = new AI(player, 4);
+            first.setCache(cache);
+            int score = first.scoreMove(b, r, c);
+            b.addSpot(player, r, c);
+            if (b.getWinner() != null) {
+                continue;
+            }
+            AI plain = new AI(player.opposite(), 3);
+            plain.setSolverNodes(0);
+            plain.chooseMove(b);
+            AI cached = new AI(player.opposite(), 3);
+            cached.setSolverNodes(0);
+            cached.setCache(cache);
+            cached.chooseMove(b);
+            assertEquals(plain.getScore(), cached.getScore());
+            assertEquals(-score, cached.getScore());
+        }
+    }
+
+    /** Check that each search by an AI starts a new generation of its
+     *  cache, so that a shallower result replaces a deeper one left in
+     *  the same slot by an earlier search. */
+    @Test
+    public void testCacheAging() {
+        Random random = new Random(42);
+        SearchCache cache = new SearchCache(14);
+        MutableBoard b = new MutableBoard(5);
+        for (int n = 0; n < 6; n += 1) {
+            randomMove(b, random);
+        }
+        AI first = new AI(b.whoseMove(), 4);
+        first.setSolverNodes(0);
+        first.setCache(cache);
+        first.chooseMove(b);
+        long child = 0, entry = 0;
+        Color player = b.whoseMove();
+        for (int sq = 0; entry == 0 && sq < 25; sq += 1) {
+            if (b.isLegal(player, sq / 5 + 1, sq % 5 + 1)) {
+                b.addSpot(player, sq / 5 + 1, sq % 5 + 1);
+                child = SearchCache.key(b, player.opposite());
+                entry = cache.probe(child);
+                b.undo();
+            }
+        }
+        assertNotEquals(0, entry);
+        assertEquals(3, SearchCache.depth(entry));
+
+        long generation = cache.generation();
+        randomMove(b, random);
+        randomMove(b, random);
+        AI second = new AI(b.whoseMove(), 1);
+        second.setSolverNodes(0);
+        second.setCache(cache);
+        second.chooseMove(b);
+        assertTrue(cache.generation() > generation);
+        assertEquals(entry, cache.probe(child));
+        long other = child ^ 1L << 40;
+        cache.store(other, 1, 0, SearchCache.EXACT, -1);
+        assertNotEquals(0, cache.probe(other));
+        assertEquals(0, cache.probe(child));
+    }
+
+    /** Make a random legal move on B, using RANDOM. */
+    private static void randomMove(MutableBoard b, Random random) {
+        int n = b.size();
+        Color player = b.whoseMove();
+        int sq;
+        do {
+            sq = random.nextInt(n * n);
+        } while (!b.isLegal(player, sq / n + 1, sq % n + 1));
+        b.addSpot(player, sq / n + 1, sq % n + 1);
+    }
+
+    /** Check that a MappedSearchCache keeps its entries when reopened,
+     *  starts a new generation each time, and is reset if its header is
+     *  damaged. */
+    @Test
+    public void testPersistentCache() throws IOException {
+        Path file = Files.createTempFile("jump61", ".cache");
+        try {
+            MappedSearchCache cache = MappedSearchCache.open(file, 10);
+            MutableBoard b = new MutableBoard(4);
+            b.addSpot(Color.RED, 2, 3);
+            AI ai = new AI(Color.BLUE, 4);
+            ai.setCache(cache);
+            int score = ai.scoreMove(b, 1, 1);
+            long key = SearchCache.key(b, Color.BLUE);
+            cache.store(key, 9, 17, SearchCache.EXACT, 5);
+            long generation = cache.generation();
+
+            MappedSearchCache again = MappedSearchCache.open(file, 12);
+            assertEquals(1 << 10, again.capacity());
+            assertEquals(generation + 1, again.generation());
+            assertEquals(17, SearchCache.score(again.probe(key)));
+            assertEquals(5, SearchCache.move(again.probe(key)));
+            again.store(key, 3, 0, SearchCache.EXACT, 0);
+            assertEquals(17, SearchCache.score(cache.probe(key)));
+            AI other = new AI(Color.BLUE, 4);
+            other.setCache(again);
+            assertEquals(score, other.scoreMove(b, 1, 1));
+
+            try (FileChannel channel =
+                 FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] { 0 }), 17);
+            }
+            MappedSearchCache reset = MappedSearchCache.open(file, 12);
+            assertEquals(1 << 12, reset.capacity());
+            assertEquals(0, reset.probe(key));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Check that moves scored by worker processes, some of which are
+     *  unreachable or die between searches, score as they would
+     *  locally. */
+    @Test
+    public void testRemoteSearch() throws IOException {
+        ArrayList<Process> workers = new ArrayList<Process>();
+        ArrayList<InetSocketAddress> addresses =
+            new ArrayList<InetSocketAddress>();
+        InetAddress local = InetAddress.getLoopbackAddress();
+        try {
+            try (ServerSocket unused = new ServerSocket(0, 1, local)) {
+                addresses.add(new InetSocketAddress(local,
+                                                    unused.getLocalPort()));
+            }
+            for (int k = 0; k < 2; k += 1) {
+                Process worker = startWorker();
+                workers.add(worker);
+                BufferedReader log = new BufferedReader(
+                    new InputStreamReader(worker.getInputStream()));
+                String[] words = log.readLine().split(" ");
+                addresses.add(new InetSocketAddress(
+                    local, Integer.parseInt(words[words.length - 1])));
+            }
+            RemoteSearch remote = new RemoteSearch(addresses);
+            MutableBoard b = new MutableBoard(4);
+            b.addSpot(Color.RED, 1, 1);
+            b.addSpot(Color.BLUE, 2, 2);
+            b.addSpot(Color.RED, 1, 1);
+            for (int round = 0; round < 3; round += 1) {
+                ArrayList<Analysis.Line> lines = remote.scoreMoves(b, 4);
+                assertEquals(15, lines.size());
+                for (Analysis.Line line : lines) {
+                    AI ai = new AI(b.whoseMove(), 4);
+                    assertEquals(ai.scoreMove(b, line.row(), line.col()),
+                                 line.score());
+                    assertEquals((line.row() - 1) * 4 + line.col() - 1,
+                                 line.pv()[0]);
+                }
+                assertEquals(2 - round, remote.live());
+                if (round < 2) {
+                    workers.get(round).destroy();
+                    workers.get(round).waitFor();
+                }
+            }
+            remote.close();
+        } catch (InterruptedException excp) {
+            fail("interrupted");
+        } finally {
+            for (Process worker : workers) {
+                worker.destroyForcibly();
+            }
+        }
+    }
+
+    /** Return a new SearchWorker process listening on a free port. */
+    private Process startWorker() throws IOException {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                    .toString());
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector")
+            .isPresent()) {
+            command.add("--add-modules=jdk.incubator.vector");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("jump61.Main");
+        command.add("--worker");
+        return new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+    }
+
+    /** Check that a SearchScheduler lets an interactive search in ahead of
+     *  a background search holding its only slot, and stops the searches of
+     *  a session once they have used up its budget in all. */
+    @Test
+    public void testScheduler() throws Exception {
+        SearchScheduler scheduler = new SearchScheduler(1);
+        SearchScheduler.Session session = new SearchScheduler.Session();
+        AtomicBoolean done = new AtomicBoolean();
+        CompletableFuture<Boolean> background =
+            scheduler.submit(session, SearchScheduler.Priority.BACKGROUND,
+                             () -> {
+                    while (!done.get()) {
+                        SearchScheduler.current().checkpoint();
+                    }
+                    return true;
+                });
+        CompletableFuture<Boolean> interactive =
+            scheduler.submit(session, SearchScheduler.Priority.INTERACTIVE,
+                             () -> !done.get());
+        assertTrue(interactive.get(10, TimeUnit.SECONDS));
+        done.set(true);
+        assertTrue(background.get(10, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.queued());
+
+        SearchScheduler.Session budgeted = new SearchScheduler.Session();
+        budgeted.setBudget(50);
+        long start = System.nanoTime();
+        CompletableFuture<Long> limited =
+            scheduler.submit(budgeted, SearchScheduler.Priority.BATCH, () -> {
+                    while (SearchScheduler.current().checkpoint()) {
+                        Thread.onSpinWait();
+                    }
+                    return System.nanoTime() - start;
+                });
+        long elapsed = limited.get(10, TimeUnit.SECONDS);
+        assertTrue(elapsed >= 50000000L && elapsed < 5000000000L);
+        assertTrue(budgeted.used() >= 50);
+        assertEquals(0, budgeted.left());
+        CompletableFuture<Boolean> spent =
+            scheduler.submit(budgeted, SearchScheduler.Priority.BATCH,
+                             () -> SearchScheduler.current().checkpoint());
+        assertFalse(spent.get(10, TimeUnit.SECONDS));
+        budgeted.setBudget(50);
+        CompletableFuture<Boolean> renewed =
+            scheduler.submit(budgeted, SearchScheduler.Priority.BATCH,
+                             () -> SearchScheduler.current().checkpoint());
+        assertTrue(renewed.get(10, TimeUnit.SECONDS));
+    }
+
+    /** Check that seeded searches give the same moves, node counts and
+     *  analyses for the same seed and position, whatever the state of the
+     *  shared cache and whatever else is running. */
+    @Test
+    public void testSeeded() throws Exception {
+        Random random = new Random(47);
+        MutableBoard b = new MutableBoard(5);
+        for (int n = 0; n < 8; n += 1) {
+            Color player = b.whoseMove();
+            int sq;
+            do {
+                sq = random.nextInt(25);
+            } while (!b.isLegal(player, sq / 5 + 1, sq % 5 + 1));
+            b.addSpot(player, sq / 5 + 1, sq % 5 + 1);
+        }
+        SearchCache cache = new SearchCache(12);
+        AI first = new AI(b.whoseMove(), 4);
+        first.setCache(cache);
+        first.setSeed(7L);
+        int[] move = first.chooseMove(b);
+        ArrayList<CompletableFuture<String>> runs =
+            new ArrayList<CompletableFuture<String>>();
+        for (int k = 0; k < 3; k += 1) {
+            runs.add(CompletableFuture.supplyAsync(() -> {
+                AI ai = new AI(b.whoseMove(), 4);
+                ai.setCache(cache);
+                ai.setSeed(7L);
+                int[] m = ai.chooseMove(new MutableBoard(b));
+                return m[0] + " " + m[1] + " " + ai.getNodes();
+            }));
+        }
+        AI other = new AI(b.whoseMove(), 5);
+        other.setCache(cache);
+        other.chooseMove(b);
+        for (CompletableFuture<String> run : runs) {
+            assertEquals(move[0] + " " + move[1] + " " + first.getNodes(),
+                         run.get(60, TimeUnit.SECONDS));
+        }
+
+        String[] analyses = new String[2];
+        for (int k = 0; k < 2; k += 1) {
+            Analysis analysis =
+                new Analysis(b, cache, BoardEngine.STRING, 3, 0,
+                             new SearchScheduler.Session(), 11L);
+            StringBuilder out = new StringBuilder();
+            while (!analysis.isDone()) {
+                Analysis.Line line = analysis.next(100);
+                if (line != null) {
+                    out.append(line.toString(5)).append('\n');
+                }
+            }
+            analyses[k] = out.toString();
+        }
+        assertEquals(analyses[0], analyses[1]);
+    }
+
+    /** Check that a Network survives writing and loading, that damaged
+     *  weights files are refused, and that a network that counts the
+     *  player's squares makes the AI play exactly as the classic
+     *  evaluation does, on either engine.  (The network counts the
+     *  player's squares in lane 0 of its own point of view and subtracts
+     *  the opponent's, in lane 0 of theirs.) */
+    @Test
+    public void testNetwork() throws IOException {
+        int n = 4, hidden = 2;
+        short[] w1 = new short[Network.features(n) * hidden];
+        for (int sq = 0; sq < n * n; sq += 1) {
+            for (int s = 0; s < Network.SPOT_STATES; s += 1) {
+                w1[(sq * 2 * Network.SPOT_STATES + s) * hidden] = 1;
+            }
+        }
+        short[] w2 = new short[2 * hidden];
+        w2[0] = 1;
+        w2[hidden] = -1;
+        Network counter =
+            new Network(n, hidden, n * n, 1, w1, new short[hidden], w2, 0);
+        Path file = Files.createTempFile("jump61", ".nnue");
+        try {
+            counter.write(file);
+            counter = Network.load(file);
+            try (FileChannel channel =
+                 FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(Files.size(file) - 1);
+            }
+            try {
+                Network.load(file);
+                fail("damaged weights file loaded");
+            } catch (GameException excp) {
+                /* Ignore: expected. */
+            }
+        } finally {
+            Files.delete(file);
+        }
+
+        Random random = new Random(48);
+        for (int k = 0; k < 6; k += 1) {
+            MutableBoard b = new MutableBoard(n);
+            for (int m = random.nextInt(8); m > 0; m -= 1) {
+                Color player = b.whoseMove();
+                int sq;
+                do {
+                    sq = random.nextInt(n * n);
+                } while (!b.isLegal(player, sq / n + 1, sq % n + 1));
+                b.addSpot(player, sq / n + 1, sq % n + 1);
+            }
+            AI classic = new AI(b.whoseMove(), 4);
+            classic.setSolverNodes(0);
+            int[] expected = classic.chooseMove(b);
+            for (BoardEngine engine
+                     : new BoardEngine[] { BoardEngine.STRING,
+                                           BoardEngine.PACKED }) {
+                AI ai = new AI(b.whoseMove(), 4);
+                ai.setSolverNodes(0);
+                ai.setEngine(engine);
+                ai.setNetwork(counter);
+                assertArrayEquals(expected, ai.chooseMove(b));
+                assertEquals(classic.getScore(), ai.getScore());
+                assertEquals(classic.getNodes(), ai.getNodes());
+            }
+        }
+    }
+
+    /** Check that the Evaluator selected for this JVM does a Network's
+     *  arithmetic as the plain one does, at lengths that do and do not
+     *  fill whole vectors. */
+    @Test
+    public void testNetworkArithmetic() {
+        Evaluator plain = new Evaluator(), chosen = Evaluator.get();
+        Random random = new Random(27);
+        for (int n = 1; n <= 70; n += 3) {
+            short[] w = new short[2 * n + 5];
+            short[] sums = new short[n + 3];
+            for (int j = 0; j < w.length; j += 1) {
+                w[j] = (short) (random.nextInt(4001) - 2000);
+            }
+            for (int j = 0; j < sums.length; j += 1) {
+                sums[j] = (short) (random.nextInt(601) - 300);
+            }
+            short[] sums2 = sums.clone();
+            plain.addRow(sums, 2, w, 3, n);
+            chosen.addRow(sums2, 2, w, 3, n);
+            assertArrayEquals(sums, sums2);
+            plain.subtractRow(sums, 1, w, n + 4, n);
+            chosen.subtractRow(sums2, 1, w, n + 4, n);
+            assertArrayEquals(sums, sums2);
+            assertEquals(plain.clippedDot(sums, 3, w, 5, n, 127),
+                         chosen.clippedDot(sums, 3, w, 5, n, 127));
+        }
+    }
+
+    /** Check that the Evaluator selected for this JVM counts the squares
+     *  of each color as the plain one does, at lengths that do and do not
+     *  fill whole vectors. */
+    @Test
+    public void testCount() {
+        Evaluator plain = new Evaluator(), chosen = Evaluator.get();
+        Random random = new Random(26);
+        for (int n = 0; n <= 70; n += 1) {
+            int[] cells = new int[n + 3];
+            for (int i = 0; i < cells.length; i += 1) {
+                int color = random.nextInt(3);
+                cells[i] = MutableBoard.cell(Color.values()[color],
+                                             color == 0 ? 0
+                                             : 1 + random.nextInt(4));
+            }
+            for (Color color : Color.values()) {
+                assertEquals(plain.count(cells, n, color),
+                             chosen.count(cells, n, color));
+            }
+        }
+    }
+
+    /** Check that a match whose random openings end the game scores
+     *  those games from the final position instead of hanging. */
+    @Test
+    public void testTournamentOpenings() {
+        Tournament match = new Tournament();
+        match.setOption("--sizes", "2");
+        match.setOption("--random", "12");
+        match.setOption("--games", "4");
+        match.setOption("--threads", "1");
+        for (int g = 0; g < 4; g += 2) {
+            assertEquals(1.0, match.playGame(g) + match.playGame(g + 1), 0);
+        }
+        StringWriter out = new StringWriter();
+        match.play(new PrintWriter(out));
+        assertTrue(out.toString().contains("games 4: "));
+    }
+
+    /** Check that a Warmup finishes on its own, and stops early when
+     *  asked. */
+    @Test
+    public void testWarmup() {
+        Warmup warmup = new Warmup(BoardEngine.PACKED, null);
+        warmup.run();
+        assertTrue(warmup.isDone());
+        assertTrue(warmup.rounds() >= 1);
+        Warmup stopped = new Warmup(BoardEngine.STRING, null);
+        stopped.stop();
+        stopped.run();
+        assertEquals(0, stopped.rounds());
+    }
+
+    /** Check that the Bench suite's positions are legal, and that its
+     *  signature is the same on every engine and every run. */
+    @Test
+    public void testBench() {
+        for (String[] entry : Bench.SUITE) {
+            MutableBoard b = Bench.position(BoardEngine.PACKED, entry[1]);
+            assertNull(b.getWinner());
+            for (int sq = 0; sq < b.size() * b.size(); sq += 1) {
+                assertTrue(b.spots(sq) <= b.neighbors(sq));
+            }
+        }
+        PrintWriter out = new PrintWriter(new StringWriter());
+        long signature = Bench.bench(2, BoardEngine.STRING, out);
+        assertEquals(signature, Bench.bench(2, BoardEngine.STRING, out));
+        assertEquals(signature, Bench.bench(2, BoardEngine.PACKED, out));
+        assertNotEquals(signature, Bench.bench(3, BoardEngine.PACKED, out));
+    }
+
+    /** Check that the Solver agrees with exhaustive search on random
+     *  3x3 positions, and that its winning moves win, and that the size of
+     *  a proof is found within the solve's limit even when the table is
+     *  too small to hold it. */
+    @Test
+    public void testSolver() {
+        Random random = new Random(44);
+        Solver solver = new Solver(14);
+        int solved = 0;
+        for (int k = 0; k < 20; k += 1) {
+            MutableBoard b = new MutableBoard(3);
+            for (int n = 12 + random.nextInt(6);
+                 n > 0 && b.getWinner() == null; n -= 1) {
+                Color player = b.whoseMove();
+                int sq;
+                do {
+                    sq = random.nextInt(9);
+                } while (!b.isLegal(player, sq / 3 + 1, sq % 3 + 1));
+                b.addSpot(player, sq / 3 + 1, sq % 3 + 1);
+            }
+            if (b.getWinner() != null) {
+                continue;
+            }
+            int result = solver.solve(b, 1000000);
+            assertNotEquals(Solver.UNKNOWN, result);
+            assertEquals(wins(b, 0) ? Solver.WIN : Solver.LOSS, result);
+            assertTrue(solver.proofSize(b) > 0);
+            if (result == Solver.WIN) {
+                int move = solver.move();
+                Color player = b.whoseMove();
+                b.addSpot(player, move / 3 + 1, move % 3 + 1);
+                assertTrue(b.getWinner() == player || !wins(b, 0));
+                b.undo();
+            }
+            Solver small = new Solver(2);
+            if (small.solve(b, 100000) != Solver.UNKNOWN) {
+                long size = small.proofSize(b);
+                assertTrue(size == -1 || size > 0);
+            }
+            assertTrue(small.nodes() < 100000 + 9);
+            solved += 1;
+        }
+        assertTrue(solved > 10);
+    }
+
+    /** Return true iff the player to move on B can force a win, found by
+     *  exhaustive search, with DEPTH moves made so far. */
+    private static boolean wins(MutableBoard b, int depth) {
+        int n = b.size();
+        Color player = b.whoseMove();
+        assertTrue("game too long", depth < 200);
+        for (int sq = 0; sq < n * n; sq += 1) {
+            if (b.isLegal(player, sq / n + 1, sq % n + 1)) {
+                b.addSpot(player, sq / n + 1, sq % n + 1);
+                boolean won = b.getWinner() == player || !wins(b, depth + 1);
+                b.undo();
+                if (won) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /** a mutable board. */
     private MutableBoard board;
     /** a reader. */
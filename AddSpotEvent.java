@@ -0,0 +1,44 @@
+package jump61;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A flight-recorder event for one MutableBoard.addSpot, including any
+ *  cascade it sets off.  Disabled unless turned on by a recording's
+ *  settings (see jump61.jfc).
+ *  @author Austin Gandy
+ */
+@Name("jump61.AddSpot")
+@Label("Add Spot")
+@Category("Jump61")
+@Description("A move on a board, with the cascade it sets off")
+@Enabled(false)
+@StackTrace(false)
+class AddSpotEvent extends Event {
+
+    /** Board size. */
+    @Label("Board Size")
+    int size;
+
+    /** Row of the move. */
+    @Label("Row")
+    int row;
+
+    /** Column of the move. */
+    @Label("Column")
+    int col;
+
+    /** Number of squares whose contents changed. */
+    @Label("Squares Touched")
+    int touched;
+
+    /** Number of times a square jumped. */
+    @Label("Topplings")
+    int topples;
+
+}
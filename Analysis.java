@@ -0,0 +1,322 @@
+package jump61;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** An analysis of a position: a score and principal variation for each
+ *  legal move of the player to move.  Each move is searched as a separate
+ *  BACKGROUND task of the shared SearchScheduler, all sharing one
+ *  SearchCache, and
+ *  results become available (through next) as soon as their moves are
+ *  finished.  Either each move is searched to a fixed depth, or each is
+ *  searched to increasing depths until a time limit expires, its result
+ *  being that of the deepest search completed.
+ *  @author Austin Gandy
+ */
+class Analysis {
+
+    /** Start analyzing a copy of BOARD using CACHE.  If MILLIS is 0, search
+     *  each move to DEPTH; otherwise, search each move to successively
+     *  greater depths, up to DEPTH, for MILLIS milliseconds. */
+    Analysis(Board board, SearchCache cache, int depth, long millis) {
+        this(board, cache, BoardEngine.STRING, depth, millis);
+    }
+
+    /** Start analyzing BOARD as for Analysis(BOARD, CACHE, DEPTH, MILLIS),
+     *  searching on boards of ENGINE. */
+    Analysis(Board board, SearchCache cache, BoardEngine engine, int depth,
+             long millis) {
+        this(board, cache, engine, depth, millis,
+             new SearchScheduler.Session(), null);
+    }
+
+    /** Start analyzing BOARD as for Analysis(BOARD, CACHE, ENGINE, DEPTH,
+     *  MILLIS), charging the searches to SESSION.  If SEED is not null,
+     *  the searches are seeded with it (see AI.setSeed), and their
+     *  results are returned in the order of the moves, rather than as they
+     *  finish, so that a fixed-depth analysis gives the same output every
+     *  time. */
+    Analysis(Board board, SearchCache cache, BoardEngine engine, int depth,
+             long millis, SearchScheduler.Session session, Long seed) {
+        _player = board.whoseMove();
+        _depth = depth;
+        _deadline = millis == 0 ? 0 : System.nanoTime() + millis * MILLION;
+        _seed = seed;
+        _executor = SearchScheduler.shared().executor(
+                        session, SearchScheduler.Priority.BACKGROUND);
+        _results = new ExecutorCompletionService<Line>(_executor);
+        for (int r = 1; r <= board.size(); r += 1) {
+            for (int c = 1; c <= board.size(); c += 1) {
+                if (board.isLegal(_player, r, c)) {
+                    submit(engine.copy(board), cache, r, c,
+                           millis == 0 ? depth : 1);
+                }
+            }
+        }
+    }
+
+    /** Return the result for the next search to be finished, waiting up to
+     *  MILLIS milliseconds for it.  Returns null if there is none by then,
+     *  or if the analysis is done.  With a time limit, each result is
+     *  followed by a search of the same move one ply deeper, queued behind
+     *  the searches of all other moves.  Searches that are stopped before
+     *  they finish yield no result. */
+    Line next(long millis) {
+        while (_pending > 0) {
+            long wait = millis * MILLION;
+            if (_deadline != 0) {
+                long left = _deadline - System.nanoTime();
+                if (left <= 0) {
+                    stop();
+                } else {
+                    wait = Math.min(wait, left);
+                }
+            }
+            Future<Line> done;
+            try {
+                done = poll(wait);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                stop();
+                return null;
+            }
+            if (done == null) {
+                return null;
+            }
+            _pending -= 1;
+            Line line;
+            try {
+                line = done.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                line = null;
+            }
+            if (line != null) {
+                _lines.put(line.row() * BOARD_LIMIT + line.col(), line);
+                if (!_stopped && line.depth() < _depth
+                    && Math.abs(line.score()) < AI.WINNING_VALUE) {
+                    submit(line._board, line._cache, line.row(), line.col(),
+                           line.depth() + 1);
+                }
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /** Return the next finished search, in order of submission if seeded,
+     *  waiting up to NANOS nanoseconds for it, or null if there is none by
+     *  then. */
+    private Future<Line> poll(long nanos) throws InterruptedException {
+        if (_seed == null) {
+            return _results.poll(nanos, TimeUnit.NANOSECONDS);
+        }
+        Future<Line> next = _ordered.peek();
+        try {
+            next.get(nanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException excp) {
+            return null;
+        } catch (ExecutionException excp) {
+            /* Treated as no result by next. */
+        }
+        return _ordered.remove();
+    }
+
+    /** Return true iff all moves have been reported by next or
+     *  abandoned. */
+    boolean isDone() {
+        return _pending == 0;
+    }
+
+    /** Stop all searches as soon as possible.  Moves not yet searched to
+     *  any depth are abandoned. */
+    void stop() {
+        _stopped = true;
+        synchronized (_searching) {
+            for (AI ai : _searching) {
+                ai.stop();
+            }
+        }
+    }
+
+    /** Return true iff stop was called before all moves were finished. */
+    boolean stopped() {
+        return _stopped;
+    }
+
+    /** Return the deepest result returned by next so far for each move,
+     *  best first. */
+    ArrayList<Line> ranking() {
+        ArrayList<Line> result = new ArrayList<Line>(_lines.values());
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Queue a search to DEPTH of the move at row R, column C on B, which
+     *  is private to the searches of this move, sharing CACHE with the
+     *  searches of other moves. */
+    private void submit(MutableBoard b, SearchCache cache, int r, int c,
+                        int depth) {
+        _pending += 1;
+        Callable<Line> search = () -> {
+            AI ai = new AI(_player, depth);
+            ai.setCache(cache);
+            ai.setSeed(_seed);
+            synchronized (_searching) {
+                if (_stopped) {
+                    return null;
+                }
+                _searching.add(ai);
+            }
+            int score = ai.scoreMove(b, r, c);
+            synchronized (_searching) {
+                _searching.remove(ai);
+            }
+            if (ai.stopped()) {
+                return null;
+            }
+            Line result = new Line(r, c, depth, score,
+                                   ai.searchCache().variation(b, r, c,
+                                                              depth));
+            result._board = b;
+            result._cache = cache;
+            return result;
+        };
+        if (_seed == null) {
+            _results.submit(search);
+        } else {
+            FutureTask<Line> task = new FutureTask<Line>(search);
+            _ordered.add(task);
+            _executor.execute(task);
+        }
+    }
+
+    /** The result of searching one move. */
+    static class Line implements Comparable<Line> {
+
+        /** The result that the move at row ROW, column COL has score SCORE
+         *  when searched to DEPTH, with principal variation PV (square
+         *  numbers, starting with this move). */
+        Line(int row, int col, int depth, int score, int[] pv) {
+            _row = row;
+            _col = col;
+            _depth = depth;
+            _score = score;
+            _pv = pv;
+        }
+
+        /** Return the row of my move. */
+        int row() {
+            return _row;
+        }
+
+        /** Return the column of my move. */
+        int col() {
+            return _col;
+        }
+
+        /** Return my score, from the point of view of the player making my
+         *  move. */
+        int score() {
+            return _score;
+        }
+
+        /** Return the depth to which my move was searched. */
+        int depth() {
+            return _depth;
+        }
+
+        /** Return the square numbers of my principal variation. */
+        int[] pv() {
+            return _pv;
+        }
+
+        /** Return my score in words: a number of squares, or the number of
+         *  plies to a forced win or loss. */
+        String scoreText() {
+            if (_score > AI.WINNING_VALUE) {
+                return "win in " + (_depth - (_score - AI.WINNING_VALUE));
+            } else if (_score < -AI.WINNING_VALUE) {
+                return "loss in " + (_depth + (_score + AI.WINNING_VALUE));
+            } else {
+                return Integer.toString(_score);
+            }
+        }
+
+        /** Return a description of me for a board of size N. */
+        String toString(int n) {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%d %d  score %s  depth %d  pv", _row,
+                                     _col, scoreText(), _depth));
+            for (int sq : _pv) {
+                out.append(String.format(" %d %d", sq / n + 1, sq % n + 1));
+            }
+            return out.toString();
+        }
+
+        @Override
+        public int compareTo(Line other) {
+            if (_score != other._score) {
+                return Integer.compare(other._score, _score);
+            } else if (_row != other._row) {
+                return Integer.compare(_row, other._row);
+            } else {
+                return Integer.compare(_col, other._col);
+            }
+        }
+
+        /** The move. */
+        private final int _row, _col;
+        /** Search depth and score. */
+        private final int _depth, _score;
+        /** Principal variation. */
+        private final int[] _pv;
+        /** Board on which to search my move more deeply. */
+        private MutableBoard _board;
+        /** Cache with which to search my move more deeply. */
+        private SearchCache _cache;
+    }
+
+    /** Exceeds the number of columns on any board. */
+    private static final int BOARD_LIMIT = 1 << 16;
+    /** Nanoseconds per millisecond. */
+    private static final long MILLION = 1000000;
+
+    /** The player whose moves are analyzed. */
+    private final Color _player;
+    /** Maximum search depth. */
+    private final int _depth;
+    /** Time (as from System.nanoTime) at which to stop searching, or 0 if
+     *  there is no time limit. */
+    private final long _deadline;
+    /** Seed of the searches, or null. */
+    private final Long _seed;
+    /** Runs the searches. */
+    private final Executor _executor;
+    /** Searches not yet taken by next, in order of submission, if
+     *  seeded. */
+    private final ArrayDeque<Future<Line>> _ordered =
+        new ArrayDeque<Future<Line>>();
+    /** Finished searches, if not seeded. */
+    private final CompletionService<Line> _results;
+    /** Number of searches not yet taken from _results. */
+    private int _pending;
+    /** Deepest result returned by next for each move, keyed by
+     *  row * BOARD_LIMIT + column. */
+    private final HashMap<Integer, Line> _lines = new HashMap<Integer, Line>();
+    /** Searches in progress. */
+    private final ArrayList<AI> _searching = new ArrayList<AI>();
+    /** True once the analysis is to stop. */
+    private volatile boolean _stopped;
+
+}
@@ -0,0 +1,145 @@
+package jump61;
+
+import java.io.PrintWriter;
+
+import static jump61.GameException.error;
+
+/** A benchmark for comparing builds: fixed-depth AI searches of a fixed
+ *  suite of positions (SUITE) from the opening, the middle game, and
+ *  endgames full of cascades, on boards of several sizes.  It reports the
+ *  nodes searched and the rate, and a signature of the node counts of all
+ *  the searches, which changes if anything changes what the searches
+ *  visit.  So two builds with the same signature searched the same trees,
+ *  and their rates may be compared directly.  Searches use no cache and no
+ *  solver, and are the same on every engine.
+ *  @author Austin Gandy
+ */
+class Bench {
+
+    /** Run the benchmark as directed by ARGS, '[DEPTH]', reporting on OUT
+     *  (as for 'Main --bench'), and return an exit code. */
+    static int run(String[] args, PrintWriter out) {
+        if (args.length > 1) {
+            throw error("too many arguments to --bench");
+        }
+        int depth = DEPTH;
+        if (args.length == 1) {
+            try {
+                depth = Integer.parseInt(args[0]);
+            } catch (NumberFormatException excp) {
+                depth = 0;
+            }
+            if (depth < 1) {
+                throw error("bad depth for --bench: %s", args[0]);
+            }
+        }
+        bench(depth, BoardEngine.STRING, out);
+        out.flush();
+        return 0;
+    }
+
+    /** Search each position of the suite to DEPTH on boards of ENGINE,
+     *  printing one line per position and a summary on OUT, and return the
+     *  signature. */
+    static long bench(int depth, BoardEngine engine, PrintWriter out) {
+        long signature = FNV_BASIS;
+        long total = 0;
+        long start = System.nanoTime();
+        for (int k = 0; k < SUITE.length; k += 1) {
+            MutableBoard b = position(engine, SUITE[k][1]);
+            AI ai = new AI(b.whoseMove(), depth);
+            ai.setEngine(engine);
+            ai.setSolverNodes(0);
+            long t0 = System.nanoTime();
+            int[] move = ai.chooseMove(b);
+            double seconds = (System.nanoTime() - t0) / 1e9;
+            long nodes = ai.getNodes();
+            total += nodes;
+            signature = (signature ^ nodes) * FNV_PRIME;
+            out.printf("bench %2d %-12s %dx%d: %s %d %d, %d nodes in"
+                       + " %.3f s%n", k + 1, SUITE[k][0], b.size(),
+                       b.size(), b.whoseMove(), move[0], move[1], nodes,
+                       seconds);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.printf("bench: depth %d on %s, %d positions, %d nodes in %.3f s"
+                   + " (%.0f nodes/s), signature %016x%n", depth, engine,
+                   SUITE.length, total, seconds,
+                   total / Math.max(seconds, 1e-9), signature);
+        return signature;
+    }
+
+    /** Return a board of ENGINE holding the position described by
+     *  DESCRIPTION: the player to move ('r' or 'b') and a colon, followed
+     *  by the squares in order, each '--' if empty or else its spots and
+     *  color ('r' or 'b'), with '/' between rows. */
+    static MutableBoard position(BoardEngine engine, String description) {
+        String[] parts = description.split(":");
+        String[] squares =
+            parts[1].replace("/", " ").trim().split("\\s+");
+        int n = (int) Math.round(Math.sqrt(squares.length));
+        int[] cells = new int[n * n];
+        int spots = 0;
+        for (int sq = 0; sq < n * n; sq += 1) {
+            String square = squares[sq];
+            if (!square.equals("--")) {
+                int count = square.charAt(0) - '0';
+                Color color = square.charAt(1) == 'r' ? Color.RED
+                    : Color.BLUE;
+                cells[sq] = MutableBoard.cell(color, count);
+                spots += count;
+            }
+        }
+        MutableBoard result = engine.newBoard(n);
+        result.setPosition(n, cells, spots,
+                           parts[0].trim().equals("r") ? Color.RED
+                           : Color.BLUE);
+        return result;
+    }
+
+    /** Default search depth. */
+    static final int DEPTH = 5;
+
+    /** The positions searched: a name and a description, in the form read
+     *  by position.  They were taken from random games. */
+    static final String[][] SUITE = {
+        { "opening", "r: -- 1b -- 1b / -- -- 1r -- / -- -- -- 1r /"
+          + " -- -- -- --" },
+        { "midgame", "r: 1r 1b 1b 1b / 1r 3b 2r 1b / 2r -- 1r 2r /"
+          + " -- 1b 1r 2b" },
+        { "endgame", "b: 2r 2b 1b 2b / 3r 3b 4b 3b / 2r 2r 1r 2r /"
+          + " 2r 2b 2r 2b" },
+        { "opening", "r: -- -- -- -- -- / -- -- -- -- -- /"
+          + " 1r -- -- 2b -- / -- -- -- -- -- / -- -- 1r -- --" },
+        { "midgame", "r: 1b 1b 3b 2b 1r / 2r 2r 1r -- 2b /"
+          + " 1r -- 4r 3b 1r / 1r -- 1b -- 1b / 1b 1b 1r 3r 1b" },
+        { "endgame", "r: 2b 3b 2b 3b 2b / 3b 4b 1b 4b 3b /"
+          + " 2b 3b 3b 3b 3b / 2r 3r 4r 2r 1b / 1b 3r 2r 1r 2r" },
+        { "opening", "r: -- -- -- -- -- -- / -- -- -- -- -- -- /"
+          + " -- -- -- -- -- -- / -- 1r -- -- -- -- /"
+          + " -- -- 1b -- 1b -- / -- -- -- 1r -- --" },
+        { "midgame", "r: 1r 2b 1r 1b 1r 2r / -- 1b 1r 1r 1r -- /"
+          + " 2r -- 2b 1b -- 1b / 1b 2r 3b 1r 3b 1r /"
+          + " 2b 3r 3b 2r 4b -- / 1r -- 1b 2r 1r 2r" },
+        { "endgame", "r: 1r 3r 3r 1r 3r 2r / 2r 3r 3r 3r 4r 2r /"
+          + " 3r 2b 3b 3b 1b 2b / 1b 4b 4b 1b 2b 3b /"
+          + " 3b 4b 4b 4b 3b 3b / 1b 3b 3b 3b 3b 1b" },
+        { "opening", "r: -- -- -- -- -- -- 1b -- / -- -- -- -- -- 1b -- -- /"
+          + " -- -- -- -- -- -- -- -- / -- -- 1r -- -- -- -- -- /"
+          + " -- -- -- -- -- -- -- -- / -- -- -- -- -- -- 1r -- /"
+          + " -- -- -- -- -- -- -- -- / -- -- -- -- -- -- -- --" },
+        { "midgame", "r: 2b 1r 1r 1r 1b -- 3b 1b / 3r 1r 2r 2b 1r 2b 1r 3b /"
+          + " 1r 2b 1b 1b -- 2b 1b 1r / 2r 1b 2r 1b 1b 1b 1r 3r /"
+          + " 2b 3b 3r 2r 1r 3r -- 2b / 1b 1r 1r 1r 1r 2r 1r 1b /"
+          + " 1b 1b -- 1r -- 1b 2r 1r / 1b -- 3r 1b 3b 1b 3b 2r" },
+        { "endgame", "r: 1r 3r 2r 3r 1r 3r 3b 2b / 3r 4r 4r 3r 4r 4b 3b 3b /"
+          + " 2b 4b 2b 2b 4r 3b 3b 2b / 2b 4b 1b 3b 3b 4b 3b 3b /"
+          + " 3b 4b 3b 1b 3b 3b 4b 2b / 1b 4b 3b 4b 3b 1b 4b 2b /"
+          + " 3b 3b 4b 4b 2b 3b 4b 1b / 2b 1b 2b 3b 2b 3b 3b 2b" },
+    };
+
+    /** Parameters of the FNV-1a hash used for signatures. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+}
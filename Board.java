@@ -68,13 +68,13 @@ abstract class Board {
 
     /** Return the row number for square #S. */
     final int row(int S) {
-        assert S <= 1 && S <= size();
+        assert exists(S);
         return (int) Math.floor(S / size()) + 1;
     }
 
     /** Return the column number for square #S. */
     final int col(int S) {
-        assert S <= 1 && S <= size();
+        assert exists(S);
         return (int) (S % size()) + 1;
     }
 
@@ -105,10 +105,11 @@ abstract class Board {
     /** Returns the winner of the current position, if the game is over,
      *  and otherwise null. */
     final Color getWinner() {
-        if (numOfColor(RED) == 0) {
-            return BLUE;
-        } else if (numOfColor(BLUE) == 0) {
+        int all = size() * size();
+        if (numOfColor(RED) == all) {
             return RED;
+        } else if (numOfColor(BLUE) == all) {
+            return BLUE;
         }
         return null;
     }
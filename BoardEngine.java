@@ -0,0 +1,103 @@
+package jump61;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/** A representation of boards: a factory for the MutableBoards on which
+ *  searches (AI, Analysis, Perft) are done.  All engines follow the Board
+ *  contract, and their boards hash alike (see MutableBoard.hash), so they
+ *  are interchangeable and may share a SearchCache; they differ only in
+ *  speed and memory.  Engines are found by name through get; STRING, the
+ *  original MutableBoard, and PACKED, the PackedBoard, are built in, and
+ *  others may be added with register.
+ *  @author Austin Gandy
+ */
+abstract class BoardEngine {
+
+    /** An engine named NAME. */
+    BoardEngine(String name) {
+        _name = name;
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return a new N x N board of mine in initial configuration. */
+    abstract MutableBoard newBoard(int N);
+
+    /** Return a new board of mine holding a copy of BOARD, including its
+     *  move count and player to move, with no undo history. */
+    MutableBoard copy(Board board) {
+        MutableBoard result = newBoard(board.size());
+        result.copy(board);
+        return result;
+    }
+
+    /** Return an engine whose boards are CheckedBoards, running boards of
+     *  ENGINE in lockstep with MutableBoards and reporting any difference
+     *  between them. */
+    static BoardEngine checked(BoardEngine engine) {
+        return new BoardEngine(engine.name() + " (checked)") {
+            @Override
+            MutableBoard newBoard(int N) {
+                return new CheckedBoard(engine, N);
+            }
+        };
+    }
+
+    /** Make ENGINE available through get. */
+    static synchronized void register(BoardEngine engine) {
+        ENGINES.put(engine.name(), engine);
+    }
+
+    /** Return the engine named NAME, or null if there is none. */
+    static synchronized BoardEngine get(String name) {
+        return ENGINES.get(name);
+    }
+
+    /** Return the names of all engines, in order of registration. */
+    static synchronized ArrayList<String> names() {
+        return new ArrayList<String>(ENGINES.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+
+    /** Engines by name. */
+    private static final LinkedHashMap<String, BoardEngine> ENGINES =
+        new LinkedHashMap<String, BoardEngine>();
+
+    /** The original engine, which keeps squares as strings. */
+    static final BoardEngine STRING = new BoardEngine("string") {
+        @Override
+        MutableBoard newBoard(int N) {
+            return new MutableBoard(N);
+        }
+
+        @Override
+        MutableBoard copy(Board board) {
+            return new MutableBoard(board);
+        }
+    };
+
+    /** The engine that keeps squares only as ints (see PackedBoard). */
+    static final BoardEngine PACKED = new BoardEngine("packed") {
+        @Override
+        MutableBoard newBoard(int N) {
+            return new PackedBoard(N);
+        }
+    };
+
+    static {
+        register(STRING);
+        register(PACKED);
+    }
+
+    /** My name. */
+    private final String _name;
+
+}
@@ -0,0 +1,307 @@
+package jump61;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/** A stream of the changes to one board, for spectators, user interfaces
+ *  and loggers that would otherwise have to dump and re-read the whole
+ *  board after every move.  A single thread (the one that changes the
+ *  board) publishes events:
+ *      cleared: the board was cleared or resized, or a copy of the whole
+ *               board follows, as changes of its occupied squares,
+ *      changed: a square has a new color and number of spots,
+ *      moved:   a player made a move, whose changes precede it,
+ *      won:     a player has won.
+ *  Each event is one long in a ring buffer of fixed size.  Each Listener
+ *  subscribed has its own thread, which follows the ring at its own pace
+ *  and passes events on in order, so publishing never waits for a
+ *  listener and costs the same however many there are.  There are no
+ *  locks: the publisher writes a slot, fenced after the previous release,
+ *  and then advances the published sequence number with a release store,
+ *  and readers check after reading a slot that it has not since been
+ *  overwritten.
+ *
+ *  A listener that falls more than the size of the ring behind is told
+ *  how many events it missed, and the feed then publishes, on its next
+ *  change, a fresh copy of the whole board (cleared followed by every
+ *  occupied square) from which listeners can start again.  So the ring
+ *  should hold well over one event per square: a listener of a board with
+ *  more squares than that would miss part of every copy.
+ *  @author Austin Gandy
+ */
+class BoardFeed {
+
+    /** A receiver of the events of a BoardFeed, called on a thread of the
+     *  feed's, one event at a time, in the order published. */
+    interface Listener {
+        /** The board was cleared to N x N empty squares. */
+        void cleared(int N);
+        /** Square #SQ now holds SPOTS spots of color COLOR. */
+        void changed(int sq, Color color, int spots);
+        /** PLAYER moved at square #SQ; its changes have been reported. */
+        void moved(Color player, int sq);
+        /** WINNER has won. */
+        void won(Color winner);
+        /** COUNT events were lost; a copy of the board will follow. */
+        void missed(long count);
+    }
+
+    /** A feed whose ring holds 2**LOG2SIZE events. */
+    BoardFeed(int log2Size) {
+        _ring = new long[1 << log2Size];
+        _mask = _ring.length - 1;
+    }
+
+    /** A feed with a ring of the default size. */
+    BoardFeed() {
+        this(RING_BITS);
+    }
+
+    /** Start passing my events to LISTENER on a thread of its own,
+     *  beginning, at the next change, with a copy of the whole board.
+     *  Returns the subscription, which must be closed to stop it. */
+    Subscription subscribe(Listener listener) {
+        Subscription result = new Subscription(listener);
+        _subscriptions.add(result);
+        _resync = true;
+        THREADS.newThread(result).start();
+        return result;
+    }
+
+    /** Publish the differences between the board I last described and the
+     *  N x N board whose squares are encoded in CELLS (as by
+     *  MutableBoard.cell), and remember the new board.  Only changed
+     *  squares are published, unless N has changed, which publishes the
+     *  whole board. */
+    void update(int N, int[] cells) {
+        resync();
+        if (N != _N) {
+            _N = N;
+            _cells = new int[N * N];
+            put(CLEARED, 0, N);
+        }
+        for (int sq = 0; sq < N * N; sq += 1) {
+            if (cells[sq] != _cells[sq]) {
+                _cells[sq] = cells[sq];
+                put(CHANGED, sq, cells[sq]);
+            }
+        }
+        flush();
+    }
+
+    /** Publish that the board was cleared to N x N empty squares, even if
+     *  it already had that size, and remember the new board. */
+    void cleared(int N) {
+        resync();
+        _N = N;
+        _cells = new int[N * N];
+        put(CLEARED, 0, N);
+        flush();
+    }
+
+    /** Publish that PLAYER moved at square #SQ. */
+    void moved(Color player, int sq) {
+        resync();
+        put(MOVED, player.ordinal(), sq);
+        flush();
+    }
+
+    /** Publish that WINNER has won. */
+    void won(Color winner) {
+        resync();
+        put(WON, 0, winner.ordinal());
+        flush();
+    }
+
+    /** Return the number of events published so far. */
+    long published() {
+        return (long) PUBLISHED.getAcquire(this);
+    }
+
+    /** Append an event of type TYPE with fields HIGH and LOW to the ring
+     *  and publish it. */
+    private void put(int type, int high, int low) {
+        long seq = _published;
+        /* Order the slot's new value after the release of the previous
+         * sequence number, so that a reader that sees the new value also
+         * sees that number, and knows the slot is overwritten. */
+        VarHandle.storeStoreFence();
+        RING.setOpaque(_ring, (int) seq & _mask,
+                       (long) type << TYPE_SHIFT | (long) high << 32
+                       | low & 0xffffffffL);
+        PUBLISHED.setRelease(this, seq + 1);
+    }
+
+    /** Publish a copy of the board I last described, if a listener has
+     *  fallen behind or just subscribed. */
+    private void resync() {
+        if (_resync && _N > 0) {
+            _resync = false;
+            put(CLEARED, 0, _N);
+            for (int sq = 0; sq < _N * _N; sq += 1) {
+                if (_cells[sq] != 0) {
+                    put(CHANGED, sq, _cells[sq]);
+                }
+            }
+        }
+    }
+
+    /** Wake any listeners waiting for events. */
+    private void flush() {
+        VarHandle.fullFence();
+        for (Subscription s : _subscriptions) {
+            if (s._waiting) {
+                LockSupport.unpark(s._thread);
+            }
+        }
+    }
+
+    /** The delivery of my events to one Listener. */
+    class Subscription implements Runnable, AutoCloseable {
+
+        /** A subscription for LISTENER, starting with the next event
+         *  published. */
+        Subscription(Listener listener) {
+            _listener = listener;
+            _next = published();
+        }
+
+        /** Return the number of events published before the next one I
+         *  will deliver. */
+        long delivered() {
+            return _delivered;
+        }
+
+        @Override
+        public void run() {
+            _thread = Thread.currentThread();
+            while (!_closed) {
+                long available = published();
+                if (available == _next) {
+                    _waiting = true;
+                    if (published() == _next && !_closed) {
+                        LockSupport.parkNanos(this, MAX_WAIT_NANOS);
+                    }
+                    _waiting = false;
+                    continue;
+                }
+                long event = (long) RING.getOpaque(_ring,
+                                                   (int) _next & _mask);
+                VarHandle.acquireFence();
+                long now = published();
+                if (now - _next >= _ring.length) {
+                    _resync = true;
+                    _listener.missed(now - _next);
+                    _next = now;
+                    _started = false;
+                } else {
+                    _started |= event >>> TYPE_SHIFT == CLEARED;
+                    if (_started) {
+                        deliver(event);
+                    }
+                    _next += 1;
+                }
+                _delivered = _next;
+            }
+        }
+
+        /** Stop delivering events. */
+        @Override
+        public void close() {
+            _closed = true;
+            _subscriptions.remove(this);
+            Thread thread = _thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /** Pass EVENT to my listener. */
+        private void deliver(long event) {
+            int high = (int) (event >>> 32) & ~(-1 << (TYPE_SHIFT - 32));
+            int low = (int) event;
+            switch ((int) (event >>> TYPE_SHIFT)) {
+            case CLEARED:
+                _listener.cleared(low);
+                break;
+            case CHANGED:
+                _listener.changed(high, COLORS[low & Evaluator.COLOR_MASK],
+                                  low >> Evaluator.COLOR_BITS);
+                break;
+            case MOVED:
+                _listener.moved(COLORS[high], low);
+                break;
+            default:
+                _listener.won(COLORS[low]);
+                break;
+            }
+        }
+
+        /** Where my events go. */
+        private final Listener _listener;
+        /** True once the copy of the board I start from (after subscribing
+         *  or missing events) has begun; events before it are skipped. */
+        private boolean _started;
+        /** Sequence number of the next event to deliver. */
+        private long _next;
+        /** Value of _next visible to other threads. */
+        private volatile long _delivered;
+        /** My thread, once it has started. */
+        private volatile Thread _thread;
+        /** True while my thread is waiting for events. */
+        private volatile boolean _waiting;
+        /** True once I have been closed. */
+        private volatile boolean _closed;
+    }
+
+    /** Event types. */
+    private static final int CLEARED = 0, CHANGED = 1, MOVED = 2, WON = 3;
+    /** Position of the type in an event. */
+    private static final int TYPE_SHIFT = 62;
+    /** Default log base 2 of the number of events in the ring, enough
+     *  for boards of up to about 90 x 90 squares. */
+    static final int RING_BITS = 14;
+    /** Longest a listener's thread waits before checking for events
+     *  again, in case a wake-up was missed. */
+    private static final long MAX_WAIT_NANOS = 1000000;
+    /** The colors, indexed by ordinal. */
+    private static final Color[] COLORS = Color.values();
+    /** Makes the threads of subscriptions. */
+    private static final ThreadFactory THREADS = Threads.daemons("feed");
+    /** Atomic access to the slots of the ring. */
+    private static final VarHandle RING =
+        MethodHandles.arrayElementVarHandle(long[].class);
+    /** Release and acquire access to _published. */
+    private static final VarHandle PUBLISHED;
+
+    static {
+        try {
+            PUBLISHED = MethodHandles.lookup()
+                .findVarHandle(BoardFeed.class, "_published", long.class);
+        } catch (ReflectiveOperationException excp) {
+            throw new ExceptionInInitializerError(excp);
+        }
+    }
+
+    /** The events, by sequence number modulo the size. */
+    private final long[] _ring;
+    /** Mask giving the slot of a sequence number. */
+    private final int _mask;
+    /** Number of events published. */
+    private long _published;
+    /** Size of the board last described. */
+    private int _N;
+    /** The squares of the board last described, as by
+     *  MutableBoard.cell. */
+    private int[] _cells = new int[0];
+    /** True iff a listener has fallen behind, so that a copy of the
+     *  board should be published. */
+    private volatile boolean _resync;
+    /** Current subscriptions. */
+    private final CopyOnWriteArrayList<Subscription> _subscriptions =
+        new CopyOnWriteArrayList<Subscription>();
+
+}
@@ -2,6 +2,9 @@ package jump61;
 
 import static jump61.Color.*;
 
+import java.util.ArrayList;
+import java.util.Random;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -87,6 +90,320 @@ public class BoardTest {
         B.undo();
         assertEquals("Undo not updating colors.", 1, B.getNumRed());
     }
+    @Test
+    public void testApplyMoves() {
+        Random random = new Random(35);
+        for (int g = 0; g < 20; g += 1) {
+            int size = 2 + g % 5;
+            MutableBoard one = new MutableBoard(size);
+            int[] squares = new int[200];
+            int n;
+            for (n = 0; n < squares.length && one.getWinner() == null;
+                 n += 1) {
+                int sq;
+                do {
+                    sq = random.nextInt(size * size);
+                } while (!one.isLegal(one.whoseMove(), sq / size + 1,
+                                      sq % size + 1));
+                squares[n] = sq;
+                one.addSpot(one.whoseMove(), sq / size + 1, sq % size + 1);
+            }
+            MutableBoard bulk = new MutableBoard(size);
+            assertEquals(n, bulk.applyMoves(squares, 0, n));
+            assertEquals(one.toString(), bulk.toString());
+            assertEquals(one.numMoves(), bulk.numMoves());
+            assertEquals(one.getNumRed(), bulk.getNumRed());
+            assertEquals(one.getNumBlue(), bulk.getNumBlue());
+            assertEquals(one.getWinner(), bulk.getWinner());
+            assertEquals(one.whoseMove(), bulk.whoseMove());
+        }
+        MutableBoard B = new MutableBoard(4);
+        int[] squares = { 0, 1, 1, 5, 0, -1 };
+        assertEquals("move into opponent's square", 2,
+                     B.applyMoves(squares, 0, squares.length));
+        assertEquals(2, B.numMoves());
+        assertEquals(RED, B.whoseMove());
+        assertEquals("move into opponent's square", 4,
+                     B.applyMoves(squares, 3, squares.length));
+        assertEquals(BLUE, B.whoseMove());
+        assertEquals("square off the board", 5,
+                     B.applyMoves(squares, 5, squares.length));
+    }
+
+    @Test
+    public void testWavefront() {
+        Random random = new Random(39);
+        for (int g = 0; g < 12; g += 1) {
+            int size = 3 + g;
+            MutableBoard one = new MutableBoard(size);
+            MutableBoard wave = new MutableBoard(size);
+            wave.setWaveSize(2);
+            while (one.getWinner() == null) {
+                int r, c;
+                do {
+                    r = random.nextInt(size) + 1;
+                    c = random.nextInt(size) + 1;
+                } while (!one.isLegal(one.whoseMove(), r, c));
+                one.addSpot(one.whoseMove(), r, c);
+                wave.addSpot(wave.whoseMove(), r, c);
+                assertEquals(one.getNumRed(), wave.getNumRed());
+                assertEquals(one.getNumBlue(), wave.getNumBlue());
+                if (one.getWinner() == null) {
+                    assertEquals(one.toString(), wave.toString());
+                }
+            }
+            wave.undo();
+            one.undo();
+            assertEquals(one.toString(), wave.toString());
+        }
+    }
+
+    @Test
+    public void testPerft() {
+        for (int size = 2; size <= 6; size += 1) {
+            for (int depth = 0; Perft.reference(size, depth) >= 0
+                     && depth <= 4; depth += 1) {
+                assertEquals("perft " + depth + " on " + size + "x" + size,
+                             Perft.reference(size, depth),
+                             Perft.count(new MutableBoard(size), depth));
+            }
+        }
+        MutableBoard B = new MutableBoard(3);
+        B.addSpot(RED, 2, 2);
+        long total = 0;
+        for (long n : Perft.divide(B, 4, 3)) {
+            total += n;
+        }
+        assertEquals(Perft.count(B, 4), total);
+    }
+
+    /** Check that PackedBoards agree with MutableBoards through random
+     *  games with undos, on small boards and on boards using Wavefront,
+     *  and in perft counts. */
+    @Test
+    public void testEngines() {
+        Random random = new Random(43);
+        BoardEngine checked = BoardEngine.checked(BoardEngine.PACKED);
+        for (int size = 1; size <= 8; size += 1) {
+            MutableBoard B = checked.newBoard(size);
+            B.setWaveSize(size <= 4 ? 64 : 5);
+            for (int k = 0; k < 300; k += 1) {
+                if (B.getWinner() != null || B.numMoves() > 0
+                    && random.nextInt(4) == 0) {
+                    B.undo();
+                    continue;
+                }
+                int sq;
+                do {
+                    sq = random.nextInt(size * size);
+                } while (!B.isLegal(B.whoseMove(), sq / size + 1,
+                                    sq % size + 1));
+                B.addSpot(B.whoseMove(), sq / size + 1, sq % size + 1);
+            }
+            MutableBoard copy = checked.copy(B);
+            assertEquals(B.toString(), copy.toString());
+        }
+        for (int size = 2; size <= 4; size += 1) {
+            assertEquals(Perft.reference(size, 4),
+                         Perft.count(BoardEngine.PACKED.newBoard(size), 4));
+        }
+        assertEquals(BoardEngine.PACKED, BoardEngine.get("packed"));
+        assertNull(BoardEngine.get("bitboard"));
+    }
+
+    /** Check that a BoardFeed's listeners can follow a board's changes,
+     *  for each engine, and catch up after falling behind. */
+    @Test
+    public void testFeed() throws InterruptedException {
+        Random random = new Random(45);
+        for (String name : BoardEngine.names()) {
+            MutableBoard B = BoardEngine.get(name).newBoard(4);
+            BoardFeed feed = new BoardFeed();
+            B.setFeed(feed);
+            Mirror mirror = new Mirror();
+            try (BoardFeed.Subscription sub = feed.subscribe(mirror)) {
+                B.clear(5);
+                for (int k = 0; k < 200; k += 1) {
+                    if (B.getWinner() != null) {
+                        B.clear(3 + random.nextInt(4));
+                    } else if (B.numMoves() > 0 && random.nextInt(4) == 0) {
+                        B.undo();
+                    } else {
+                        randomMove(B, random);
+                    }
+                    await(feed, sub);
+                    assertArrayEquals(name, B.getCells(), mirror.cells());
+                }
+                if (B.getWinner() == null) {
+                    randomMove(B, random);
+                }
+                int clears = mirror.clears();
+                B.clear(B.size());
+                await(feed, sub);
+                assertEquals(name, clears + 1, mirror.clears());
+                randomMove(B, random);
+                B.setSize(B.size());
+                await(feed, sub);
+                assertEquals(name, clears + 2, mirror.clears());
+                assertArrayEquals(name, B.getCells(), mirror.cells());
+                assertEquals(0, mirror.missed());
+            }
+        }
+
+        MutableBoard B = new MutableBoard(6);
+        BoardFeed feed = new BoardFeed(7);
+        B.setFeed(feed);
+        Mirror mirror = new Mirror();
+        mirror.block();
+        try (BoardFeed.Subscription sub = feed.subscribe(mirror)) {
+            for (int k = 0; k < 200 && B.getWinner() == null; k += 1) {
+                randomMove(B, random);
+            }
+            mirror.unblock();
+            await(feed, sub);
+            assertTrue(mirror.missed() > 0);
+            B.clear(6);
+            randomMove(B, random);
+            await(feed, sub);
+            assertArrayEquals(B.getCells(), mirror.cells());
+        }
+    }
+
+    /** Check that the accumulators of a Network kept by each engine's
+     *  boards through moves, cascades, undos and resizing always equal
+     *  those computed from scratch. */
+    @Test
+    public void testNetwork() {
+        Random random = new Random(48);
+        int hidden = 8;
+        short[] w1 = new short[Network.features(5) * hidden];
+        for (int i = 0; i < w1.length; i += 1) {
+            w1[i] = (short) (random.nextInt(17) - 8);
+        }
+        Network net = new Network(5, hidden, 64, 4, w1, new short[hidden],
+                                  new short[2 * hidden], 0);
+        ArrayList<BoardEngine> engines = new ArrayList<BoardEngine>();
+        for (String name : BoardEngine.names()) {
+            engines.add(BoardEngine.get(name));
+        }
+        engines.add(BoardEngine.checked(BoardEngine.PACKED));
+        for (BoardEngine engine : engines) {
+            MutableBoard B = engine.newBoard(5);
+            B.setNetwork(net);
+            for (int k = 0; k < 400; k += 1) {
+                if (k == 200) {
+                    B.setWaveSize(3);
+                }
+                if (B.getWinner() != null) {
+                    B.clear(5);
+                } else if (B.numMoves() > 0 && random.nextInt(4) == 0) {
+                    B.undo();
+                } else {
+                    randomMove(B, random);
+                }
+                Network.Accumulator fresh = net.newAccumulator();
+                fresh.refresh(B.getCells());
+                assertTrue(engine.name(),
+                           Network.agree(fresh, B.accumulator()));
+            }
+            B.clear(4);
+            assertNull(B.accumulator());
+            B.clear(5);
+            assertTrue(Network.agree(net.newAccumulator(),
+                                     B.accumulator()));
+        }
+    }
+
+    /** Make a random legal move on B, using RANDOM. */
+    private static void randomMove(MutableBoard B, Random random) {
+        int size = B.size();
+        int sq;
+        do {
+            sq = random.nextInt(size * size);
+        } while (!B.isLegal(B.whoseMove(), sq / size + 1, sq % size + 1));
+        B.addSpot(B.whoseMove(), sq / size + 1, sq % size + 1);
+    }
+
+    /** Wait until SUB has delivered everything published by FEED. */
+    private static void await(BoardFeed feed, BoardFeed.Subscription sub)
+        throws InterruptedException {
+        for (int k = 0; sub.delivered() != feed.published(); k += 1) {
+            assertTrue("feed stalled", k < 10000);
+            Thread.sleep(1);
+        }
+    }
+
+    /** A listener that keeps a copy of the board it is told about. */
+    private static class Mirror implements BoardFeed.Listener {
+        @Override
+        public void cleared(int N) {
+            waitUntilFree();
+            _cells = new int[N * N];
+            _clears += 1;
+        }
+
+        @Override
+        public void changed(int sq, Color color, int spots) {
+            waitUntilFree();
+            _cells[sq] = MutableBoard.cell(color, spots);
+        }
+
+        @Override
+        public void moved(Color player, int sq) {
+        }
+
+        @Override
+        public void won(Color winner) {
+        }
+
+        @Override
+        public void missed(long count) {
+            _missed += count;
+        }
+
+        /** Return my copy of the board's squares. */
+        synchronized int[] cells() {
+            return _cells.clone();
+        }
+
+        /** Return the number of events missed. */
+        long missed() {
+            return _missed;
+        }
+
+        /** Return the number of cleared events received. */
+        int clears() {
+            return _clears;
+        }
+
+        /** Hold up the next event until unblock is called. */
+        synchronized void block() {
+            _blocked = true;
+        }
+
+        /** Release the events held up by block. */
+        synchronized void unblock() {
+            _blocked = false;
+            notifyAll();
+        }
+
+        /** Wait while I am blocked. */
+        private synchronized void waitUntilFree() {
+            while (_blocked) {
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    return;
+                }
+            }
+        }
+
+        private int[] _cells = new int[0];
+        private volatile long _missed;
+        private volatile int _clears;
+        private boolean _blocked;
+    }
+
     private void checkBoard(String msg, Board B, Object... contents) {
         for (int k = 0; k < contents.length; k += 4) {
             String M = String.format("%s at %d %d", msg, contents[k],
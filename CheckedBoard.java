@@ -0,0 +1,226 @@
+package jump61;
+
+import java.util.Arrays;
+
+import static jump61.GameException.error;
+
+/** A board that runs a board of some engine in lockstep with a reference
+ *  MutableBoard, checking after every change that the two agree on every
+ *  square, the move count, the player to move, and the hash.  Queries are
+ *  answered by the board under test.  The first disagreement throws a
+ *  GameException naming the engine and the change.
+ *  @author Austin Gandy
+ */
+class CheckedBoard extends MutableBoard {
+
+    /** A checked N x N board in initial configuration, testing a board
+     *  of ENGINE. */
+    CheckedBoard(BoardEngine engine, int N) {
+        super(1);
+        _engine = engine;
+        _reference = new MutableBoard(N);
+        _test = engine.newBoard(N);
+        check("new board");
+    }
+
+    @Override
+    void clear(int N) {
+        _reference.clear(N);
+        _test.clear(N);
+        check("clear");
+    }
+
+    @Override
+    void setPosition(int N, int[] cells, int numMoves, Color player) {
+        _reference.setPosition(N, cells, numMoves, player);
+        _test.setPosition(N, cells, numMoves, player);
+        check("setPosition");
+    }
+
+    @Override
+    int applyMoves(int[] squares, int from, int to) {
+        int k = _reference.applyMoves(squares, from, to);
+        if (_test.applyMoves(squares, from, to) != k) {
+            throw diverged("applyMoves");
+        }
+        check("applyMoves");
+        return k;
+    }
+
+    @Override
+    void setWaveSize(int n) {
+        _reference.setWaveSize(n);
+        _test.setWaveSize(n);
+    }
+
+    @Override
+    public void setSize(int s) {
+        _reference.setSize(s);
+        _test.setSize(s);
+        check("setSize");
+    }
+
+    @Override
+    public void setCurrentPlayer(Color player) {
+        _reference.setCurrentPlayer(player);
+        _test.setCurrentPlayer(player);
+        check("setCurrentPlayer");
+    }
+
+    @Override
+    int size() {
+        return _test.size();
+    }
+
+    @Override
+    int spots(int r, int c) {
+        return _test.spots(r, c);
+    }
+
+    @Override
+    int spots(int n) {
+        return _test.spots(n);
+    }
+
+    @Override
+    Color color(int r, int c) {
+        return _test.color(r, c);
+    }
+
+    @Override
+    Color color(int n) {
+        return _test.color(n);
+    }
+
+    @Override
+    int numOfColor(Color color) {
+        return _test.numOfColor(color);
+    }
+
+    @Override
+    void addSpot(Color player, int r, int c) {
+        _reference.addSpot(player, r, c);
+        _test.addSpot(player, r, c);
+        check(String.format("addSpot %s %d %d", player, r, c));
+    }
+
+    @Override
+    void addSpot(Color player, int n) {
+        addSpot(player, n / size() + 1, n % size() + 1);
+    }
+
+    @Override
+    void set(int r, int c, int num, Color player) {
+        _reference.set(r, c, num, player);
+        _test.set(r, c, num, player);
+        check(String.format("set %d %d %d %s", r, c, num, player));
+    }
+
+    @Override
+    public void setColor(int r, int c, Color color) {
+        _reference.setColor(r, c, color);
+        _test.setColor(r, c, color);
+        check("setColor");
+    }
+
+    @Override
+    public void setSpots(int r, int c, int spots) {
+        _reference.setSpots(r, c, spots);
+        _test.setSpots(r, c, spots);
+        check("setSpots");
+    }
+
+    @Override
+    void setMoves(int num) {
+        _reference.setMoves(num);
+        _test.setMoves(num);
+        check("setMoves");
+    }
+
+    @Override
+    public void setNumMoves(int moves) {
+        _reference.setNumMoves(moves);
+        _test.setNumMoves(moves);
+        check("setNumMoves");
+    }
+
+    @Override
+    void undo() {
+        _reference.undo();
+        _test.undo();
+        check("undo");
+    }
+
+    @Override
+    public void addMove() {
+        _reference.addMove();
+        _test.addMove();
+    }
+
+    @Override
+    long hash() {
+        return _test.hash();
+    }
+
+    @Override
+    int[] getCells() {
+        return _test.getCells();
+    }
+
+    @Override
+    public int getNumRed() {
+        return _test.getNumRed();
+    }
+
+    @Override
+    public int getNumBlue() {
+        return _test.getNumBlue();
+    }
+
+    @Override
+    void setNetwork(Network network) {
+        _reference.setNetwork(network);
+        _test.setNetwork(network);
+    }
+
+    @Override
+    Network.Accumulator accumulator() {
+        return _test.accumulator();
+    }
+
+    /** Throw a GameException if my two boards disagree after operation
+     *  OP, and otherwise bring my move count and player to move up to
+     *  date. */
+    private void check(String op) {
+        int n = _reference.size();
+        if (_test.size() != n
+            || !Arrays.equals(_reference.getCells(), 0, n * n,
+                              _test.getCells(), 0, n * n)
+            || _test.numMoves() != _reference.numMoves()
+            || _test.whoseMove() != _reference.whoseMove()
+            || _test.numOfColor(Color.RED) != _reference.numOfColor(Color.RED)
+            || _test.numOfColor(Color.BLUE)
+               != _reference.numOfColor(Color.BLUE)
+            || _test.hash() != _reference.hash()
+            || !Network.agree(_test.accumulator(),
+                              _reference.accumulator())) {
+            throw diverged(op);
+        }
+        _numMoves = _reference.numMoves();
+        _currentPlayer = _reference.whoseMove();
+    }
+
+    /** Return an error reporting that my boards disagree after OP. */
+    private GameException diverged(String op) {
+        return error("board engine %s diverged from the string engine"
+                     + " after %s", _engine.name(), op);
+    }
+
+    /** The engine under test. */
+    private final BoardEngine _engine;
+    /** The board of the string engine. */
+    private final MutableBoard _reference;
+    /** The board of the engine under test. */
+    private final MutableBoard _test;
+
+}
@@ -0,0 +1,32 @@
+package jump61;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A flight-recorder event for the execution of one command line by a
+ *  Game, from the time it is read.  Disabled unless turned on by a
+ *  recording's settings (see jump61.jfc).
+ *  @author Austin Gandy
+ */
+@Name("jump61.Command")
+@Label("Command")
+@Category("Jump61")
+@Description("Execution of one command line")
+@Enabled(false)
+@StackTrace(false)
+class CommandEvent extends Event {
+
+    /** The command's name: its first word, or "move" for a move. */
+    @Label("Command")
+    String command;
+
+    /** True iff the command failed with an error. */
+    @Label("Failed")
+    boolean failed;
+
+}
@@ -0,0 +1,211 @@
+package jump61;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/** A source of command lines for a Game.  Lines are read from a Reader by
+ *  a background thread and queued, so that the Game can keep accepting
+ *  commands (e.g., 'dump' or 'stop') while one of its players is thinking.
+ *  Alternatively, for non-interactive use, lines may be read directly on
+ *  the thread that requests them, in which case they are tokenized in
+ *  place in my input buffer.
+ *
+ *  Lines end with a newline, a return, or both.  A final unterminated line
+ *  that contains only blanks does not count as a line.
+ *  @author Austin Gandy
+ */
+class CommandInput {
+
+    /** A new CommandInput that reads lines from INP on a thread made by
+     *  THREADS.  The reading thread is not started until the first line is
+     *  requested.  If THREADS is null, lines are read on the requesting
+     *  thread instead. */
+    CommandInput(Reader inp, ThreadFactory threads) {
+        _inp = inp;
+        _threads = threads;
+        _lines = new LinkedBlockingQueue<char[]>();
+    }
+
+    /** Wait for the next line of input.  Returns true iff there is one,
+     *  and false at end of input. */
+    boolean hasNext() {
+        if (_next == null && _threads == null) {
+            _next = readLine() ? HERE : END;
+        } else if (_next == null) {
+            _next = take();
+        }
+        return _next != END;
+    }
+
+    /** Returns true iff lines are read concurrently with their use, so
+     *  that poll can be used. */
+    boolean isConcurrent() {
+        return _threads != null;
+    }
+
+    /** Returns true iff end of input has been seen, so that poll and next
+     *  will never again yield a line. */
+    boolean ended() {
+        return _next == END;
+    }
+
+    /** Set TOKENS to the next line of input, waiting for it if necessary.
+     *  Returns false (leaving TOKENS unchanged) at end of input. */
+    boolean next(Tokens tokens) {
+        if (!hasNext()) {
+            return false;
+        }
+        if (_next == HERE) {
+            tokens.reset(_buf, _lineStart, _lineEnd);
+        } else {
+            tokens.reset(_next, 0, _next.length);
+        }
+        _next = null;
+        return true;
+    }
+
+    /** Set TOKENS to the next line of input and return true if one
+     *  arrives within MILLIS milliseconds.  Otherwise, or at end of input,
+     *  return false.  At end of input, this returns at once, so callers
+     *  should check ended() rather than poll in a loop.  Requires
+     *  isConcurrent(). */
+    boolean poll(long millis, Tokens tokens) {
+        if (_next == null) {
+            start();
+            try {
+                _next = _lines.poll(millis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (_next == null || _next == END) {
+            return false;
+        }
+        return next(tokens);
+    }
+
+    /** Return the next queued line, or END, waiting as needed. */
+    private char[] take() {
+        start();
+        try {
+            return _lines.take();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return END;
+        }
+    }
+
+    /** Start the reading thread, if not already started. */
+    private synchronized void start() {
+        if (_reader != null) {
+            return;
+        }
+        _reader = _threads.newThread(new Runnable() {
+            @Override
+            public void run() {
+                while (readLine()) {
+                    _lines.add(Arrays.copyOfRange(_buf, _lineStart,
+                                                  _lineEnd));
+                }
+                _lines.add(END);
+            }
+        });
+        _reader.start();
+    }
+
+    /** Read the next line into _buf[_lineStart .. _lineEnd), not including
+     *  its terminator.  Returns false at end of input. */
+    private boolean readLine() {
+        int scan = _pos;
+        while (true) {
+            for (; scan < _limit; scan += 1) {
+                char c = _buf[scan];
+                if (c == '\n' || c == '\r') {
+                    if (c == '\r' && scan + 1 == _limit && !_eof) {
+                        break;
+                    }
+                    _lineStart = _pos;
+                    _lineEnd = scan;
+                    _pos = scan + 1;
+                    if (c == '\r' && _pos < _limit && _buf[_pos] == '\n') {
+                        _pos += 1;
+                    }
+                    return true;
+                }
+            }
+            if (_eof) {
+                _lineStart = _pos;
+                _lineEnd = _limit;
+                _pos = _limit;
+                for (int i = _lineStart; i < _lineEnd; i += 1) {
+                    if (!Tokens.isBlank(_buf[i])) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            scan = fill(scan);
+        }
+    }
+
+    /** Read more input into _buf, first discarding the characters before
+     *  _pos and growing _buf if it is full.  SCAN is an index into _buf at
+     *  which scanning for a line end is to resume; returns its new
+     *  value. */
+    private int fill(int scan) {
+        if (_pos > 0) {
+            System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+            _limit -= _pos;
+            scan -= _pos;
+            _pos = 0;
+        }
+        if (_limit == _buf.length) {
+            _buf = Arrays.copyOf(_buf, 2 * _buf.length);
+        }
+        try {
+            int n = _inp.read(_buf, _limit, _buf.length - _limit);
+            if (n < 0) {
+                _eof = true;
+            } else {
+                _limit += n;
+            }
+        } catch (IOException excp) {
+            _eof = true;
+        }
+        return scan;
+    }
+
+    /** Marks end of input in _lines.  Compared by identity. */
+    private static final char[] END = new char[0];
+    /** Marks a line held in _buf rather than in _lines.  Compared by
+     *  identity. */
+    private static final char[] HERE = new char[0];
+    /** Initial size of _buf. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The source of lines. */
+    private final Reader _inp;
+    /** Input read from _inp.  Characters _buf[_pos .. _limit) are not yet
+     *  part of any line returned. */
+    private char[] _buf = new char[BUFFER_SIZE];
+    /** Bounds of unconsumed input in _buf. */
+    private int _pos, _limit;
+    /** Bounds of the last line read in _buf. */
+    private int _lineStart, _lineEnd;
+    /** True once _inp is exhausted. */
+    private boolean _eof;
+    /** Lines read but not yet requested, terminated by END. */
+    private final BlockingQueue<char[]> _lines;
+    /** Line taken from _lines but not yet consumed, HERE, or null. */
+    private char[] _next;
+    /** Source of the thread that fills _lines, or null if lines are read
+     *  on demand. */
+    private final ThreadFactory _threads;
+    /** Thread that fills _lines. */
+    private Thread _reader;
+}
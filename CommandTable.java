@@ -0,0 +1,63 @@
+package jump61;
+
+/** A table from command names to values of type T, looked up
+ *  case-insensitively and without allocation directly from the characters
+ *  of a token.  It is a trie with one node per distinct prefix of a name.
+ *  @author Austin Gandy
+ */
+class CommandTable<T> {
+
+    /** Enter VALUE as the value of NAME, which must consist of ASCII
+     *  letters. */
+    void put(String name, T value) {
+        Node<T> node = _root;
+        for (int i = 0; i < name.length(); i += 1) {
+            int c = index(Tokens.toLower(name.charAt(i)));
+            if (c < 0) {
+                throw new IllegalArgumentException("bad command name: "
+                                                   + name);
+            }
+            if (node.next[c] == null) {
+                node.next[c] = new Node<T>();
+            }
+            node = node.next[c];
+        }
+        node.value = value;
+    }
+
+    /** Return the value of the name in BUF[START .. END), or null if there
+     *  is none. */
+    T get(char[] buf, int start, int end) {
+        Node<T> node = _root;
+        for (int i = start; node != null && i < end; i += 1) {
+            int c = index(Tokens.toLower(buf[i]));
+            if (c < 0) {
+                return null;
+            }
+            node = node.next[c];
+        }
+        return node == null ? null : node.value;
+    }
+
+    /** Return the child index for lower-case letter C, or -1 if C is not
+     *  one. */
+    private static int index(char c) {
+        return c >= 'a' && c <= 'z' ? c - 'a' : -1;
+    }
+
+    /** A node of the trie. */
+    private static class Node<T> {
+        /** Children, indexed by letter. */
+        @SuppressWarnings("unchecked")
+        private final Node<T>[] next = (Node<T>[]) new Node<?>[LETTERS];
+        /** The value of the name leading here, or null. */
+        private T value;
+    }
+
+    /** Number of letters in names. */
+    private static final int LETTERS = 26;
+
+    /** Root of the trie, for the empty prefix. */
+    private final Node<T> _root = new Node<T>();
+
+}
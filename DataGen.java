@@ -0,0 +1,398 @@
+package jump61;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static jump61.Color.*;
+import static jump61.GameException.error;
+
+/** A generator of training data for evaluation functions: positions from
+ *  self-play games between AIs, each labeled with the search score of the
+ *  player to move and the eventual outcome of its game.  Games are played
+ *  in parallel, but written in order of game number, so that an
+ *  interrupted run can be resumed by running it again on the same file:
+ *  any partly written game at the end is discarded, and play continues
+ *  with the next game.  Game #G always has the same opening, from the seed
+ *  and G, and so (since the AIs are deterministic) the same positions.
+ *
+ *  The file starts with MAGIC, followed by a block for each game:
+ *      the byte GAME_TAG, the game number (int),
+ *      the board size N (byte), the number of positions (int),
+ *  followed by the positions, each
+ *      the player to move (byte: Color ordinal),
+ *      the outcome for that player (byte: 1 win, -1 loss, 0 unfinished),
+ *      the number of moves before it in the game (int),
+ *      the search score for the player to move (int),
+ *      the N * N squares in square-number order (bytes, encoded as by
+ *      MutableBoard.cell).
+ *  All numbers are big-endian.
+ *  @author Austin Gandy
+ */
+class DataGen {
+
+    /** Generate data as configured by ARGS, reporting on OUT.  ARGS are
+     *  options of the form
+     *     --out FILE       output file (default jump61.data)
+     *     --positions N    stop once the file has N positions
+     *                      (default 1000000)
+     *     --threads N      worker threads (default: all processors)
+     *     --sizes N,N,...  board sizes, used in rotation (default 6)
+     *     --depth N        AI search depth (default 3)
+     *     --random N       random plies at the start of each game
+     *                      (default 4)
+     *     --sample P       probability of labeling each position
+     *                      (default 0.25)
+     *     --seed N         seed for openings and sampling (default 0)
+     *  Returns an exit code.  Throws GameException on malformed
+     *  arguments. */
+    static int run(String[] args, PrintWriter out) {
+        DataGen gen = new DataGen();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw error("missing value for option: %s", args[i]);
+            }
+            gen.setOption(args[i], args[i + 1]);
+        }
+        try {
+            gen.generate(out);
+        } catch (IOException excp) {
+            out.printf("cannot write %s: %s%n", gen._path, excp.getMessage());
+            out.flush();
+            return 1;
+        }
+        return 0;
+    }
+
+    /** A new generator with default settings. */
+    DataGen() {
+        _path = Paths.get(DEFAULT_FILE);
+        _target = 1000000;
+        _threads = Runtime.getRuntime().availableProcessors();
+        _sizes = new int[] { Defaults.BOARD_SIZE };
+        _depth = 3;
+        _randomPlies = 4;
+        _sample = 0.25;
+    }
+
+    /** Set option NAME to VALUE, as described for run. */
+    void setOption(String name, String value) {
+        try {
+            switch (name) {
+            case "--out":
+                _path = Paths.get(value);
+                break;
+            case "--positions":
+                _target = Long.parseLong(value);
+                break;
+            case "--threads":
+                _threads = Math.max(1, Integer.parseInt(value));
+                break;
+            case "--sizes":
+                String[] sizes = value.split(",");
+                _sizes = new int[sizes.length];
+                for (int i = 0; i < sizes.length; i += 1) {
+                    _sizes[i] = Integer.parseInt(sizes[i]);
+                    if (_sizes[i] < 2 || _sizes[i] > MAX_SIZE) {
+                        throw error("board sizes must be 2 to %d", MAX_SIZE);
+                    }
+                }
+                break;
+            case "--depth":
+                _depth = Integer.parseInt(value);
+                break;
+            case "--random":
+                _randomPlies = Integer.parseInt(value);
+                break;
+            case "--sample":
+                _sample = Double.parseDouble(value);
+                break;
+            case "--seed":
+                _seed = Long.parseLong(value);
+                break;
+            default:
+                throw error("unknown option: %s", name);
+            }
+        } catch (NumberFormatException e) {
+            throw error("bad value for option %s: '%s'", name, value);
+        }
+    }
+
+    /** Open the output file, resume after its last complete game, play
+     *  games on my worker threads until the file holds the requested
+     *  number of positions, and report on OUT. */
+    void generate(PrintWriter out) throws IOException {
+        try (FileChannel file =
+             FileChannel.open(_path, StandardOpenOption.CREATE,
+                              StandardOpenOption.READ,
+                              StandardOpenOption.WRITE)) {
+            _file = file;
+            resume();
+            if (_nextToWrite > 0) {
+                out.printf("resuming %s after game %d (%d positions)%n",
+                           _path, _nextToWrite, _positions);
+                out.flush();
+            }
+            long resumed = _positions;
+            final AtomicInteger next = new AtomicInteger(_nextToWrite);
+            _done = _positions >= _target;
+            ExecutorService workers =
+                Executors.newFixedThreadPool(_threads,
+                                             Threads.daemons("datagen"));
+            long start = System.nanoTime();
+            for (int t = 0; t < _threads; t += 1) {
+                workers.execute(() -> {
+                    for (int g = next.getAndIncrement(); admit(g);
+                         g = next.getAndIncrement()) {
+                        deliver(g, playGame(g));
+                    }
+                });
+            }
+            workers.shutdown();
+            try {
+                workers.awaitTermination(Long.MAX_VALUE,
+                                         TimeUnit.NANOSECONDS);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            if (_error != null) {
+                throw _error;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long made = _positions - resumed;
+            out.printf("%d positions (%d new) from %d games in %.1f s "
+                       + "(%.0f positions/s on %d threads)%n",
+                       _positions, made, _nextToWrite, seconds,
+                       made / seconds, _threads);
+            out.flush();
+        }
+    }
+
+    /** Return the block for game #G, as described in the class
+     *  comment. */
+    ByteBuffer playGame(int g) {
+        int size = _sizes[g % _sizes.length];
+        int squares = size * size;
+        Random random = new Random(_seed * GAMES + g);
+        MutableBoard board = new MutableBoard(size);
+        for (int k = 0; k < _randomPlies && board.getWinner() == null;
+             k += 1) {
+            Color player = board.whoseMove();
+            int r, c;
+            do {
+                r = random.nextInt(size) + 1;
+                c = random.nextInt(size) + 1;
+            } while (!board.isLegal(player, r, c));
+            board.addSpot(player, r, c);
+        }
+        AI red = new AI(RED, _depth), blue = new AI(BLUE, _depth);
+        int maxPlies = MAX_PLIES_PER_SQUARE * squares;
+        ByteBuffer block = ByteBuffer.allocate(GAME_HEAD);
+        int count = 0;
+        block.position(GAME_HEAD);
+        for (int ply = 0; ply < maxPlies && board.getWinner() == null;
+             ply += 1) {
+            Color player = board.whoseMove();
+            AI ai = player == RED ? red : blue;
+            boolean sampled = random.nextDouble() < _sample;
+            int[] move = ai.chooseMove(board);
+            if (sampled) {
+                if (block.remaining() < POSITION_HEAD + squares) {
+                    block = grow(block, POSITION_HEAD + squares);
+                }
+                block.put((byte) player.ordinal());
+                block.put((byte) 0);
+                block.putInt(board.numMoves());
+                block.putInt(ai.getScore());
+                int[] cells = board.getCells();
+                for (int k = 0; k < squares; k += 1) {
+                    block.put((byte) cells[k]);
+                }
+                count += 1;
+            }
+            board.addSpot(player, move[0], move[1]);
+        }
+        Color winner = board.getWinner();
+        block.flip();
+        block.put(GAME_TAG);
+        block.putInt(g);
+        block.put((byte) size);
+        block.putInt(count);
+        for (int k = 0; k < count; k += 1) {
+            int p = GAME_HEAD + k * (POSITION_HEAD + squares);
+            Color player = COLORS[block.get(p)];
+            block.put(p + 1, (byte) (winner == null ? 0
+                                     : winner == player ? 1 : -1));
+        }
+        block.rewind();
+        return block;
+    }
+
+    /** Wait until game #G is close enough to the next game to be written
+     *  that its block may be held in memory.  Return false if no more
+     *  games are to be played. */
+    private synchronized boolean admit(int g) {
+        while (!_done && g >= _nextToWrite + WINDOW * _threads) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                _done = true;
+            }
+        }
+        return !_done;
+    }
+
+    /** Accept BLOCK, the block for game #G, writing it and any blocks it
+     *  was holding up, in order.  Stops the generator once enough
+     *  positions are written. */
+    private synchronized void deliver(int g, ByteBuffer block) {
+        if (_done) {
+            return;
+        }
+        _pending.put(g, block);
+        try {
+            while (!_done && _pending.containsKey(_nextToWrite)) {
+                ByteBuffer next = _pending.remove(_nextToWrite);
+                _positions += next.getInt(COUNT_OFFSET);
+                while (next.hasRemaining()) {
+                    _file.write(next);
+                }
+                _nextToWrite += 1;
+                _done = _positions >= _target;
+            }
+        } catch (IOException excp) {
+            _error = excp;
+            _done = true;
+        }
+        notifyAll();
+    }
+
+    /** Check the header of the output file, or write one if it is empty,
+     *  then count its complete games and positions, discard any partial
+     *  game at the end, and position the file to append. */
+    private void resume() throws IOException {
+        long end = _file.size();
+        if (end == 0) {
+            _file.write(ByteBuffer.wrap(MAGIC));
+            return;
+        }
+        ByteBuffer head = ByteBuffer.allocate(GAME_HEAD);
+        _file.read(head, 0);
+        head.flip();
+        byte[] magic = new byte[MAGIC.length];
+        if (head.remaining() < MAGIC.length) {
+            throw new IOException("not a jump61 data file");
+        }
+        head.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a jump61 data file");
+        }
+        long pos = MAGIC.length;
+        while (pos < end) {
+            head.clear();
+            _file.read(head, pos);
+            head.flip();
+            if (head.remaining() < GAME_HEAD || head.get() != GAME_TAG) {
+                break;
+            }
+            int g = head.getInt();
+            int size = head.get();
+            int count = head.getInt();
+            long length = GAME_HEAD
+                + (long) count * (POSITION_HEAD + size * size);
+            if (pos + length > end) {
+                break;
+            }
+            if (g != _nextToWrite) {
+                throw new IOException("games out of order in data file");
+            }
+            _nextToWrite += 1;
+            _positions += count;
+            pos += length;
+        }
+        _file.truncate(pos);
+        _file.position(pos);
+    }
+
+    /** Return a buffer containing the contents of BLOCK (up to its
+     *  position), positioned at their end, with room for at least NEEDED
+     *  more bytes. */
+    private static ByteBuffer grow(ByteBuffer block, int needed) {
+        ByteBuffer result =
+            ByteBuffer.allocate(Math.max(2 * block.capacity(),
+                                         block.position() + needed));
+        block.flip();
+        result.put(block);
+        return result;
+    }
+
+    /** Default output file name. */
+    static final String DEFAULT_FILE = "jump61.data";
+    /** First bytes of a data file. */
+    private static final byte[] MAGIC = { 'J', '6', 'D', 1 };
+    /** First byte of each game block. */
+    private static final byte GAME_TAG = 'G';
+    /** Length of the header of a game block. */
+    private static final int GAME_HEAD = 10;
+    /** Offset of the position count in a game block. */
+    private static final int COUNT_OFFSET = 6;
+    /** Length of a position, not counting its squares. */
+    private static final int POSITION_HEAD = 10;
+    /** Largest board size (whose squares still fit in a byte). */
+    private static final int MAX_SIZE = 64;
+    /** Games longer than this many plies per square are abandoned. */
+    private static final int MAX_PLIES_PER_SQUARE = 20;
+    /** Games per worker thread that may be finished but not yet
+     *  written. */
+    private static final int WINDOW = 4;
+    /** Spacing of game seeds for different values of --seed. */
+    private static final long GAMES = 1L << 32;
+    /** The colors, indexed by ordinal. */
+    private static final Color[] COLORS = Color.values();
+
+    /** Output file name. */
+    private Path _path;
+    /** Number of positions wanted in the file. */
+    private long _target;
+    /** Number of worker threads. */
+    private int _threads;
+    /** Board sizes, used in rotation. */
+    private int[] _sizes;
+    /** AI search depth. */
+    private int _depth;
+    /** Number of random plies at the start of each game. */
+    private int _randomPlies;
+    /** Probability that a position is labeled. */
+    private double _sample;
+    /** Seed for openings and sampling. */
+    private long _seed;
+
+    /** The output file, while generating. */
+    private FileChannel _file;
+    /** Number of the next game to be written. */
+    private int _nextToWrite;
+    /** Number of positions written, including those already in the file
+     *  when resumed. */
+    private long _positions;
+    /** Finished games waiting for earlier ones to be written, by game
+     *  number. */
+    private final TreeMap<Integer, ByteBuffer> _pending =
+        new TreeMap<Integer, ByteBuffer>();
+    /** True once no more games should be played. */
+    private volatile boolean _done;
+    /** Error that stopped output, or null. */
+    private IOException _error;
+
+}
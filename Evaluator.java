@@ -0,0 +1,101 @@
+package jump61;
+
+/** Whole-board sums over the primitive square encoding of a MutableBoard
+ *  (see MutableBoard.getCells), used for counting colors, and the int16
+ *  arithmetic of a Network's layers.  This class computes them one
+ *  element at a time; a vectorized subclass is used instead when the JDK
+ *  and CPU support it (see get()).
+ *  @author Austin Gandy
+ */
+class Evaluator {
+
+    /** Number of low-order bits of a cell that hold its color's ordinal. */
+    static final int COLOR_BITS = 2;
+
+    /** Mask for the color bits of a cell. */
+    static final int COLOR_MASK = (1 << COLOR_BITS) - 1;
+
+    /** Return the Evaluator selected for this JVM. */
+    static Evaluator get() {
+        return INSTANCE;
+    }
+
+    /** Return the number of squares of color COLOR among CELLS[0 .. N). */
+    int count(int[] cells, int n, Color color) {
+        int c = color.ordinal();
+        int result = 0;
+        for (int i = 0; i < n; i += 1) {
+            if ((cells[i] & COLOR_MASK) == c) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Add W[ROW .. ROW + N) to SUMS[BASE .. BASE + N), elementwise. */
+    void addRow(short[] sums, int base, short[] w, int row, int n) {
+        for (int j = 0; j < n; j += 1) {
+            sums[base + j] += w[row + j];
+        }
+    }
+
+    /** Subtract W[ROW .. ROW + N) from SUMS[BASE .. BASE + N),
+     *  elementwise. */
+    void subtractRow(short[] sums, int base, short[] w, int row, int n) {
+        for (int j = 0; j < n; j += 1) {
+            sums[base + j] -= w[row + j];
+        }
+    }
+
+    /** Return the sum over 0 <= J < N of W[WBASE + J] times
+     *  SUMS[BASE + J] clipped to 0 .. CLIP (which is at most
+     *  Short.MAX_VALUE). */
+    int clippedDot(short[] sums, int base, short[] w, int wBase, int n,
+                   int clip) {
+        int result = 0;
+        for (int j = 0; j < n; j += 1) {
+            result += Math.min(Math.max(sums[base + j], 0), clip)
+                * w[wBase + j];
+        }
+        return result;
+    }
+
+    /** Return a short name for this kind of Evaluator. */
+    String name() {
+        return "scalar";
+    }
+
+    /** Return the vectorized Evaluator if the jdk.incubator.vector module
+     *  is present, the CPU offers vectors of at least MIN_LANES ints, and
+     *  the property jump61.simd is not "false".  Otherwise, return a
+     *  scalar Evaluator. */
+    private static Evaluator select() {
+        if (!"false".equals(System.getProperty("jump61.simd"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector")
+               .isPresent()) {
+            try {
+                Evaluator vector = (Evaluator)
+                    Class.forName("jump61.VectorEvaluator")
+                    .getDeclaredConstructor().newInstance();
+                if (vector.lanes() >= MIN_LANES) {
+                    return vector;
+                }
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                /* Fall through to scalar evaluation. */
+            }
+        }
+        return new Evaluator();
+    }
+
+    /** Return the number of ints processed per step. */
+    int lanes() {
+        return 1;
+    }
+
+    /** Fewest lanes for which vector evaluation is worthwhile. */
+    private static final int MIN_LANES = 4;
+
+    /** The Evaluator used by all boards. */
+    private static final Evaluator INSTANCE = select();
+
+}
@@ -1,11 +1,18 @@
 package jump61;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 
-import java.util.Scanner;
+import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
 
 import static jump61.Color.*;
 import static jump61.GameException.error;
@@ -24,31 +31,59 @@ class Game {
      *  INPUT, PROMPTS, OUTPUT, and ERROROUTPUT, and is responsible for
      *  closing them when its play method returns. */
     Game(Reader input, Writer prompts, Writer output, Writer errorOutput) {
+        this(input, prompts, output, errorOutput, Threads.daemons("input"));
+    }
+
+    /** As for Game(INPUT, PROMPTS, OUTPUT, ERROROUTPUT), but reads input on
+     *  a thread created by THREADS. */
+    Game(Reader input, Writer prompts, Writer output, Writer errorOutput,
+         ThreadFactory threads) {
+        this(input, prompts, output, errorOutput, threads, true);
+    }
+
+    /** As for Game(INPUT, PROMPTS, OUTPUT, ERROROUTPUT, THREADS).  Unless
+     *  INTERACTIVE, input is read on the thread that calls play (THREADS
+     *  may be null) and output is not flushed after each line. */
+    private Game(Reader input, Writer prompts, Writer output,
+                 Writer errorOutput, ThreadFactory threads,
+                 boolean interactive) {
         _board = new MutableBoard(Defaults.BOARD_SIZE);
         _readonlyBoard = new ConstantBoard(_board);
-        _prompter = new PrintWriter(prompts, true);
-        _inp = new Scanner(input);
-        _inp.useDelimiter("(?m)\\p{Blank}*$|^\\p{Blank}*|\\p{Blank}+");
-        _out = new PrintWriter(output, true);
-        _err = new PrintWriter(errorOutput, true);
+        _prompter = new PrintWriter(prompts, interactive);
+        _inp = new CommandInput(input, interactive ? threads : null);
+        _out = new PrintWriter(output, interactive);
+        _err = new PrintWriter(errorOutput, interactive);
         _quit = false;
         _noMove = false;
         _humanRed = new HumanPlayer(this, RED);
         _humanBlue = new HumanPlayer(this, BLUE);
         _autoRed = new AI(this, RED, 4, _board);
         _autoBlue = new AI(this, BLUE, 4, _board);
+        _autoRed.setCache(SearchCache.shared());
+        _autoBlue.setCache(SearchCache.shared());
+        _board.setFeed(_feed);
         _blue = _autoBlue;
         _red = _humanRed;
     }
 
+    /** Returns a Game for running a script non-interactively: it takes
+     *  commands from INPUT, prints normal output on OUTPUT and error
+     *  messages on ERROROUTPUT, and prints no prompts.  Output is flushed
+     *  only when play returns (or when OUTPUT decides to), and a searching
+     *  AI does not accept commands until it has moved.  Otherwise, the
+     *  output is the same as for an interactive Game. */
+    static Game batch(Reader input, Writer output, Writer errorOutput) {
+        return new Game(input, Writer.nullWriter(), output, errorOutput,
+                        null, false);
+    }
+
     /** Alternate constructor that makes testing this and AI significantly
      *  easier. Takes in INPUT, OUTPUT, and BOARD. */
     Game(Reader input, Writer output, MutableBoard board) {
         _board = board;
         _readonlyBoard = new ConstantBoard(_board);
         _prompter = new PrintWriter(output, true);
-        _inp = new Scanner(input);
-        _inp.useDelimiter("(?m)\\p{Blank}*$|^\\p{Blank}*|\\p{Blank}+");
+        _inp = new CommandInput(input, Threads.daemons("input"));
         _out = new PrintWriter(output, true);
         _err = new PrintWriter(output, true);
         _quit = false;
@@ -57,10 +92,31 @@ class Game {
         _humanBlue = new HumanPlayer(this, BLUE);
         _autoRed = new AI(this, RED, 4, _board);
         _autoBlue = new AI(this, RED, 4, _board);
+        _board.setFeed(_feed);
         _blue = _autoBlue;
         _red = _humanRed;
     }
 
+    /** Returns the session to which this game's searches are charged. */
+    SearchScheduler.Session session() {
+        return _session;
+    }
+
+    /** Returns the priority of the AIs' searches: INTERACTIVE when a human
+     *  is playing, who is waiting for the reply, and otherwise BATCH. */
+    SearchScheduler.Priority searchPriority() {
+        if (_red instanceof HumanPlayer || _blue instanceof HumanPlayer) {
+            return SearchScheduler.Priority.INTERACTIVE;
+        }
+        return SearchScheduler.Priority.BATCH;
+    }
+
+    /** Returns the stream of changes to the game board, which also reports
+     *  each move and each win. */
+    BoardFeed feed() {
+        return _feed;
+    }
+
     /** Returns a readonly view of the game board.  This board remains valid
      *  throughout the session. */
     Board getBoard() {
@@ -92,10 +148,46 @@ class Game {
                 _out.println(e.getMessage());
             }
         }
+        endRecord(WHITE);
         _out.flush();
+        _err.flush();
         return 0;
     }
 
+    /** If a game is being recorded, finish its record, noting WINNER as
+     *  the winner (WHITE if the game was abandoned), and append it to the
+     *  journal. */
+    private void endRecord(Color winner) {
+        if (!_recording) {
+            return;
+        }
+        _recording = false;
+        _record.finish(winner);
+        if (_journal != null) {
+            try {
+                _journal.append(_record);
+            } catch (IOException excp) {
+                _err.printf("Error: could not write journal: %s%n",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Stop any current game and set the board to the position after PLY
+     *  moves of game #GAME in the journal. */
+    private void replay(int game, int ply) {
+        if (_journal == null) {
+            throw error("No journal is being kept.");
+        }
+        endRecord(WHITE);
+        _playing = false;
+        try {
+            _journal.rebuild(game, ply, _board);
+        } catch (IOException excp) {
+            throw error("Could not read journal: %s", excp.getMessage());
+        }
+    }
+
     /** Get a move from my input and place its row and column in
      *  MOVE.  Returns true if this is successful, false if game stops
      *  or ends first. */
@@ -113,11 +205,58 @@ class Game {
         }
     }
 
+    /** Wait for SEARCH, which PLAYER has started, to yield a move,
+     *  meanwhile executing any commands that arrive, so that the user may
+     *  (for example) dump the board or stop the search.  Once input has
+     *  ended, just waits for the search.  Returns the row and column of
+     *  the move found, or null if play has stopped (because of 'quit',
+     *  'clear', or the like) before the search finished.  If the search
+     *  fails with a GameException, stops play and throws it. */
+    int[] awaitMove(AI player, CompletableFuture<int[]> search) {
+        _thinking = player;
+        try {
+            while (_inp.isConcurrent() && !_inp.ended()
+                   && !search.isDone()) {
+                if (_quit || !_playing) {
+                    player.stop();
+                    search.join();
+                    return null;
+                }
+                if (_inp.poll(POLL_MILLIS, _tokens)) {
+                    try {
+                        execute(_tokens);
+                    } catch (GameException e) {
+                        _out.println(e.getMessage());
+                    }
+                }
+            }
+            if (_quit || !_playing) {
+                return null;
+            }
+            return search.join();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof GameException) {
+                _playing = false;
+                throw (GameException) excp.getCause();
+            }
+            throw excp;
+        } finally {
+            _thinking = null;
+        }
+    }
+
     /** Add a spot to R C, if legal to do so. */
     void makeMove(int r, int c) {
         try {
             if (_board.getCurrentPlayer().playableSquare(_board.color(r, c))) {
-                _board.addSpot(_board.getCurrentPlayer(), r, c);
+                if (!_recording) {
+                    _record.begin(_board);
+                    _recording = true;
+                }
+                Color player = _board.getCurrentPlayer();
+                _board.addSpot(player, r, c);
+                _record.add((r - 1) * _board.size() + c - 1, _board);
+                _feed.moved(player, (r - 1) * _board.size() + c - 1);
             } else {
                 reportError("Square '%s', '%s' not a valid move"
                         + " for '%s'.", r, c, _board.getCurrentPlayer());
@@ -152,6 +291,8 @@ class Game {
             && _board.numMoves() > 1)) {
             _playing = false;
             _winner = reds == 0 ? "Blue" : "Red";
+            endRecord(reds == 0 ? BLUE : RED);
+            _feed.won(reds == 0 ? BLUE : RED);
             announceWinner();
             restartGame();
         }
@@ -192,6 +333,7 @@ class Game {
     /** Stop any current game and clear the board to its initial
      *  state. */
     private void clear() {
+        endRecord(WHITE);
         _playing = false;
         _board.clear(_board.size());
     }
@@ -201,6 +343,89 @@ class Game {
         _out.println(_board);
     }
 
+    /** Cause any AI search, analysis, or solve in progress to finish
+     *  promptly; an AI plays the best move it has found so far. */
+    private void stopSearch() {
+        if (_thinking != null) {
+            _thinking.stop();
+        }
+        if (_analysis != null) {
+            _analysis.stop();
+        }
+        if (_solver != null) {
+            _solver.stop();
+        }
+    }
+
+    /** Score every legal move for the player to move, printing each move
+     *  with its score and principal variation as soon as it is finished,
+     *  and then all of them, best first.  The argument in LINE, if any, is
+     *  either a search depth or a time limit, as in 5s.  Other commands
+     *  (in particular, 'stop') are accepted while the analysis runs, if
+     *  input is read concurrently. */
+    private void analyze(Tokens line) {
+        int depth = ANALYSIS_DEPTH;
+        long millis = 0;
+        if (line.size() > 1) {
+            String arg = line.get(1);
+            boolean timed = arg.endsWith("s");
+            int n;
+            try {
+                n = Integer.parseInt(timed ? arg.substring(0, arg.length() - 1)
+                                     : arg);
+            } catch (NumberFormatException e) {
+                n = -1;
+            }
+            if (n < 1 || !timed && n > MAX_ANALYSIS_DEPTH) {
+                throw error("Wrong argument for command analyze: '%s'", arg);
+            }
+            if (timed) {
+                depth = MAX_ANALYSIS_DEPTH;
+                millis = n * 1000L;
+            } else {
+                depth = n;
+            }
+        }
+        if (_searchCache == null) {
+            _searchCache = SearchCache.shared();
+        }
+        if (_searchCache == null) {
+            _searchCache = new SearchCache(CACHE_BITS);
+        }
+        _searchCache.newGeneration();
+        Analysis analysis =
+            new Analysis(_board, _searchCache, _engine, depth, millis,
+                         _session, _seed);
+        Analysis outer = _analysis;
+        _analysis = analysis;
+        int n = _board.size();
+        try {
+            while (!analysis.isDone()) {
+                if (_quit) {
+                    analysis.stop();
+                }
+                Analysis.Line result = analysis.next(POLL_MILLIS);
+                if (result != null) {
+                    _out.println(result.toString(n));
+                }
+                if (_inp.isConcurrent() && _inp.poll(0, _tokens)) {
+                    try {
+                        execute(_tokens);
+                    } catch (GameException e) {
+                        _out.println(e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            _analysis = outer;
+        }
+        _out.println(analysis.stopped() ? "Analysis stopped; best first:"
+                     : "Best first:");
+        for (Analysis.Line result : analysis.ranking()) {
+            _out.println(result.toString(n));
+        }
+    }
+
     /** Print a help message. */
     private void help() {
         Main.printHelpResource(HELP, _out);
@@ -211,17 +436,33 @@ class Game {
         _board.setNumMoves(n);
     }
 
-    /** Seed the random-number generator with SEED. */
-    private void setSeed(String[] seed) {
-        return;
+    /** Seed the random-number generator with the argument in LINE and
+     *  make all searches reproducible (see AI.setSeed): the AIs' moves,
+     *  fixed-depth analyses, and node counts then depend only on the seed
+     *  and the position.  'seed off' reseeds the generator unpredictably
+     *  and ends reproducible searching. */
+    private void setSeed(Tokens line) {
+        line.requireArgs(1, "seed");
+        if (line.get(1).equals("off")) {
+            _seed = null;
+            _random.setSeed(new Random().nextLong());
+        } else {
+            try {
+                _seed = Long.parseLong(line.get(1));
+            } catch (NumberFormatException excp) {
+                throw error("Wrong argument for command seed: '%s'",
+                            line.get(1));
+            }
+            _random.setSeed(_seed);
+        }
+        _autoRed.setSeed(_seed);
+        _autoBlue.setSeed(_seed);
     }
 
     /** Stop any current game and set the board to an empty N x N board
      *  with numMoves() == 0 and SIZE. */
     private void setSize(int size) {
-        if (size < 1) {
-            throw new NumberFormatException();
-        }
+        endRecord(WHITE);
         _playing = false;
         _board.clear(size);
     }
@@ -237,97 +478,435 @@ class Game {
     /** Read and execute one command.  Leave the input at the start of
      *  a line, if there is more input. */
     private void readExecuteCommand() {
-        String command = _inp.nextLine();
-        if (command.matches("[0-9]\\s+[0-9]")) {
-            String[] stuff = command.split("\\s");
-            _move[0] = Integer.parseInt(stuff[0]);
-            _move[1] = Integer.parseInt(stuff[1]);
-        } else {
-            executeCommand(command);
+        if (_inp.next(_tokens)) {
+            execute(_tokens);
         }
     }
 
-    /** Gather arguments and execute command CMND.  Throws GameException
-     *  on errors. */
-    private void executeCommand(String cmnd) {
-        cmnd = cmnd.toLowerCase();
-        String[] commands = cmnd.split("\\s+");
-        if (commands.length > 0) {
-            cmnd = commands[0];
+    /** Execute the command in LINE, which is either a move (two integers)
+     *  or some other command, recording a CommandEvent for it.  Throws
+     *  GameException on errors. */
+    private void execute(Tokens line) {
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        boolean failed = true;
+        try {
+            dispatch(line);
+            failed = false;
+        } finally {
+            if (event.shouldCommit()) {
+                event.command = line.size() == 0 ? ""
+                    : line.size() == 2 && line.isInt(0) ? "move"
+                    : line.get(0);
+                event.failed = failed;
+                event.commit();
+            }
         }
-        if (cmnd.matches("\\s*\n*") || cmnd.equals("\r\n")) {
+    }
+
+    /** Execute the command in LINE, as for execute. */
+    private void dispatch(Tokens line) {
+        _commandCount += 1;
+        if (line.size() == 0) {
             return;
-        } else if (cmnd.equals("#")) {
+        } else if (line.size() == 2 && line.isInt(0) && line.isInt(1)
+                   && line.intValue(0) >= 0 && line.intValue(1) >= 0) {
+            _move[0] = line.intValue(0);
+            _move[1] = line.intValue(1);
             return;
-        } else if (cmnd.equals("clear")) {
-            clear();
-        } else if (cmnd.equals("start")) {
-            _playing = true;
-        } else if (cmnd.equals("quit")) {
-            System.exit(0);
-        } else if (cmnd.equals("auto")) {
-            try {
-                setAuto(commands[1].toLowerCase());
-            } catch (ArrayIndexOutOfBoundsException e) {
-                throw error("Too few arguments for commnd: Auto");
+        }
+        char[] buf = line.buffer();
+        if (buf[line.start(0)] == '#') {
+            return;
+        }
+        Command command = COMMANDS.get(buf, line.start(0), line.end(0));
+        if (command == null) {
+            throw error("bad command: '%s'", line.get(0));
+        }
+        command.execute(this, line);
+    }
+
+    /** The action of a command other than a move. */
+    private interface Command {
+        /** Perform this command in GAME, with arguments taken from LINE,
+         *  whose first token is the command name. */
+        void execute(Game game, Tokens line);
+    }
+
+    /** All commands other than moves, by name. */
+    private static final CommandTable<Command> COMMANDS =
+        new CommandTable<Command>();
+
+    static {
+        COMMANDS.put("clear", (game, line) -> game.clear());
+        COMMANDS.put("start", (game, line) -> game._playing = true);
+        COMMANDS.put("quit", (game, line) -> {
+            game.stopSearch();
+            game._quit = true;
+            game._playing = false;
+        });
+        COMMANDS.put("stop", (game, line) -> game.stopSearch());
+        COMMANDS.put("auto",
+                     (game, line) -> game.setAuto(line.arg(1, "auto")));
+        COMMANDS.put("manual",
+                     (game, line) -> game.setManual(line.arg(1, "manual")));
+        COMMANDS.put("help", (game, line) -> game.help());
+        COMMANDS.put("seed", (game, line) -> game.setSeed(line));
+        COMMANDS.put("size", (game, line) -> {
+            line.requireArgs(1, "size");
+            if (!line.isInt(1) || line.intValue(1) < 1) {
+                throw error("Wrong arguments for size: '%s'", line.get(1));
             }
-        } else if (cmnd.equals("help")) {
-            help();
-        } else if (cmnd.equals("seed")) {
-            setSeed(commands);
-        } else if (cmnd.equals("manual")) {
-            setManual(commands[1].toLowerCase());
-        } else if (cmnd.equals("size")) {
-            try {
-                int size = Integer.parseInt(commands[1]);
-                setSize(size);
-            } catch (NumberFormatException e) {
-                throw error("Wrong arguments for size: '%s'", commands[1]);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                throw error("Too few arguments for command: size");
+            game.setSize(line.intValue(1));
+        });
+        COMMANDS.put("move", (game, line) ->
+                     game.setMoveNumber(line.intArg(1, "move")));
+        COMMANDS.put("set", (game, line) -> {
+            line.requireArgs(4, "'set'");
+            game.set(line.intArg(1, "set"), line.intArg(2, "set"),
+                     line.intArg(3, "set"), line.get(4));
+        });
+        COMMANDS.put("prune", (game, line) -> {
+            line.requireArgs(2, "prune");
+            game.setPruning(line.get(1), line.get(2));
+        });
+        COMMANDS.put("dump", (game, line) -> game.dump());
+        COMMANDS.put("analyze", (game, line) -> game.analyze(line));
+        COMMANDS.put("perft", (game, line) -> game.perft(line));
+        COMMANDS.put("bench", (game, line) -> game.bench(line));
+        COMMANDS.put("engine", (game, line) -> game.setEngine(line));
+        COMMANDS.put("solve", (game, line) -> game.solve(line));
+        COMMANDS.put("eval", (game, line) -> game.setEval(line));
+        COMMANDS.put("watch", (game, line) -> game.watch(line));
+        COMMANDS.put("budget", (game, line) -> game.setBudget(line));
+        COMMANDS.put("scheduler", (game, line) -> game.schedulerReport());
+        COMMANDS.put("workers", (game, line) ->
+                     game.setWorkers(line.arg(1, "workers")));
+        COMMANDS.put("replay", (game, line) ->
+                     game.replay(line.intArg(1, "replay"),
+                                 line.intArg(2, "replay")));
+    }
+
+    /** Count the positions reachable from the current one in the number
+     *  of moves given in LINE, reporting the count and the rate at which
+     *  positions were generated.  Further arguments are 'divide', to report
+     *  the count after each legal move separately, and 'parallel', to count
+     *  on all available processors. */
+    private void perft(Tokens line) {
+        int depth = line.intArg(1, "perft");
+        boolean divide = false;
+        int threads = 1;
+        for (int k = 2; k < line.size(); k += 1) {
+            if (line.get(k).equals("divide")) {
+                divide = true;
+            } else if (line.get(k).equals("parallel")) {
+                threads = Runtime.getRuntime().availableProcessors();
+            } else {
+                throw error("Wrong argument for command perft: '%s'",
+                            line.get(k));
             }
-        } else if (cmnd.equals("move")) {
-            try {
-                int move = Integer.parseInt(commands[1]);
-                setMoveNumber(move);
-            } catch (NumberFormatException e) {
-                throw error("Wrong arguments for size: '%s'", commands[1]);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                throw error("Too few arguments for command: move");
+        }
+        if (depth < 0) {
+            throw error("Wrong argument for command perft: '%s'",
+                        line.get(1));
+        }
+        long start = System.nanoTime();
+        long nodes;
+        int N = _board.size();
+        if (depth == 0) {
+            nodes = 1;
+        } else {
+            long[] counts = Perft.divide(_board, depth, threads, _engine);
+            nodes = 0;
+            for (int sq = 0; sq < counts.length; sq += 1) {
+                nodes += counts[sq];
+                if (divide && _board.isLegal(_board.whoseMove(), sq / N + 1,
+                                             sq % N + 1)) {
+                    _out.printf("%d %d: %d%n", sq / N + 1, sq % N + 1,
+                                counts[sq]);
+                }
             }
-        } else if (cmnd.equals("set")) {
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        _out.printf("perft %d: %d nodes in %.3f s (%.0f nodes/s)%n", depth,
+                    nodes, seconds, nodes / Math.max(seconds, 1e-9));
+        long expected = Perft.reference(N, depth);
+        if (_board.numOfColor(WHITE) == N * N && expected >= 0
+            && expected != nodes) {
+            _out.printf("perft %d: expected %d nodes from the empty board%n",
+                        depth, expected);
+        }
+    }
+
+    /** Search the Bench suite to the depth given in LINE (by default,
+     *  Bench.DEPTH) on boards of the current engine, and report the nodes
+     *  searched, the rate, and the signature. */
+    private void bench(Tokens line) {
+        int depth = Bench.DEPTH;
+        if (line.size() > 1) {
+            depth = line.intArg(1, "bench");
+            if (depth < 1) {
+                throw error("Wrong argument for command bench: '%s'",
+                            line.get(1));
+            }
+        }
+        Bench.bench(depth, _engine, _out);
+    }
+
+    /** Try to prove who wins the current position with a Solver,
+     *  generating at most the number of positions given in LINE (by
+     *  default, SOLVE_NODES), and report the result, the size of the proof
+     *  (if it can be found within the same limit), and the time taken.
+     *  The solver runs as a background search of my session; other
+     *  commands (in particular, 'stop') are accepted meanwhile, if input
+     *  is read concurrently. */
+    private void solve(Tokens line) {
+        long limit = line.size() > 1 ? line.intArg(1, "solve") : SOLVE_NODES;
+        if (limit < 1) {
+            throw error("Wrong argument for command solve: '%s'",
+                        line.get(1));
+        }
+        MutableBoard position = _engine.copy(_board);
+        Solver solver = new Solver(SOLVER_BITS);
+        Color player = position.whoseMove();
+        long start = System.nanoTime();
+        CompletableFuture<long[]> search = SearchScheduler.shared()
+            .submit(_session, SearchScheduler.Priority.BACKGROUND, () -> {
+                    int outcome = solver.solve(position, limit);
+                    return new long[] {
+                        outcome, outcome == Solver.UNKNOWN ? -1
+                        : solver.proofSize(position)
+                    };
+                });
+        Solver outer = _solver;
+        _solver = solver;
+        long[] answer;
+        try {
+            while (_inp.isConcurrent() && !_inp.ended()
+                   && !search.isDone()) {
+                if (_quit) {
+                    solver.stop();
+                }
+                if (_inp.poll(POLL_MILLIS, _tokens)) {
+                    try {
+                        execute(_tokens);
+                    } catch (GameException e) {
+                        _out.println(e.getMessage());
+                    }
+                }
+            }
+            answer = search.join();
+        } finally {
+            _solver = outer;
+        }
+        int result = (int) answer[0];
+        long proofSize = answer[1];
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (result == Solver.UNKNOWN) {
+            _out.printf("solve: unknown after %d nodes in %.3f s%n",
+                        solver.nodes(), seconds);
+            return;
+        }
+        String outcome = result == Solver.WIN ? "wins" : "loses";
+        int move = solver.move(), n = position.size();
+        if (move >= 0) {
+            outcome += String.format(" with %d %d", move / n + 1,
+                                     move % n + 1);
+        }
+        _out.printf("solve: %s %s (proof size %s, %d nodes in %.3f s)%n",
+                    player, outcome,
+                    proofSize < 0 ? "unknown" : Long.toString(proofSize),
+                    solver.nodes(), seconds);
+    }
+
+    /** Set how the AIs evaluate positions, according to LINE: 'eval
+     *  classic' to count squares, or 'eval FILE' to use the Network whose
+     *  weights are in FILE on boards of its size (and count squares on
+     *  others). */
+    private void setEval(Tokens line) {
+        line.requireArgs(1, "eval");
+        Network network = null;
+        if (!line.get(1).equals("classic")) {
             try {
-                set(commands[1], commands[2], commands[3], commands[4]);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                throw error("Too few arguments for command: 'set'");
+                network = Network.load(Paths.get(line.get(1)));
+            } catch (IOException excp) {
+                throw error("Could not read network: %s", excp.getMessage());
             }
-        } else if (cmnd.equals("dump")) {
-            _out.println(_board);
+            _out.printf("eval: network for %d x %d boards%n",
+                        network.size(), network.size());
+        }
+        _autoRed.setNetwork(network);
+        _autoBlue.setNetwork(network);
+    }
+
+    /** Limit the searches of this session to the number of milliseconds
+     *  of processor time given in LINE, in all, counted from now, or remove
+     *  the limit if it is 'off'.  Once the budget is used up, each search
+     *  plays the best move it has found at its first checkpoint, until the
+     *  budget is set again. */
+    private void setBudget(Tokens line) {
+        line.requireArgs(1, "budget");
+        if (line.get(1).equals("off")) {
+            _session.setBudget(0);
+        } else if (line.isInt(1) && line.intValue(1) > 0) {
+            _session.setBudget(line.intValue(1));
         } else {
-            throw error("bad command: '%s'", cmnd);
+            throw error("Wrong argument for command budget: '%s'",
+                        line.get(1));
         }
     }
 
-    /** sets square ROWSTR, COLSTR to SPOTS and COLOR. */
-    private void set(String rowStr, String colStr, String spots, String color) {
-        int row = -1;
-        int numSpots = -1;
-        int col = -1;
-        try {
-            row = Integer.parseInt(rowStr);
-        } catch (NumberFormatException e) {
-            throw error("Wrong argument for command set: '%s'", rowStr);
+    /** Print the state of the search scheduler, and this session's use of
+     *  it. */
+    private void schedulerReport() {
+        _out.printf("scheduler: %s%n", SearchScheduler.shared().report());
+        _out.printf("session: %d ms used, budget %s%n", _session.used(),
+                    _session.budget() == 0 ? "off"
+                    : String.format("%d ms (%d ms left)", _session.budget(),
+                                    _session.left()));
+    }
+
+    /** Start or stop (according to LINE: 'watch [on|off]') printing the
+     *  changes to the board as they happen, one per line, as
+     *      watch: board N           the board is now N x N, and empty
+     *                               except for the squares that follow
+     *      watch: square R C SQ     R C now holds SQ, as in a dump
+     *      watch: move COLOR R C    COLOR moved at R C
+     *      watch: winner COLOR      COLOR has won
+     *      watch: missed K          K changes were lost; a copy of the
+     *                               board follows with the next change
+     *  These are printed from the feed's own thread, so they may appear
+     *  while other commands run. */
+    private void watch(Tokens line) {
+        String setting = line.size() > 1 ? line.get(1) : "on";
+        if (setting.equals("on")) {
+            if (_watching == null) {
+                _watching = _feed.subscribe(new Watcher(_board.size()));
+            }
+        } else if (setting.equals("off")) {
+            if (_watching != null) {
+                _watching.close();
+                _watching = null;
+            }
+        } else {
+            throw error("Wrong argument for command watch: '%s'", setting);
         }
-        try {
-            col = Integer.parseInt(colStr);
-        } catch (NumberFormatException e) {
-            throw error("Wrong argument for command set: '%s'", colStr);
+    }
+
+    /** The listener that prints the changes to the board for 'watch'. */
+    private class Watcher implements BoardFeed.Listener {
+        /** A listener for changes to an N x N board. */
+        Watcher(int N) {
+            _size = N;
+        }
+
+        @Override
+        public void cleared(int N) {
+            _size = N;
+            _out.printf("watch: board %d%n", N);
+        }
+
+        @Override
+        public void changed(int sq, Color color, int spots) {
+            _out.printf("watch: square %d %d %s%s%n", sq / _size + 1,
+                        sq % _size + 1,
+                        color == WHITE ? "-" : color.toString().substring(0, 1),
+                        spots == 0 ? "-" : Integer.toString(spots));
+        }
+
+        @Override
+        public void moved(Color player, int sq) {
+            _out.printf("watch: move %s %d %d%n", player, sq / _size + 1,
+                        sq % _size + 1);
+            _out.flush();
+        }
+
+        @Override
+        public void won(Color winner) {
+            _out.printf("watch: winner %s%n", winner);
+            _out.flush();
+        }
+
+        @Override
+        public void missed(long count) {
+            _out.printf("watch: missed %d%n", count);
         }
+
+        /** Size of the board being watched. */
+        private int _size;
+    }
+
+    /** Turn the selective-search technique named NAME (lmr, futility, or
+     *  verify) on or off for both AIs, according to SETTING (on or off). */
+    private void setPruning(String name, String setting) {
+        AI.Pruning which;
         try {
-            numSpots = Integer.parseInt(spots);
-        } catch (NumberFormatException e) {
-            throw error("Wrong argument for command set: '%s'", spots);
+            which = AI.Pruning.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw error("Wrong argument for command prune: '%s'", name);
+        }
+        if (!setting.equals("on") && !setting.equals("off")) {
+            throw error("Wrong argument for command prune: '%s'", setting);
+        }
+        _autoRed.setPruning(which, setting.equals("on"));
+        _autoBlue.setPruning(which, setting.equals("on"));
+    }
+
+    /** Choose the board engine for searches from LINE: 'engine NAME'
+     *  selects the engine NAME, and 'engine NAME check' runs it in lockstep
+     *  with the string engine, reporting any difference.  With no
+     *  arguments, reports the current engine and the ones available.  The
+     *  game's own board is always a MutableBoard. */
+    private void setEngine(Tokens line) {
+        if (line.size() == 1) {
+            _out.printf("engine %s (available: %s)%n", _engine,
+                        String.join(", ", BoardEngine.names()));
+            return;
+        }
+        BoardEngine engine = BoardEngine.get(line.get(1));
+        if (engine == null || line.size() > 3
+            || line.size() == 3 && !line.get(2).equals("check")) {
+            throw error("Wrong arguments for command engine");
+        }
+        if (line.size() == 3) {
+            engine = BoardEngine.checked(engine);
         }
+        _engine = engine;
+        _autoRed.setEngine(engine);
+        _autoBlue.setEngine(engine);
+    }
+
+    /** Split the AIs' searches among the search workers listening on the
+     *  local host at the ports in PORTS, a comma-separated list, or stop
+     *  using workers if PORTS is 'off'. */
+    private void setWorkers(String ports) {
+        RemoteSearch remote = null;
+        if (!ports.equals("off")) {
+            ArrayList<InetSocketAddress> addresses =
+                new ArrayList<InetSocketAddress>();
+            InetAddress local = InetAddress.getLoopbackAddress();
+            for (String port : ports.split(",")) {
+                try {
+                    int number = Integer.parseInt(port);
+                    addresses.add(new InetSocketAddress(local, number));
+                } catch (IllegalArgumentException e) {
+                    throw error("Wrong argument for command workers: '%s'",
+                                port);
+                }
+            }
+            remote = new RemoteSearch(addresses);
+        }
+        if (_remote != null) {
+            _remote.close();
+        }
+        _remote = remote;
+        _autoRed.setRemote(remote);
+        _autoBlue.setRemote(remote);
+    }
+
+    /** sets square ROW, COL to SPOTS and COLOR (r or b). */
+    private void set(int row, int col, int numSpots, String color) {
+        endRecord(WHITE);
         _playing = false;
         Color player;
         if (color.equals("r")) {
@@ -344,11 +923,11 @@ class Game {
      *  token. */
     private boolean promptForNext() {
         if (_playing) {
-            _out.print(_board.getCurrentPlayer() + "> ");
+            _prompter.print(_board.getCurrentPlayer() + "> ");
         } else {
-            _out.print("> ");
+            _prompter.print("> ");
         }
-        _out.flush();
+        _prompter.flush();
         return _inp.hasNext();
     }
 
@@ -360,14 +939,19 @@ class Game {
         _err.println();
         promptForNext();
         _out.println();
-        _out.flush();
+    }
+
+    /** Returns the number of command lines executed so far. */
+    int commandCount() {
+        return _commandCount;
     }
 
     /** Writer on which to print prompts for input. */
     private final PrintWriter _prompter;
-    /** Scanner from current game input.  Initialized to return
-     *  newlines as tokens. */
-    private final Scanner _inp;
+    /** Lines of current game input. */
+    private final CommandInput _inp;
+    /** The tokens of the command being executed. */
+    private final Tokens _tokens = new Tokens();
     /** Outlet for responses to the user. */
     private final PrintWriter _out;
     /** Outlet for error responses to the user. */
@@ -375,11 +959,63 @@ class Game {
 
     /** The board on which I record all moves. */
     private final MutableBoard _board;
+    /** The changes to _board, and the moves and wins in it. */
+    private final BoardFeed _feed = new BoardFeed();
+    /** The subscription printing _feed for 'watch', or null. */
+    private BoardFeed.Subscription _watching;
     /** A readonly view of _board. */
     private final Board _readonlyBoard;
 
     /** A pseudo-random number generator used by players as needed. */
     private final Random _random = new Random();
+    /** The seed set by 'seed', or null if searches are not seeded. */
+    private Long _seed;
+
+    /** Milliseconds between checks on a running search while waiting for
+     *  commands. */
+    private static final long POLL_MILLIS = 10;
+
+    /** Where finished games are recorded, or null. */
+    private final Journal _journal = Journal.shared();
+    /** The record of the game in progress, if _recording. */
+    private final GameRecord _record = new GameRecord();
+    /** True iff moves are being recorded in _record. */
+    private boolean _recording;
+
+    /** Number of command lines executed. */
+    private int _commandCount;
+
+    /** The AI whose search is in progress, if any. */
+    private AI _thinking;
+
+    /** The analysis in progress, if any. */
+    private Analysis _analysis;
+    /** The solver running for 'solve', if any. */
+    private Solver _solver;
+    /** Search results kept between analyses (the host's shared cache, if
+     *  there is one), or null until the first. */
+    private SearchCache _searchCache;
+    /** Default search depth for 'analyze'. */
+    private static final int ANALYSIS_DEPTH = 4;
+    /** Greatest search depth for 'analyze'. */
+    private static final int MAX_ANALYSIS_DEPTH = 64;
+    /** Log base 2 of the number of entries in _searchCache. */
+    private static final int CACHE_BITS = 18;
+
+    /** Engine of the boards searched by the AIs, 'analyze', and
+     *  'perft'. */
+    private BoardEngine _engine = BoardEngine.STRING;
+    /** Default limit on the positions generated by 'solve'. */
+    private static final long SOLVE_NODES = 10000000;
+    /** Log base 2 of the number of entries in the table of 'solve'. */
+    private static final int SOLVER_BITS = 20;
+
+    /** The session to which searches in this game are charged. */
+    private final SearchScheduler.Session _session =
+        new SearchScheduler.Session();
+
+    /** Search workers used by the AIs, or null. */
+    private RemoteSearch _remote;
 
     /** True iff a game is currently in progress. */
     private boolean _playing;
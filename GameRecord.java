@@ -0,0 +1,139 @@
+package jump61;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** The record of one game: its starting position, its moves (as square
+ *  numbers), its winner, and copies of the position at every
+ *  CHECKPOINT_INTERVAL plies.  Records are written to and read back from a
+ *  Journal.
+ *  @author Austin Gandy
+ */
+class GameRecord {
+
+    /** Plies between position checkpoints. */
+    static final int CHECKPOINT_INTERVAL = 32;
+
+    /** An empty record, to be filled by begin or by a Journal. */
+    GameRecord() {
+        _moves = new int[INITIAL_MOVES];
+        _checkpoints = new ArrayList<int[]>();
+    }
+
+    /** Start recording a new game from position START, discarding any
+     *  previous contents. */
+    void begin(MutableBoard start) {
+        _size = start.size();
+        _startMoves = start.numMoves();
+        _startPlayer = start.whoseMove();
+        _winner = Color.WHITE;
+        _numMoves = 0;
+        _checkpoints.clear();
+        _checkpoints.add(start.getCells().clone());
+    }
+
+    /** Record a move to square #SQUARE, after which the position is
+     *  AFTER. */
+    void add(int square, MutableBoard after) {
+        addMove(square);
+        if (_numMoves % CHECKPOINT_INTERVAL == 0) {
+            _checkpoints.add(after.getCells().clone());
+        }
+    }
+
+    /** Record that WINNER won the game (WHITE if it was abandoned). */
+    void finish(Color winner) {
+        _winner = winner;
+    }
+
+    /** Return the board size. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the move number at the start (the number of moves made
+     *  before the first recorded one). */
+    int startMoves() {
+        return _startMoves;
+    }
+
+    /** Return the player to move at the start. */
+    Color startPlayer() {
+        return _startPlayer;
+    }
+
+    /** Return the winner, or WHITE if the game was abandoned. */
+    Color winner() {
+        return _winner;
+    }
+
+    /** Return the number of recorded moves. */
+    int numMoves() {
+        return _numMoves;
+    }
+
+    /** Return the square number of move #K (numbering from 0). */
+    int move(int k) {
+        return _moves[k];
+    }
+
+    /** Return my moves, as square numbers, in the first numMoves()
+     *  elements of an array that belongs to me. */
+    int[] moves() {
+        return _moves;
+    }
+
+    /** Return the number of checkpoints held. */
+    int numCheckpoints() {
+        return _checkpoints.size();
+    }
+
+    /** Return checkpoint #K, the cells (as for MutableBoard.getCells) of
+     *  the position after K * CHECKPOINT_INTERVAL moves. */
+    int[] checkpoint(int k) {
+        return _checkpoints.get(k);
+    }
+
+    /** Set the contents of this record, other than moves, to a game on a
+     *  SIZE x SIZE board starting after STARTMOVES moves with STARTPLAYER to
+     *  move, starting with the cells START, and won by WINNER.  Used by
+     *  Journal when reading. */
+    void reset(int size, int startMoves, Color startPlayer, Color winner,
+               int[] start) {
+        _size = size;
+        _startMoves = startMoves;
+        _startPlayer = startPlayer;
+        _winner = winner;
+        _numMoves = 0;
+        _checkpoints.clear();
+        _checkpoints.add(start);
+    }
+
+    /** Append square #SQUARE to my moves. */
+    void addMove(int square) {
+        if (_numMoves == _moves.length) {
+            _moves = Arrays.copyOf(_moves, 2 * _numMoves);
+        }
+        _moves[_numMoves] = square;
+        _numMoves += 1;
+    }
+
+    /** Initial capacity of _moves. */
+    private static final int INITIAL_MOVES = 64;
+
+    /** Board size. */
+    private int _size;
+    /** Move number at the start. */
+    private int _startMoves;
+    /** Player to move at the start. */
+    private Color _startPlayer;
+    /** The winner, or WHITE. */
+    private Color _winner;
+    /** Moves, as square numbers, in _moves[0 .. _numMoves). */
+    private int[] _moves;
+    /** Number of moves. */
+    private int _numMoves;
+    /** Positions after each multiple of CHECKPOINT_INTERVAL moves. */
+    private final ArrayList<int[]> _checkpoints;
+
+}
@@ -0,0 +1,371 @@
+package jump61;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static jump61.GameException.error;
+
+/** An append-only file of GameRecords.  The file starts with MAGIC, after
+ *  which each game is
+ *      the byte GAME_TAG,
+ *      the length in bytes of the rest of the record (varint),
+ *      size, starting move number (varints),
+ *      starting player, winner (one byte each: Color ordinals),
+ *      number of moves, checkpoint interval, number of checkpoints,
+ *      the length in bytes of each checkpoint (varints),
+ *      the checkpoints, each size * size cells (varints),
+ *      the moves, as square numbers (varints).
+ *  Varints are unsigned, seven bits per byte, least significant first, the
+ *  high bit marking all but the last byte.  A truncated final record (from
+ *  a crash during an append) is ignored.
+ *
+ *  Any position of a game can be rebuilt by seeking to the checkpoint at or
+ *  before it and replaying the following moves (see rebuild).  Games are
+ *  numbered from 1 in order of appearance.
+ *  @author Austin Gandy
+ */
+class Journal {
+
+    /** The journal at PATH, which need not exist yet. */
+    Journal(Path path) {
+        _path = path;
+        _offsets = new long[INITIAL_GAMES];
+    }
+
+    /** Return the journal shared by all Games in this JVM: the file named
+     *  by the property jump61.journal, by default DEFAULT_FILE.  Returns
+     *  null if the property is empty, disabling journaling. */
+    static synchronized Journal shared() {
+        if (_shared == null) {
+            String name = System.getProperty("jump61.journal", DEFAULT_FILE);
+            if (name.isEmpty()) {
+                return null;
+            }
+            _shared = new Journal(Paths.get(name));
+        }
+        return _shared;
+    }
+
+    /** Append RECORD to the file as a single write, first cutting off
+     *  any truncated record at its end, which would otherwise swallow
+     *  RECORD. */
+    synchronized void append(GameRecord record) throws IOException {
+        byte[] body = encode(record);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length
+                                                         + MAX_HEAD);
+        out.write(GAME_TAG);
+        writeVarint(out, body.length);
+        out.write(body, 0, body.length);
+        index();
+        try (FileChannel file =
+             FileChannel.open(_path, StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE)) {
+            if (_indexed < MAGIC.length || file.size() < MAGIC.length) {
+                file.truncate(0);
+                file.write(ByteBuffer.wrap(MAGIC), 0);
+                _indexed = MAGIC.length;
+            }
+            file.truncate(_indexed);
+            file.write(ByteBuffer.wrap(out.toByteArray()), _indexed);
+        }
+    }
+
+    /** Return the number of complete games in the file. */
+    synchronized int size() throws IOException {
+        index();
+        return _numGames;
+    }
+
+    /** Set BOARD to the position after the first PLY recorded moves of game
+     *  #GAME (numbering from 1).  Throws GameException if there is no such
+     *  game or ply. */
+    synchronized void rebuild(int game, int ply, MutableBoard board)
+        throws IOException {
+        index();
+        if (game < 1 || game > _numGames) {
+            throw error("no game %d in journal (%d games)", game, _numGames);
+        }
+        ByteBuffer body = read(game - 1);
+        int size = readVarint(body);
+        int startMoves = readVarint(body);
+        Color startPlayer = COLORS[body.get()];
+        body.get();
+        int numMoves = readVarint(body);
+        int interval = readVarint(body);
+        int numCheckpoints = readVarint(body);
+        if (ply < 0 || ply > numMoves) {
+            throw error("game %d has only %d moves", game, numMoves);
+        }
+        int k = Math.min(ply / interval, numCheckpoints - 1);
+        int skip = 0, total = 0;
+        for (int i = 0; i < numCheckpoints; i += 1) {
+            int length = readVarint(body);
+            if (i < k) {
+                skip += length;
+            }
+            total += length;
+        }
+        int checkpoints = body.position();
+        body.position(checkpoints + skip);
+        int[] cells = new int[size * size];
+        for (int i = 0; i < cells.length; i += 1) {
+            cells[i] = readVarint(body);
+        }
+        body.position(checkpoints + total);
+        for (int i = 0; i < k * interval; i += 1) {
+            readVarint(body);
+        }
+        Color player = (k * interval) % 2 == 0
+            ? startPlayer : startPlayer.opposite();
+        board.setPosition(size, cells, startMoves + k * interval, player);
+        int[] moves = new int[ply - k * interval];
+        for (int i = 0; i < moves.length; i += 1) {
+            moves[i] = readVarint(body);
+        }
+        board.applyMoves(moves, 0, moves.length);
+    }
+
+    /** A receiver of the games in a journal, as for scan. */
+    interface Visitor {
+        /** Receive game #GAME, whose contents are in RECORD.  RECORD is
+         *  only valid until this method returns.  Return false to stop
+         *  the scan. */
+        boolean visit(int game, GameRecord record);
+    }
+
+    /** Pass each game in the file, in order, to VISITOR, reading the file
+     *  sequentially and holding only one game in memory at a time.  Only
+     *  the starting position and the moves of each record are decoded.
+     *  Returns the number of games visited. */
+    int scan(Visitor visitor) throws IOException {
+        if (!Files.exists(_path)) {
+            return 0;
+        }
+        GameRecord record = new GameRecord();
+        byte[] buf = new byte[INITIAL_BUFFER];
+        int game;
+        game = 0;
+        try (DataInputStream in =
+             new DataInputStream(new BufferedInputStream(
+                                     Files.newInputStream(_path),
+                                     SCAN_BUFFER))) {
+            readMagic(in);
+            while (true) {
+                int tag = in.read();
+                if (tag != GAME_TAG) {
+                    break;
+                }
+                int length = readVarint(in);
+                if (length > buf.length) {
+                    buf = new byte[Math.max(length, 2 * buf.length)];
+                }
+                in.readFully(buf, 0, length);
+                decode(ByteBuffer.wrap(buf, 0, length), record);
+                game += 1;
+                if (!visitor.visit(game, record)) {
+                    break;
+                }
+            }
+        } catch (EOFException excp) {
+            /* Truncated last record: ignore it. */
+        }
+        return game;
+    }
+
+    /** Return the body of RECORD, as described in the class comment. */
+    private static byte[] encode(GameRecord record) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, record.size());
+        writeVarint(out, record.startMoves());
+        out.write(record.startPlayer().ordinal());
+        out.write(record.winner().ordinal());
+        writeVarint(out, record.numMoves());
+        writeVarint(out, GameRecord.CHECKPOINT_INTERVAL);
+        writeVarint(out, record.numCheckpoints());
+        ByteArrayOutputStream checkpoints = new ByteArrayOutputStream();
+        for (int k = 0; k < record.numCheckpoints(); k += 1) {
+            int before = checkpoints.size();
+            for (int cell : record.checkpoint(k)) {
+                writeVarint(checkpoints, cell);
+            }
+            writeVarint(out, checkpoints.size() - before);
+        }
+        out.write(checkpoints.toByteArray(), 0, checkpoints.size());
+        for (int k = 0; k < record.numMoves(); k += 1) {
+            writeVarint(out, record.move(k));
+        }
+        return out.toByteArray();
+    }
+
+    /** Set RECORD to the starting position and moves of the record body in
+     *  BODY. */
+    private static void decode(ByteBuffer body, GameRecord record) {
+        int size = readVarint(body);
+        int startMoves = readVarint(body);
+        Color startPlayer = COLORS[body.get()];
+        Color winner = COLORS[body.get()];
+        int numMoves = readVarint(body);
+        readVarint(body);
+        int numCheckpoints = readVarint(body);
+        int total = 0;
+        for (int i = 0; i < numCheckpoints; i += 1) {
+            total += readVarint(body);
+        }
+        int checkpoints = body.position();
+        int[] start = new int[size * size];
+        for (int i = 0; i < start.length; i += 1) {
+            start[i] = readVarint(body);
+        }
+        record.reset(size, startMoves, startPlayer, winner, start);
+        body.position(checkpoints + total);
+        for (int i = 0; i < numMoves; i += 1) {
+            record.addMove(readVarint(body));
+        }
+    }
+
+    /** Extend _offsets to cover all complete records in the file. */
+    private void index() throws IOException {
+        if (!Files.exists(_path)) {
+            return;
+        }
+        try (FileChannel file = FileChannel.open(_path)) {
+            long end = file.size();
+            if (_indexed == 0) {
+                _indexed = MAGIC.length;
+            }
+            ByteBuffer head = ByteBuffer.allocate(MAX_HEAD);
+            while (_indexed < end) {
+                head.clear();
+                file.read(head, _indexed);
+                head.flip();
+                if (head.remaining() < 2 || head.get() != GAME_TAG) {
+                    break;
+                }
+                int length;
+                try {
+                    length = readVarint(head);
+                } catch (BufferUnderflowException excp) {
+                    break;
+                }
+                long next = _indexed + head.position() + length;
+                if (next > end) {
+                    break;
+                }
+                if (_numGames == _offsets.length) {
+                    _offsets = Arrays.copyOf(_offsets, 2 * _numGames);
+                }
+                _offsets[_numGames] = _indexed;
+                _numGames += 1;
+                _indexed = next;
+            }
+        }
+    }
+
+    /** Return the body of record #K (numbering from 0), which must have
+     *  been indexed. */
+    private ByteBuffer read(int k) throws IOException {
+        try (FileChannel file = FileChannel.open(_path)) {
+            ByteBuffer head = ByteBuffer.allocate(MAX_HEAD);
+            file.read(head, _offsets[k]);
+            head.flip();
+            head.get();
+            int length = readVarint(head);
+            ByteBuffer body = ByteBuffer.allocate(length);
+            long pos = _offsets[k] + head.position();
+            while (body.hasRemaining()) {
+                if (file.read(body, pos + body.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            body.flip();
+            return body;
+        }
+    }
+
+    /** Check that IN starts with MAGIC. */
+    private static void readMagic(InputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        if (in.read(magic) != magic.length || !Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a jump61 journal");
+        }
+    }
+
+    /** Write X to OUT as a varint. */
+    static void writeVarint(ByteArrayOutputStream out, int x) {
+        while ((x & ~LOW_BITS) != 0) {
+            out.write((x & LOW_BITS) | MORE);
+            x >>>= 7;
+        }
+        out.write(x);
+    }
+
+    /** Read and return a varint from IN. */
+    static int readVarint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.get();
+            result |= (b & LOW_BITS) << shift;
+            if ((b & MORE) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Read and return a varint from IN. */
+    static int readVarint(DataInputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & LOW_BITS) << shift;
+            if ((b & MORE) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Default journal file name. */
+    static final String DEFAULT_FILE = "jump61.journal";
+    /** First bytes of a journal file. */
+    private static final byte[] MAGIC = { 'J', '6', '1', 1 };
+    /** First byte of each record. */
+    private static final int GAME_TAG = 'G';
+    /** Data bits in each byte of a varint. */
+    private static final int LOW_BITS = 0x7f;
+    /** Flag marking a varint byte that is not the last. */
+    private static final int MORE = 0x80;
+    /** Longest tag plus length prefix of a record. */
+    private static final int MAX_HEAD = 6;
+    /** Initial capacity of _offsets. */
+    private static final int INITIAL_GAMES = 64;
+    /** Initial size of the record buffer used by scan. */
+    private static final int INITIAL_BUFFER = 4096;
+    /** Size of the input buffer used by scan. */
+    private static final int SCAN_BUFFER = 1 << 16;
+    /** The colors, indexed by ordinal. */
+    private static final Color[] COLORS = Color.values();
+
+    /** The journal returned by shared(). */
+    private static Journal _shared;
+
+    /** The journal file. */
+    private final Path _path;
+    /** File offsets of the records in _offsets[0 .. _numGames). */
+    private long[] _offsets;
+    /** Number of games indexed. */
+    private int _numGames;
+    /** File offset up to which records have been indexed. */
+    private long _indexed;
+
+}
@@ -0,0 +1,144 @@
+package jump61;
+
+import static jump61.Color.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Unit tests of Journals.
+ *  @author Austin Gandy
+ */
+public class JournalTest {
+
+    /** Play a random game of up to N moves on a SIZE x SIZE board using
+     *  RANDOM, recording it in RECORD and each position's dump in
+     *  POSITIONS. */
+    private void playRandom(int size, int n, Random random,
+                            GameRecord record, ArrayList<String> positions) {
+        MutableBoard board = new MutableBoard(size);
+        record.begin(board);
+        positions.add(board.toString());
+        int all = size * size;
+        for (int k = 0; k < n && board.numOfColor(RED) != all
+                 && board.numOfColor(BLUE) != all; k += 1) {
+            Color player = board.whoseMove();
+            int r, c;
+            do {
+                r = random.nextInt(size) + 1;
+                c = random.nextInt(size) + 1;
+            } while (!board.isLegal(player, r, c));
+            board.addSpot(player, r, c);
+            record.add((r - 1) * size + c - 1, board);
+            positions.add(board.toString());
+        }
+        if (board.numOfColor(RED) == all) {
+            record.finish(RED);
+        } else if (board.numOfColor(BLUE) == all) {
+            record.finish(BLUE);
+        } else {
+            record.finish(WHITE);
+        }
+    }
+
+    @Test
+    public void testRebuild() throws IOException {
+        File file = File.createTempFile("jump61", ".journal");
+        file.delete();
+        try {
+            Journal journal = new Journal(file.toPath());
+            Random random = new Random(61);
+            ArrayList<ArrayList<String>> games =
+                new ArrayList<ArrayList<String>>();
+            for (int g = 0; g < 3; g += 1) {
+                GameRecord record = new GameRecord();
+                ArrayList<String> positions = new ArrayList<String>();
+                playRandom(4 + g, 100, random, record, positions);
+                journal.append(record);
+                games.add(positions);
+            }
+            assertEquals("wrong game count", 3, journal.size());
+            MutableBoard board = new MutableBoard(2);
+            for (int g = 0; g < games.size(); g += 1) {
+                ArrayList<String> positions = games.get(g);
+                for (int ply = 0; ply < positions.size(); ply += 1) {
+                    journal.rebuild(g + 1, ply, board);
+                    assertEquals("game " + (g + 1) + " ply " + ply,
+                                 positions.get(ply), board.toString());
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Check that an append after a record cut short by a crash replaces
+     *  that record, rather than being swallowed by it. */
+    @Test
+    public void testTornTail() throws IOException {
+        File file = File.createTempFile("jump61", ".journal");
+        file.delete();
+        try {
+            Random random = new Random(33);
+            ArrayList<ArrayList<String>> games =
+                new ArrayList<ArrayList<String>>();
+            for (int g = 0; g < 3; g += 1) {
+                if (g == 2) {
+                    try (FileOutputStream out =
+                         new FileOutputStream(file, true)) {
+                        out.write(new byte[] { 'G', 100, 5, 0, 1 });
+                    }
+                }
+                Journal journal = new Journal(file.toPath());
+                GameRecord record = new GameRecord();
+                ArrayList<String> positions = new ArrayList<String>();
+                playRandom(4, 30, random, record, positions);
+                journal.append(record);
+                games.add(positions);
+            }
+            Journal journal = new Journal(file.toPath());
+            assertEquals("wrong game count", 3, journal.size());
+            MutableBoard board = new MutableBoard(2);
+            for (int g = 0; g < games.size(); g += 1) {
+                ArrayList<String> positions = games.get(g);
+                int last = positions.size() - 1;
+                journal.rebuild(g + 1, last, board);
+                assertEquals("game " + (g + 1), positions.get(last),
+                             board.toString());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        File file = File.createTempFile("jump61", ".journal");
+        file.delete();
+        try {
+            Journal journal = new Journal(file.toPath());
+            Random random = new Random(62);
+            GameRecord record = new GameRecord();
+            ArrayList<String> positions = new ArrayList<String>();
+            playRandom(5, 40, random, record, positions);
+            journal.append(record);
+            journal.append(record);
+            final int[] moves = new int[2];
+            int n = journal.scan((game, rec) -> {
+                moves[game - 1] = rec.numMoves();
+                return true;
+            });
+            assertEquals("wrong number scanned", 2, n);
+            assertEquals("wrong moves", record.numMoves(), moves[0]);
+            assertEquals("wrong moves", record.numMoves(), moves[1]);
+        } finally {
+            file.delete();
+        }
+    }
+
+}
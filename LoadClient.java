@@ -0,0 +1,186 @@
+package jump61;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static jump61.GameException.error;
+
+/** A client that loads a local Server with many concurrent sessions and
+ *  measures the latency of commands: the time from sending a command line
+ *  until the prompt that follows its response arrives.
+ *  @author Austin Gandy
+ */
+class LoadClient {
+
+    /** Run a load test configured by ARGS, reporting on OUT.  ARGS are
+     *  options of the form
+     *     --port N          server port (default Server.DEFAULT_PORT)
+     *     --connections N   concurrent sessions (default 1000)
+     *     --commands N      commands sent per session (default 100)
+     *  Returns an exit code.  Throws GameException on malformed
+     *  arguments. */
+    static int run(String[] args, PrintWriter out) {
+        int port = Server.DEFAULT_PORT;
+        int connections = DEFAULT_CONNECTIONS;
+        int commands = DEFAULT_COMMANDS;
+        for (int i = 0; i < args.length; i += 2) {
+            try {
+                int value = Integer.parseInt(args[i + 1]);
+                if (args[i].equals("--port")) {
+                    port = value;
+                } else if (args[i].equals("--connections")) {
+                    connections = value;
+                } else if (args[i].equals("--commands")) {
+                    commands = value;
+                } else {
+                    throw error("unknown option: %s", args[i]);
+                }
+            } catch (NumberFormatException
+                     | ArrayIndexOutOfBoundsException excp) {
+                throw error("bad value for option: %s", args[i]);
+            }
+        }
+        return new LoadClient(port, connections, commands).measure(out);
+    }
+
+    /** A load test of CONNECTIONS sessions each sending COMMANDS commands
+     *  to the server on local PORT. */
+    LoadClient(int port, int connections, int commands) {
+        _port = port;
+        _connections = connections;
+        _commands = commands;
+        _latencies = new long[connections * commands];
+    }
+
+    /** Run the sessions concurrently, print latency percentiles and
+     *  throughput on OUT, and return an exit code. */
+    int measure(PrintWriter out) {
+        final CountDownLatch done = new CountDownLatch(_connections);
+        ThreadFactory threads = Threads.virtual("client");
+        long start = System.nanoTime();
+        for (int k = 0; k < _connections; k += 1) {
+            final int client = k;
+            threads.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        client(client);
+                    } catch (IOException excp) {
+                        _failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int n = _completed.get();
+        long[] latencies = Arrays.copyOf(_latencies, n);
+        Arrays.sort(latencies);
+        out.printf("%d connections, %d commands, %d failed sessions%n",
+                   _connections, n, _failures.get());
+        if (n > 0) {
+            out.printf("latency p50 %.3f ms  p99 %.3f ms  max %.3f ms%n",
+                       percentile(latencies, 0.50) / 1e6,
+                       percentile(latencies, 0.99) / 1e6,
+                       latencies[n - 1] / 1e6);
+        }
+        out.printf("%.0f commands/s%n", n / seconds);
+        out.flush();
+        return _failures.get() == 0 ? 0 : 1;
+    }
+
+    /** Run session #K: wait for the first prompt, then alternately send a
+     *  command and wait for the next prompt, recording latencies. */
+    private void client(int k) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        _port)) {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out =
+                new BufferedOutputStream(socket.getOutputStream());
+            awaitPrompt(in);
+            for (int i = 0; i < _commands; i += 1) {
+                byte[] command = SCRIPT[(k + i) % SCRIPT.length];
+                long start = System.nanoTime();
+                out.write(command);
+                out.flush();
+                awaitPrompt(in);
+                _latencies[_completed.getAndIncrement()] =
+                    System.nanoTime() - start;
+            }
+            out.write(QUIT);
+            out.flush();
+        }
+    }
+
+    /** Read IN up to and including the next prompt, which ends in '>'
+     *  followed by a blank. */
+    private static void awaitPrompt(InputStream in) throws IOException {
+        int prev = '\n';
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                throw new IOException("connection closed");
+            } else if (c == ' ' && prev == '>') {
+                return;
+            }
+            prev = c;
+        }
+    }
+
+    /** Return the element of SORTED at fraction P of its length. */
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1,
+                               (int) (p * sorted.length))];
+    }
+
+    /** Commands sent in rotation.  None of them starts a game, so each is
+     *  answered with the plain prompt. */
+    private static final byte[][] SCRIPT = {
+        bytes("dump\n"), bytes("set 2 3 2 r\n"), bytes("dump\n"),
+        bytes("clear\n"), bytes("size 6\n"),
+    };
+    /** Ends a session. */
+    private static final byte[] QUIT = bytes("quit\n");
+
+    /** Return the bytes of S. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Default number of connections. */
+    private static final int DEFAULT_CONNECTIONS = 1000;
+    /** Default number of commands per connection. */
+    private static final int DEFAULT_COMMANDS = 100;
+
+    /** Port of the server. */
+    private final int _port;
+    /** Number of concurrent sessions. */
+    private final int _connections;
+    /** Number of commands per session. */
+    private final int _commands;
+    /** Latencies of completed commands, in nanoseconds. */
+    private final long[] _latencies;
+    /** Number of commands completed. */
+    private final AtomicInteger _completed = new AtomicInteger();
+    /** Number of sessions that failed. */
+    private final AtomicInteger _failures = new AtomicInteger();
+
+}
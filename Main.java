@@ -1,12 +1,19 @@
 package jump61;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.CharArrayReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /** The jump61 game.
  * @author Austin Gandy
@@ -17,9 +24,60 @@ public class Main {
     static final String USAGE = "jump61/Usage.txt";
 
     /** Play jump61.  ARGS0 may consist of the single string
-     *  '--display' to indicate that the game is played using a GUI. Prints
-     *  a usage message if the arguments are wrong. */
+     *  '--display' to indicate that the game is played using a GUI.
+     *  Alternatively, it may be one of the following, followed by options
+     *  as described for the corresponding run method:
+     *     --match     play a headless match between AIs (Tournament);
+     *     --server    host sessions over local TCP connections (Server);
+     *     --loadtest  measure command latency on a server (LoadClient);
+     *     --datagen   write labeled positions from self-play (DataGen);
+     *     --worker    score moves for other processes' AIs (SearchWorker);
+     *     --bench     search a fixed suite of positions (Bench);
+     *     --batch F   run the commands in file F without prompts (batch).
+     *  Prints a usage message if the arguments are wrong.  Interactive
+     *  games and servers begin with a Warmup in the background. */
     public static void main(String[] args0) {
+        if (args0.length > 0 && args0[0].startsWith("--")
+            && !args0[0].equals("--display")) {
+            PrintWriter out = new PrintWriter(System.out);
+            try {
+                switch (args0[0]) {
+                case "--match":
+                    System.exit(Tournament.run(rest(args0), out));
+                    break;
+                case "--server":
+                    Warmup.start(BoardEngine.STRING,
+                                 new PrintWriter(System.err));
+                    System.exit(Server.run(rest(args0), out));
+                    break;
+                case "--loadtest":
+                    System.exit(LoadClient.run(rest(args0), out));
+                    break;
+                case "--datagen":
+                    System.exit(DataGen.run(rest(args0), out));
+                    break;
+                case "--worker":
+                    System.exit(SearchWorker.run(rest(args0), out));
+                    break;
+                case "--bench":
+                    System.exit(Bench.run(rest(args0), out));
+                    break;
+                case "--batch":
+                    if (args0.length != 2) {
+                        throw GameException.error("--batch needs one file");
+                    }
+                    System.exit(batch(args0[1]));
+                    break;
+                default:
+                    throw GameException.error("unknown mode: %s", args0[0]);
+                }
+            } catch (GameException excp) {
+                System.err.println(excp.getMessage());
+                usage();
+                System.exit(1);
+            }
+        }
+        Warmup.start(BoardEngine.STRING, new PrintWriter(System.err));
         Writer output = new OutputStreamWriter(System.out);
         Game game = new Game(new InputStreamReader(System.in),
                              output, output,
@@ -27,6 +85,49 @@ public class Main {
         System.exit(game.play());
     }
 
+    /** Run the commands in the file named SCRIPT as a Game would if they
+     *  were typed, but without prompts, and with output buffered and
+     *  flushed only every BATCH_BUFFER characters and at the end.  Reports
+     *  the number of commands per second on the standard error.  Returns
+     *  an exit code. */
+    static int batch(String script) {
+        CharBuffer commands;
+        try (FileChannel file = FileChannel.open(Paths.get(script))) {
+            commands = StandardCharsets.UTF_8.newDecoder()
+                .decode(file.map(FileChannel.MapMode.READ_ONLY, 0,
+                                 file.size()));
+        } catch (IOException excp) {
+            System.err.printf("cannot read %s: %s%n", script,
+                              excp.getMessage());
+            return 1;
+        }
+        Writer output =
+            new BufferedWriter(new OutputStreamWriter(System.out),
+                               BATCH_BUFFER);
+        Writer errors =
+            new BufferedWriter(new OutputStreamWriter(System.err),
+                               BATCH_BUFFER);
+        Game game = Game.batch(new CharArrayReader(commands.array(),
+                                                   commands.arrayOffset(),
+                                                   commands.remaining()),
+                               output, errors);
+        long start = System.nanoTime();
+        int code = game.play();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d commands in %.3f s (%.0f commands/s)%n",
+                          game.commandCount(), seconds,
+                          game.commandCount() / seconds);
+        return code;
+    }
+
+    /** Size of the output buffers in batch mode. */
+    static final int BATCH_BUFFER = 1 << 20;
+
+    /** Return ARGS without its first element. */
+    private static String[] rest(String[] args) {
+        return Arrays.copyOfRange(args, 1, args.length);
+    }
+
     /** Print the contents of the resource named NAME on OUT.
      *  NAME will typically be a file name based in one of the directories
      *  in the class path.  */
@@ -34,6 +135,9 @@ public class Main {
         try {
             InputStream resource =
                 Main.class.getClassLoader().getResourceAsStream(name);
+            if (resource == null) {
+                throw new IOException("missing resource: " + name);
+            }
             BufferedReader str =
                 new BufferedReader(new InputStreamReader(resource));
             for (String s = str.readLine(); s != null; s = str.readLine())  {
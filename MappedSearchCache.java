@@ -0,0 +1,167 @@
+package jump61;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** A SearchCache kept in a memory-mapped file, so that it survives the
+ *  process and may be shared by all processes on the host that map the
+ *  same file.  The file is a header of HEADER_BYTES bytes:
+ *      MAGIC, VERSION and log base 2 of the number of entries (int each),
+ *      a checksum of these, the current generation (long each),
+ *  followed by the entries, each a key check value and packed entry
+ *  (longs), as in SearchCache.  All values are little-endian.
+ *
+ *  Entries are read and written with single atomic (opaque) accesses to
+ *  the mapping, so that, as in SearchCache, racing writers, even in other
+ *  processes, at worst produce entries that fail their key checks.  A file
+ *  whose header is damaged or from another version is reset to an empty
+ *  cache when opened; a damaged entry merely fails its key check.  Each
+ *  opening starts a new generation, shared through the header.
+ *  @author Austin Gandy
+ */
+class MappedSearchCache extends SearchCache {
+
+    /** Return the cache in the file at PATH, creating it, or resetting it
+     *  if its header is damaged, with 2**LOG2SIZE entries (at most
+     *  2**MAX_BITS).  An existing cache keeps its own size. */
+    static MappedSearchCache open(Path path, int log2Size)
+        throws IOException {
+        log2Size = Math.max(1, Math.min(log2Size, MAX_BITS));
+        try (FileChannel file =
+             FileChannel.open(path, StandardOpenOption.CREATE,
+                              StandardOpenOption.READ,
+                              StandardOpenOption.WRITE)) {
+            FileLock lock = file.lock();
+            try {
+                return open(file, log2Size);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /** Return the cache in FILE, which is locked, as for open(PATH,
+     *  LOG2SIZE). */
+    private static MappedSearchCache open(FileChannel file, int log2Size)
+        throws IOException {
+        MappedByteBuffer header =
+            file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        int bits = header.getInt(BITS_OFFSET);
+        if (header.getInt(MAGIC_OFFSET) != MAGIC
+            || header.getInt(VERSION_OFFSET) != VERSION
+            || bits < 1 || bits > MAX_BITS
+            || header.getLong(CHECKSUM_OFFSET) != checksum(bits)
+            || file.size() != fileSize(bits)) {
+            bits = log2Size;
+            file.truncate(HEADER_BYTES);
+            header.putInt(MAGIC_OFFSET, 0);
+            header.force();
+            file.write(ByteBuffer.allocate(1), fileSize(bits) - 1);
+            header.putLong(GENERATION_OFFSET, 0);
+            header.putInt(BITS_OFFSET, bits);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putLong(CHECKSUM_OFFSET, checksum(bits));
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.force();
+        }
+        MappedByteBuffer map =
+            file.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(bits));
+        return new MappedSearchCache(bits, map);
+    }
+
+    /** A cache of 2**LOG2SIZE entries in MAP, a mapping of a whole file
+     *  with a valid header. */
+    private MappedSearchCache(int log2Size, MappedByteBuffer map) {
+        super(log2Size, null, null);
+        _map = map;
+        newGeneration();
+    }
+
+    @Override
+    void newGeneration() {
+        _generation = (long) LONGS.getAndAdd(_map, GENERATION_OFFSET, 1L)
+            + 1;
+    }
+
+    @Override
+    long generation() {
+        return _generation;
+    }
+
+    @Override
+    long check(int i) {
+        return (long) LONGS.getOpaque(_map, offset(i));
+    }
+
+    @Override
+    long entry(int i) {
+        return (long) LONGS.getOpaque(_map, offset(i) + Long.BYTES);
+    }
+
+    @Override
+    void put(int i, long check, long data) {
+        LONGS.setOpaque(_map, offset(i) + Long.BYTES, data);
+        LONGS.setOpaque(_map, offset(i), check);
+    }
+
+    /** Write changes to the file now, rather than when the operating
+     *  system chooses. */
+    void force() {
+        _map.force();
+    }
+
+    /** Return the offset in the file of slot I. */
+    private static int offset(int i) {
+        return HEADER_BYTES + i * ENTRY_BYTES;
+    }
+
+    /** Return the size of a file with 2**BITS entries. */
+    private static long fileSize(int bits) {
+        return HEADER_BYTES + ((long) ENTRY_BYTES << bits);
+    }
+
+    /** Return the checksum of a header for 2**BITS entries. */
+    private static long checksum(int bits) {
+        long h = ((long) MAGIC << 32 | VERSION) * CHECKSUM_MULTIPLIER + bits;
+        h ^= h >>> 31;
+        return h * CHECKSUM_MULTIPLIER;
+    }
+
+    /** First int of a valid file. */
+    private static final int MAGIC = 0x4a363143;
+    /** Version of the file format and of the entries' meaning, to be
+     *  increased when either changes. */
+    private static final int VERSION = 2;
+    /** Largest log base 2 of the number of entries, limited by the size
+     *  of a single mapping. */
+    static final int MAX_BITS = 26;
+    /** Offsets of the header fields. */
+    private static final int MAGIC_OFFSET = 0, VERSION_OFFSET = 4,
+        BITS_OFFSET = 8, CHECKSUM_OFFSET = 16, GENERATION_OFFSET = 24;
+    /** Size of the header, chosen to keep entries aligned. */
+    private static final int HEADER_BYTES = 64;
+    /** Size of an entry. */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    /** Odd multiplier for the header checksum. */
+    private static final long CHECKSUM_MULTIPLIER = 0x9e3779b97f4a7c15L;
+    /** Atomic access to the longs of a mapping. */
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class,
+                                              ByteOrder.LITTLE_ENDIAN);
+
+    /** The mapped file. */
+    private final MappedByteBuffer _map;
+    /** The generation that started when this cache was last opened or
+     *  newGeneration was called. */
+    private long _generation;
+
+}
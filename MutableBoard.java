@@ -3,6 +3,8 @@ package jump61;
 import static jump61.Color.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /** A Jump61 board state.
  *  @author Austin Gandy
@@ -19,15 +21,18 @@ class MutableBoard extends Board {
                 _squares[i][j] = "--";
             }
         }
+        _cells = new int[_numSquares];
         _moves = new ArrayList<String[][]>();
+        _cellMoves = new ArrayList<int[]>();
         _currentPlayer = RED;
     }
 
     /** A board whose initial contents are copied from BOARD0. Clears the
      *  undo history. */
     MutableBoard(Board board0) {
-        _squares = board0.getSquares();
-        _N = board0.size();
+        _moves = new ArrayList<String[][]>();
+        _cellMoves = new ArrayList<int[]>();
+        copy(board0);
     }
 
     /** sets _currentPlayer to PLAYER. */
@@ -40,34 +45,201 @@ class MutableBoard extends Board {
     @Override
     void clear(int N) {
         _N = N;
+        _numSquares = N * N;
         _numMoves = 0;
+        _numRed = 0;
+        _numBlue = 0;
         _squares = new String[N][N];
         for (int i = 0; i < size(); i += 1) {
             for (int j = 0; j < size(); j += 1) {
                 _squares[i][j] = "--";
             }
         }
+        _cells = new int[_numSquares];
+        _hashed = false;
+        _moves.clear();
+        _cellMoves.clear();
+        resetAccumulator();
+        publishCleared();
     }
 
-    /** Copy the contents of BOARD into me. */
+    /** Copy the contents of BOARD into me, including its move count and
+     *  player to move.  Clears the undo history.  BOARD may be any Board
+     *  (in particular, a ConstantBoard view), so squares are read through
+     *  its public accessors. */
     @Override
     void copy(Board board) {
-        _numBlue = 0;
-        _numRed = 0;
-        _numMoves = 0;
-        if (board.size() !=  _N) {
-            _squares = new String[board.size()][board.size()];
+        int N = board.size();
+        int[] cells = new int[N * N];
+        for (int i = 0; i < N; i += 1) {
+            for (int j = 0; j < N; j += 1) {
+                cells[i * N + j] = cell(board.color(i + 1, j + 1),
+                                        board.spots(i + 1, j + 1));
+            }
         }
-        String[][] squares = board.getSquares();
-        for (int i = 0; i < _squares.length; i += 1) {
-            for (int j = 0; j < _squares.length; j += 1) {
-                _squares[i][j] = squares[i][j];
-                if (board.color(i + 1, j + 1) == BLUE) {
-                    _numBlue += 1;
-                } else if (board.color(i + 1, j + 1) == RED) {
-                    _numRed += 1;
+        setPosition(N, cells, board.numMoves(), board.whoseMove());
+    }
+
+    /** Set me to an N x N position whose squares, in square-number order,
+     *  are encoded in CELLS as by cell, after NUMMOVES moves with PLAYER to
+     *  move.  Clears the undo history. */
+    void setPosition(int N, int[] cells, int numMoves, Color player) {
+        _N = N;
+        _numSquares = N * N;
+        _squares = new String[N][N];
+        _cells = Arrays.copyOf(cells, _numSquares);
+        _hashed = false;
+        updateSquares();
+        countColors();
+        _numMoves = numMoves;
+        _currentPlayer = player;
+        _moves.clear();
+        _cellMoves.clear();
+        resetAccumulator();
+        publish();
+    }
+
+    /** Play the moves SQUARES[FROM .. TO) (square numbers) in order, each
+     *  by the player to move, stopping before the first move that is
+     *  illegal or that comes after the game is won.  Returns the index in
+     *  SQUARES of the first move not played, which is TO if all were
+     *  played; getWinner() then gives the winner, if the game is over.
+     *  The moves are not recorded for undo: the undo history is cleared.
+     *  This gives the same result as calling addSpot for each move, but
+     *  works on the primitive form of the board, converting back only at
+     *  the end. */
+    int applyMoves(int[] squares, int from, int to) {
+        int all = _numSquares, k;
+        for (k = from; k < to; k += 1) {
+            int sq = squares[k];
+            if (sq < 0 || sq >= all || _numRed == all || _numBlue == all) {
+                break;
+            }
+            int color = _cells[sq] & Evaluator.COLOR_MASK;
+            int player = _currentPlayer.ordinal();
+            if (color != player && color != WHITE.ordinal()) {
+                break;
+            }
+            recolor(sq, player);
+            _cells[sq] += 1 << Evaluator.COLOR_BITS;
+            if (cellSpots(sq) > neighbors(sq) && _numRed != all
+                && _numBlue != all) {
+                if (_N >= _waveSize) {
+                    waveJump(sq);
+                } else {
+                    cellJump(sq);
                 }
             }
+            _numMoves += 1;
+            _currentPlayer = _currentPlayer.opposite();
+        }
+        if (k > from) {
+            _hashed = false;
+            updateSquares();
+            _moves.clear();
+            _cellMoves.clear();
+            resetAccumulator();
+            publish();
+        }
+        return k;
+    }
+
+    /** Do all jumping from square #SQ in _cells, as for jump, using the
+     *  parallel Wavefront engine.  Only _cells and the color counts are
+     *  updated; the rows of _squares from _wavefront.lowRow() to
+     *  _wavefront.highRow() (0-based) must be brought up to date. */
+    private void waveJump(int sq) {
+        if (_wavefront == null) {
+            _wavefront = new Wavefront(ForkJoinPool.commonPool());
+        }
+        int player = _cells[sq] & Evaluator.COLOR_MASK;
+        _wavefront.resolve(_cells, _N, sq, player,
+                           numOfColor(COLORS[player]));
+        _topples += _wavefront.topples();
+        _hashed = false;
+        countColors();
+    }
+
+    /** Use the parallel Wavefront engine for cascades on boards of at least
+     *  N squares on a side. */
+    void setWaveSize(int n) {
+        _waveSize = n;
+    }
+
+    /** Do all jumping from square #SQ in _cells, as for jump. */
+    private void cellJump(int sq) {
+        int all = _numSquares;
+        if (_numRed == all || _numBlue == all) {
+            return;
+        }
+        int player = _cells[sq] & Evaluator.COLOR_MASK;
+        int r = sq / _N, c = sq % _N;
+        _cells[sq] = (1 << Evaluator.COLOR_BITS) | player;
+        if (r > 0) {
+            cellSpill(sq - _N, player);
+        }
+        if (r < _N - 1) {
+            cellSpill(sq + _N, player);
+        }
+        if (c > 0) {
+            cellSpill(sq - 1, player);
+        }
+        if (c < _N - 1) {
+            cellSpill(sq + 1, player);
+        }
+    }
+
+    /** Add a spot of color PLAYER (an ordinal) to square #SQ in _cells,
+     *  jumping if it is then overfull, as for checkAndSet. */
+    private void cellSpill(int sq, int player) {
+        recolor(sq, player);
+        _cells[sq] += 1 << Evaluator.COLOR_BITS;
+        if (cellSpots(sq) > neighbors(sq)) {
+            cellJump(sq);
+        }
+    }
+
+    /** Give square #SQ in _cells color PLAYER (an ordinal), keeping the
+     *  color counts up to date. */
+    private void recolor(int sq, int player) {
+        int old = _cells[sq] & Evaluator.COLOR_MASK;
+        if (old == player) {
+            return;
+        }
+        if (old == RED.ordinal()) {
+            _numRed -= 1;
+        } else if (old == BLUE.ordinal()) {
+            _numBlue -= 1;
+        }
+        if (player == RED.ordinal()) {
+            _numRed += 1;
+        } else {
+            _numBlue += 1;
+        }
+        _cells[sq] = (_cells[sq] & ~Evaluator.COLOR_MASK) | player;
+    }
+
+    /** Return the number of spots on square #SQ according to _cells. */
+    private int cellSpots(int sq) {
+        return _cells[sq] >> Evaluator.COLOR_BITS;
+    }
+
+    /** Set _squares from _cells. */
+    private void updateSquares() {
+        updateSquares(0, _N - 1);
+    }
+
+    /** Set rows FROM through TO (0-based) of _squares from _cells. */
+    private void updateSquares(int from, int to) {
+        for (int i = from; i <= to; i += 1) {
+            for (int j = 0; j < _N; j += 1) {
+                int cell = _cells[i * _N + j];
+                Color color = COLORS[cell & Evaluator.COLOR_MASK];
+                int spots = cell >> Evaluator.COLOR_BITS;
+                _squares[i][j] =
+                    (color == WHITE ? "-" : color.toString().substring(0, 1))
+                    + (spots == 0 ? "-" : Integer.toString(spots));
+            }
         }
     }
 
@@ -80,9 +252,13 @@ class MutableBoard extends Board {
                 _squares[i][j] = "--";
             }
         }
+        _cells = new int[s * s];
+        _hashed = false;
         _numRed = 0;
         _numBlue = 0;
         _N = s;
+        resetAccumulator();
+        publishCleared();
     }
 
     @Override
@@ -149,6 +325,9 @@ class MutableBoard extends Board {
     @Override
     void addSpot(Color player, int r, int c) {
         assert player.playableSquare(color(r, c));
+        AddSpotEvent event = new AddSpotEvent();
+        event.begin();
+        _topples = 0;
         addMove();
         String spot = getSquare(r, c).substring(1);
         int spots;
@@ -161,10 +340,39 @@ class MutableBoard extends Board {
         setColor(r, c, player);
         if (isOverfull(r, c) && _numRed != size() * size()
                 && _numBlue != size() * size()) {
-            jump(r, c);
+            if (_N >= _waveSize) {
+                waveJump((r - 1) * _N + c - 1);
+                updateSquares(_wavefront.lowRow(), _wavefront.highRow());
+                if (_accumulator != null) {
+                    _accumulator.recompute(_cells);
+                }
+            } else {
+                jump(r, c);
+            }
         }
         _numMoves += 1;
         _currentPlayer = _currentPlayer.opposite();
+        publish();
+        if (event.shouldCommit()) {
+            event.size = _N;
+            event.row = r;
+            event.col = c;
+            event.touched = touched();
+            event.topples = _topples;
+            event.commit();
+        }
+    }
+
+    /** Return the number of squares changed by the last move. */
+    private int touched() {
+        int[] before = _cellMoves.get(_cellMoves.size() - 1);
+        int n = 0;
+        for (int k = 0; k < _numSquares; k += 1) {
+            if (before[k] != _cells[k]) {
+                n += 1;
+            }
+        }
+        return n;
     }
 
     @Override
@@ -184,6 +392,9 @@ class MutableBoard extends Board {
         setColor(r, c, player);
         setSpots(r, c, num);
         _moves.clear();
+        _cellMoves.clear();
+        resetAccumulator();
+        publish();
     }
 
     /** retrieves the square associated with the given row R and column C.
@@ -225,6 +436,7 @@ class MutableBoard extends Board {
         String spots = spots(r, c) != 0 ? Integer.toString(spots(r, c)) : "-";
         String col = color.toString().substring(0, 1);
         _squares[r - 1][c - 1] = col + spots;
+        updateCell(r, c);
     }
 
     /** sets the spots on square R, C to SPOTS. */
@@ -234,6 +446,7 @@ class MutableBoard extends Board {
             col = "-";
         }
         _squares[r - 1][c - 1] = col + Integer.toString(spots);
+        updateCell(r, c);
     }
 
     /** Set the square #N to NUM spots (0 <= NUM), and give it color PLAYER
@@ -257,27 +470,125 @@ class MutableBoard extends Board {
      *  was cleared, or the construction of this Board. */
     @Override
     void undo() {
-        _squares = _moves.get(_moves.size() - 1);
-        _moves.remove(_moves.size() - 1);
+        _squares = _moves.remove(_moves.size() - 1);
+        _cells = _cellMoves.remove(_cellMoves.size() - 1);
+        _hashed = false;
         _numMoves -= 1;
         _numRed = 0;
         _numBlue = 0;
         _currentPlayer = _currentPlayer.opposite();
         countColors();
+        if (_accumulator != null) {
+            _accumulator.pop();
+        }
+        publish();
+    }
+
+    /** Publish all changes to my squares on FEED, or stop publishing
+     *  them if FEED is null.  The squares are published at the end of each
+     *  operation that changes them (not while a cascade is in progress). */
+    void setFeed(BoardFeed feed) {
+        _feed = feed;
+        publish();
+    }
+
+    /** Publish the changes to my squares since the last publish, if I have
+     *  a feed. */
+    void publish() {
+        if (_feed != null) {
+            _feed.update(size(), getCells());
+        }
+    }
+
+    /** Publish that I have been cleared to empty squares, if I have a
+     *  feed. */
+    void publishCleared() {
+        if (_feed != null) {
+            _feed.cleared(size());
+        }
+    }
+
+    /** Keep the first layer of NETWORK up to date with my squares, as
+     *  they change, while my size is NETWORK's, or stop if NETWORK is
+     *  null. */
+    void setNetwork(Network network) {
+        _network = network;
+        resetAccumulator();
+    }
+
+    /** Return the first layer, for my current squares, of the network set
+     *  by setNetwork, or null if there is none or it is for boards of
+     *  another size. */
+    Network.Accumulator accumulator() {
+        return _accumulator;
+    }
+
+    /** Recompute _accumulator from scratch, if my network fits me. */
+    private void resetAccumulator() {
+        if (_network == null || _network.size() != _N) {
+            _accumulator = null;
+        } else {
+            if (_accumulator == null) {
+                _accumulator = _network.newAccumulator();
+            }
+            _accumulator.refresh(_cells);
+        }
     }
 
     /** Counts the number of reds and blues on the current board. */
     private void countColors() {
-        for (int i = 1; i <= size(); i += 1) {
-            for (int j = 1; j <= size(); j += 1) {
-                Color color = color(i, j);
-                if (color == BLUE) {
-                    _numBlue += 1;
-                } else if (color == RED) {
-                    _numRed += 1;
-                }
-            }
+        Evaluator eval = Evaluator.get();
+        _numRed = eval.count(_cells, _numSquares, RED);
+        _numBlue = eval.count(_cells, _numSquares, BLUE);
+    }
+
+    /** Returns the encoding in _cells of a square of color COLOR holding
+     *  SPOTS spots. */
+    static int cell(Color color, int spots) {
+        return (spots << Evaluator.COLOR_BITS) | color.ordinal();
+    }
+
+    /** Brings the entry of _cells for the square at row R, column C up to
+     *  date with _squares. */
+    private void updateCell(int r, int c) {
+        int sq = (r - 1) * _N + c - 1;
+        int old = _cells[sq];
+        _cells[sq] = cell(color(r, c), spots(r, c));
+        if (_accumulator != null) {
+            _accumulator.change(sq, old, _cells[sq]);
+        }
+        _hashed = false;
+    }
+
+    /** Returns a 64-bit hash of my size and squares (not including the
+     *  player to move), suitable for keying a SearchCache. */
+    long hash() {
+        if (!_hashed) {
+            _hash = hash(_N, _cells);
+            _hashed = true;
         }
+        return _hash;
+    }
+
+    /** Returns hash() for an N x N board whose squares are encoded in CELLS
+     *  as by cell.  Every BoardEngine's boards hash this way, so that they
+     *  may share SearchCaches. */
+    static long hash(int N, int[] cells) {
+        long h = N;
+        for (int k = 0; k < N * N; k += 1) {
+            h = h * HASH_MULTIPLIER + cells[k];
+        }
+        h ^= h >>> 33;
+        h *= HASH_MIX;
+        h ^= h >>> 29;
+        return h;
+    }
+
+    /** Returns the primitive encoding of my squares, in square-number
+     *  order, as defined by cell.  This is my own array, not a copy, and is
+     *  valid until my next modification. */
+    int[] getCells() {
+        return _cells;
     }
     /** True if the given square on R, C is full and thus must jump.
      *  @return whether the square is overfull. */
@@ -291,6 +602,7 @@ class MutableBoard extends Board {
     private void jump(int r, int c) {
         Color col = color(r, c);
         if (_numRed != size() * size() && _numBlue != size() * size()) {
+            _topples += 1;
             setSpots(r, c, 1);
             checkAndSet(r - 1, c, col);
             checkAndSet(r + 1, c, col);
@@ -355,6 +667,45 @@ class MutableBoard extends Board {
     /** stores all board positions to support undo method. */
     private ArrayList<String[][]> _moves;
 
+    /** The colors, indexed by ordinal. */
+    private static final Color[] COLORS = Color.values();
+
+    /** Multiplier used in accumulating hash(). */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    /** Multiplier used in finishing hash(). */
+    private static final long HASH_MIX = 0xBF58476D1CE4E5B9L;
+    /** Cached value of hash(), if _hashed. */
+    private long _hash;
+    /** True iff _hash is up to date. */
+    private boolean _hashed;
+
+    /** Default for _waveSize. */
+    static final int WAVE_SIZE = 64;
+    /** Cascades on boards at least this size are resolved by
+     *  _wavefront. */
+    private int _waveSize = WAVE_SIZE;
+    /** Engine for cascades on large boards, or null until first
+     *  needed. */
+    private Wavefront _wavefront;
+    /** The network whose first layer is kept in _accumulator, or null. */
+    private Network _network;
+    /** The first layer of _network for my squares, or null if _network
+     *  is null or does not fit me. */
+    private Network.Accumulator _accumulator;
+    /** Where changes to my squares are published, or null. */
+    private BoardFeed _feed;
+    /** Number of jumps made by the current or last addSpot. */
+    private int _topples;
+
+    /** The copies of _cells corresponding to _moves. */
+    private ArrayList<int[]> _cellMoves;
+
+    /** Each square, in square-number order, as its spots shifted left by
+     *  Evaluator.COLOR_BITS plus the ordinal of its color.  Mirrors
+     *  _squares in a form that whole-board sums can be computed over
+     *  quickly (see Evaluator). */
+    private int[] _cells;
+
     /** Returns _moves. */
     public ArrayList<String[][]> getMoves() {
         return _moves;
@@ -368,6 +719,10 @@ class MutableBoard extends Board {
             }
         }
         _moves.add(copy);
+        _cellMoves.add(_cells.clone());
+        if (_accumulator != null) {
+            _accumulator.push();
+        }
     }
     /** the number of squares on the board. */
     private int _numSquares;
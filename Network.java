@@ -0,0 +1,281 @@
+package jump61;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static jump61.GameException.error;
+
+/** A small quantized neural network for evaluating positions on N x N
+ *  boards, in the style of an NNUE: its first layer is kept, for each
+ *  board, in an Accumulator that is updated square by square as the board
+ *  changes, so that evaluating a position costs only the last layer.
+ *
+ *  The inputs are one-hot features of the squares from the point of view
+ *  of one player: for each square and each of "mine" and "the
+ *  opponent's", whether it holds 1, 2, 3, or SPOT_STATES or more spots.
+ *  The first layer maps these, for each player's point of view, to HIDDEN
+ *  int16 sums (the accumulator: a bias plus a weight column per feature
+ *  present).  The output, for player P, is
+ *      (sum over j of  clip(A_P[j]) * W2[j] + clip(A_Q[j]) * W2[H + j]
+ *       + B2) / DIVISOR,
+ *  where Q is P's opponent, A_P the sums from P's point of view, and
+ *  clip(x) = min(max(x, 0), CLIP).  DIVISOR is chosen in training to
+ *  give scores in the units of the classic evaluation (squares owned
+ *  less the opponent's).
+ *  The arithmetic on the sums and weights is done by the Evaluator, in
+ *  int16 SIMD lanes when the Vector API is present (see Evaluator.get),
+ *  and otherwise in plain loops.  Sums are
+ *  not checked for overflow; training (done outside this program, for
+ *  example on DataGen's positions) must keep them within range.
+ *
+ *  The weights file is little-endian:
+ *      MAGIC, VERSION, N, HIDDEN, CLIP, DIVISOR (ints),
+ *      W1: N * N * 2 * SPOT_STATES rows of HIDDEN weights (shorts),
+ *      B1: HIDDEN biases (shorts),
+ *      W2: 2 * HIDDEN weights (shorts),
+ *      B2 (int).
+ *  @author Austin Gandy
+ */
+class Network {
+
+    /** A network for N x N boards with HIDDEN accumulator sums per point
+     *  of view, clipped at CLIP, with first-layer weights W1 (one row of
+     *  HIDDEN per feature) and biases B1, output weights W2 and bias B2,
+     *  and output divisor DIVISOR. */
+    Network(int N, int hidden, int clip, int divisor, short[] w1,
+            short[] b1, short[] w2, int b2) {
+        if (N < 1 || hidden < 1 || clip < 1 || divisor < 1
+            || w1.length != features(N) * hidden || b1.length != hidden
+            || w2.length != 2 * hidden) {
+            throw error("malformed network");
+        }
+        _N = N;
+        _hidden = hidden;
+        _clip = clip;
+        _divisor = divisor;
+        _w1 = w1;
+        _b1 = b1;
+        _w2 = w2;
+        _b2 = b2;
+    }
+
+    /** Return the network in the file at PATH.  Throws GameException if
+     *  the file is not a valid weights file. */
+    static Network load(Path path) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < HEADER_INTS * Integer.BYTES
+            || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw error("%s is not a network weights file", path);
+        }
+        int n = in.getInt(), hidden = in.getInt();
+        int clip = in.getInt(), divisor = in.getInt();
+        if (n < 1 || n > MAX_SIZE || hidden < 1 || hidden > MAX_HIDDEN
+            || in.remaining() != Short.BYTES
+               * ((features(n) + 3) * hidden) + Integer.BYTES) {
+            throw error("network weights file %s is damaged", path);
+        }
+        short[] w1 = new short[features(n) * hidden];
+        short[] b1 = new short[hidden];
+        short[] w2 = new short[2 * hidden];
+        in.asShortBuffer().get(w1).get(b1).get(w2);
+        in.position(in.position() + Short.BYTES * (w1.length + b1.length
+                                                   + w2.length));
+        return new Network(n, hidden, clip, divisor, w1, b1, w2,
+                           in.getInt());
+    }
+
+    /** Write me to the file at PATH, in the form read by load. */
+    void write(Path path) throws IOException {
+        ByteBuffer out =
+            ByteBuffer.allocate(HEADER_INTS * Integer.BYTES
+                                + Short.BYTES * (_w1.length + _b1.length
+                                                 + _w2.length)
+                                + Integer.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(_N).putInt(_hidden)
+            .putInt(_clip).putInt(_divisor);
+        out.asShortBuffer().put(_w1).put(_b1).put(_w2);
+        out.position(out.position() + Short.BYTES * (_w1.length + _b1.length
+                                                     + _w2.length));
+        out.putInt(_b2);
+        Files.write(path, out.array());
+    }
+
+    /** Return the size of the boards I evaluate. */
+    int size() {
+        return _N;
+    }
+
+    /** Return a new accumulator for me, holding an empty board. */
+    Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    /** Return my evaluation, for PLAYER, of the board whose first layer is
+     *  in ACC. */
+    int evaluate(Accumulator acc, Color player) {
+        short[] sums = acc._sums;
+        int mine = player == Color.RED ? 0 : _hidden;
+        int theirs = _hidden - mine;
+        int total = EVAL.clippedDot(sums, mine, _w2, 0, _hidden, _clip)
+            + EVAL.clippedDot(sums, theirs, _w2, _hidden, _hidden, _clip);
+        return (total + _b2) / _divisor;
+    }
+
+    /** Return true iff A and B are both null or hold the same values. */
+    static boolean agree(Accumulator a, Accumulator b) {
+        return a == null ? b == null
+            : b != null && Arrays.equals(a._sums, b._sums);
+    }
+
+    /** Return the number of features of an N x N board, from one point of
+     *  view. */
+    static int features(int N) {
+        return N * N * 2 * SPOT_STATES;
+    }
+
+    /** Return the feature, from the point of view of the player whose
+     *  color has ordinal VIEW, of square #SQ holding CELL (encoded as by
+     *  MutableBoard.cell), or -1 if it is empty. */
+    private static int feature(int sq, int cell, int view) {
+        int spots = cell >> Evaluator.COLOR_BITS;
+        if (spots == 0) {
+            return -1;
+        }
+        int theirs = (cell & Evaluator.COLOR_MASK) == view ? 0 : 1;
+        return (sq * 2 + theirs) * SPOT_STATES
+            + Math.min(spots, SPOT_STATES) - 1;
+    }
+
+    /** The first layer of my network for one board, from both players'
+     *  points of view, with a stack of earlier values for undoing
+     *  moves. */
+    class Accumulator {
+
+        /** An accumulator for an empty board. */
+        Accumulator() {
+            _sums = new short[2 * _hidden];
+            _history = new short[HISTORY * _sums.length];
+            refresh(new int[_N * _N]);
+        }
+
+        /** Set me to the values for the board whose N * N squares are
+         *  encoded, as by MutableBoard.cell, in CELLS, and forget my
+         *  history. */
+        void refresh(int[] cells) {
+            _depth = 0;
+            recompute(cells);
+        }
+
+        /** Set me to the values for the board whose squares are CELLS, as
+         *  for refresh, but keep my history. */
+        void recompute(int[] cells) {
+            System.arraycopy(_b1, 0, _sums, 0, _hidden);
+            System.arraycopy(_b1, 0, _sums, _hidden, _hidden);
+            for (int sq = 0; sq < _N * _N; sq += 1) {
+                change(sq, 0, cells[sq]);
+            }
+        }
+
+        /** Update me for a change of square #SQ from OLD to CELL (encoded
+         *  as by MutableBoard.cell). */
+        void change(int sq, int old, int cell) {
+            for (int view = 0; view < 2; view += 1) {
+                int color = view == 0 ? RED : BLUE;
+                int out = feature(sq, old, color);
+                int in = feature(sq, cell, color);
+                if (out != in) {
+                    int base = view * _hidden;
+                    if (out >= 0) {
+                        subtract(base, out * _hidden);
+                    }
+                    if (in >= 0) {
+                        add(base, in * _hidden);
+                    }
+                }
+            }
+        }
+
+        /** Save my values, to be restored by pop. */
+        void push() {
+            int len = _sums.length;
+            if ((_depth + 1) * len > _history.length) {
+                _history = Arrays.copyOf(_history, 2 * _history.length);
+            }
+            System.arraycopy(_sums, 0, _history, _depth * len, len);
+            _depth += 1;
+        }
+
+        /** Restore the values saved by the most recent push. */
+        void pop() {
+            _depth -= 1;
+            System.arraycopy(_history, _depth * _sums.length, _sums, 0,
+                             _sums.length);
+        }
+
+        /** Return my network. */
+        Network network() {
+            return Network.this;
+        }
+
+        /** Add row ROW of W1 to the sums starting at BASE. */
+        private void add(int base, int row) {
+            EVAL.addRow(_sums, base, _w1, row, _hidden);
+        }
+
+        /** Subtract row ROW of W1 from the sums starting at BASE. */
+        private void subtract(int base, int row) {
+            EVAL.subtractRow(_sums, base, _w1, row, _hidden);
+        }
+
+        /** The sums from RED's point of view followed by those from
+         *  BLUE's. */
+        private final short[] _sums;
+        /** Saved values of _sums, _depth of them. */
+        private short[] _history;
+        /** Number of values saved in _history. */
+        private int _depth;
+    }
+
+    /** The arithmetic of the layers, vectorized where possible. */
+    private static final Evaluator EVAL = Evaluator.get();
+    /** Number of distinct spot counts in features. */
+    static final int SPOT_STATES = 4;
+    /** First int of a weights file. */
+    private static final int MAGIC = 0x4a36314e;
+    /** Version of the weights file format. */
+    private static final int VERSION = 1;
+    /** Number of ints in the header of a weights file. */
+    private static final int HEADER_INTS = 6;
+    /** Largest board size and hidden-layer width accepted by load. */
+    private static final int MAX_SIZE = 256, MAX_HIDDEN = 4096;
+    /** Initial number of saved values in an Accumulator. */
+    private static final int HISTORY = 16;
+    /** Ordinals of the players' colors. */
+    private static final int RED = Color.RED.ordinal(),
+        BLUE = Color.BLUE.ordinal();
+
+    /** Size of the boards I evaluate. */
+    private final int _N;
+    /** Number of sums per point of view. */
+    private final int _hidden;
+    /** Greatest value of a clipped sum. */
+    private final int _clip;
+    /** Divisor of the output. */
+    private final int _divisor;
+    /** First-layer weights, a row of _hidden per feature. */
+    private final short[] _w1;
+    /** First-layer biases. */
+    private final short[] _b1;
+    /** Output weights: _hidden for the evaluating player's sums, then
+     *  _hidden for the opponent's. */
+    private final short[] _w2;
+    /** Output bias. */
+    private final int _b2;
+
+}
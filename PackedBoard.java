@@ -0,0 +1,397 @@
+package jump61;
+
+import static jump61.Color.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/** A Jump61 board kept only in the primitive form of MutableBoard (one
+ *  int per square, encoded as by MutableBoard.cell), with no strings.  A
+ *  move records the previous contents of each square it changes in an
+ *  undo log, rather than copying the whole board, so that addSpot and undo
+ *  cost time proportional to the squares changed.  Otherwise it behaves
+ *  exactly as a MutableBoard, which it extends only so as to be usable
+ *  wherever one is: none of MutableBoard's own state is used.
+ *  @author Austin Gandy
+ */
+class PackedBoard extends MutableBoard {
+
+    /** An N x N board in initial configuration. */
+    PackedBoard(int N) {
+        super(1);
+        clear(N);
+    }
+
+    @Override
+    void clear(int N) {
+        _N = N;
+        _cells = new int[N * N];
+        _numRed = _numBlue = 0;
+        _numMoves = 0;
+        clearHistory();
+        resetAccumulator();
+        publishCleared();
+    }
+
+    @Override
+    void setPosition(int N, int[] cells, int numMoves, Color player) {
+        _N = N;
+        _cells = Arrays.copyOf(cells, N * N);
+        countColors();
+        _numMoves = numMoves;
+        _currentPlayer = player;
+        clearHistory();
+        resetAccumulator();
+        publish();
+    }
+
+    @Override
+    int applyMoves(int[] squares, int from, int to) {
+        int all = _N * _N, k;
+        for (k = from; k < to; k += 1) {
+            int sq = squares[k];
+            if (sq < 0 || sq >= all || _numRed == all || _numBlue == all
+                || !_currentPlayer.playableSquare(color(sq))) {
+                break;
+            }
+            move(sq);
+        }
+        if (k > from) {
+            clearHistory();
+            publish();
+        }
+        return k;
+    }
+
+    @Override
+    void setWaveSize(int n) {
+        _waveSize = n;
+    }
+
+    @Override
+    public void setSize(int s) {
+        _N = s;
+        _cells = new int[s * s];
+        _numRed = _numBlue = 0;
+        clearHistory();
+        resetAccumulator();
+        publishCleared();
+    }
+
+    @Override
+    int size() {
+        return _N;
+    }
+
+    @Override
+    int spots(int r, int c) {
+        return _cells[(r - 1) * _N + c - 1] >> Evaluator.COLOR_BITS;
+    }
+
+    @Override
+    int spots(int n) {
+        return _cells[n] >> Evaluator.COLOR_BITS;
+    }
+
+    @Override
+    Color color(int r, int c) {
+        return COLORS[_cells[(r - 1) * _N + c - 1] & Evaluator.COLOR_MASK];
+    }
+
+    @Override
+    Color color(int n) {
+        return COLORS[_cells[n] & Evaluator.COLOR_MASK];
+    }
+
+    @Override
+    int numOfColor(Color color) {
+        if (color == RED) {
+            return _numRed;
+        } else if (color == BLUE) {
+            return _numBlue;
+        } else {
+            return _N * _N - _numRed - _numBlue;
+        }
+    }
+
+    @Override
+    void addSpot(Color player, int r, int c) {
+        addSpot(player, (r - 1) * _N + c - 1);
+    }
+
+    @Override
+    void addSpot(Color player, int n) {
+        assert player.playableSquare(color(n));
+        addMove();
+        move(n);
+        publish();
+    }
+
+    @Override
+    void set(int r, int c, int num, Color player) {
+        assert num >= 0;
+        int sq = (r - 1) * _N + c - 1;
+        change(sq, MutableBoard.cell(num == 0 ? WHITE : player, num));
+        clearHistory();
+        publish();
+    }
+
+    @Override
+    public void setColor(int r, int c, Color color) {
+        int sq = (r - 1) * _N + c - 1;
+        change(sq, MutableBoard.cell(color, spots(sq)));
+    }
+
+    @Override
+    public void setSpots(int r, int c, int spots) {
+        int sq = (r - 1) * _N + c - 1;
+        change(sq, MutableBoard.cell(color(sq), spots));
+    }
+
+    @Override
+    void undo() {
+        _moveCount -= 1;
+        int mark = _marks[_moveCount];
+        while (_logSize > mark) {
+            _logSize -= 2;
+            recolor(_log[_logSize], _log[_logSize + 1]);
+        }
+        _hashed = false;
+        _numMoves -= 1;
+        _currentPlayer = _currentPlayer.opposite();
+        publish();
+    }
+
+    @Override
+    long hash() {
+        if (!_hashed) {
+            _hash = MutableBoard.hash(_N, _cells);
+            _hashed = true;
+        }
+        return _hash;
+    }
+
+    @Override
+    int[] getCells() {
+        return _cells;
+    }
+
+    @Override
+    public int getNumRed() {
+        return _numRed;
+    }
+
+    @Override
+    public int getNumBlue() {
+        return _numBlue;
+    }
+
+    @Override
+    void setNetwork(Network network) {
+        _network = network;
+        resetAccumulator();
+    }
+
+    @Override
+    Network.Accumulator accumulator() {
+        return _accumulator;
+    }
+
+    /** Start the undo record of a new move. */
+    @Override
+    public void addMove() {
+        if (_moveCount == _marks.length) {
+            _marks = Arrays.copyOf(_marks, 2 * _marks.length);
+        }
+        _marks[_moveCount] = _logSize;
+        _moveCount += 1;
+    }
+
+    /** Add a spot for the player to move to square #SQ, resolving any
+     *  cascade, and pass the move to the other player. */
+    private void move(int sq) {
+        int all = _N * _N;
+        int player = _currentPlayer.ordinal();
+        change(sq, _cells[sq] + (1 << Evaluator.COLOR_BITS) & ~COLOR_MASK
+               | player);
+        if (spots(sq) > neighbors(sq) && _numRed != all && _numBlue != all) {
+            if (_N >= _waveSize) {
+                waveJump(sq);
+            } else {
+                jump(sq);
+            }
+        }
+        _numMoves += 1;
+        _currentPlayer = _currentPlayer.opposite();
+    }
+
+    /** Do all jumping from square #SQ, which is overfull, as for
+     *  MutableBoard.jump. */
+    private void jump(int sq) {
+        int all = _N * _N;
+        if (_numRed == all || _numBlue == all) {
+            return;
+        }
+        int player = _cells[sq] & COLOR_MASK;
+        int r = sq / _N, c = sq % _N;
+        change(sq, (1 << Evaluator.COLOR_BITS) | player);
+        if (r > 0) {
+            spill(sq - _N, player);
+        }
+        if (r < _N - 1) {
+            spill(sq + _N, player);
+        }
+        if (c > 0) {
+            spill(sq - 1, player);
+        }
+        if (c < _N - 1) {
+            spill(sq + 1, player);
+        }
+    }
+
+    /** Add a spot of color PLAYER (an ordinal) to square #SQ, jumping if
+     *  it is then overfull. */
+    private void spill(int sq, int player) {
+        change(sq, _cells[sq] + (1 << Evaluator.COLOR_BITS) & ~COLOR_MASK
+               | player);
+        if (spots(sq) > neighbors(sq)) {
+            jump(sq);
+        }
+    }
+
+    /** Do all jumping from square #SQ using the parallel Wavefront engine,
+     *  logging the whole board first if a move is in progress, since the
+     *  engine changes it directly. */
+    private void waveJump(int sq) {
+        if (_wavefront == null) {
+            _wavefront = new Wavefront(ForkJoinPool.commonPool());
+        }
+        for (int k = 0; _moveCount > 0 && k < _N * _N; k += 1) {
+            log(k, _cells[k]);
+        }
+        int player = _cells[sq] & COLOR_MASK;
+        _wavefront.resolve(_cells, _N, sq, player,
+                           numOfColor(COLORS[player]));
+        _hashed = false;
+        countColors();
+        if (_accumulator != null) {
+            _accumulator.recompute(_cells);
+        }
+    }
+
+    @Override
+    int neighbors(int n) {
+        int r = n / _N, c = n % _N;
+        return 4 - (r == 0 || r == _N - 1 ? 1 : 0)
+            - (c == 0 || c == _N - 1 ? 1 : 0);
+    }
+
+    /** Set square #SQ to CELL, recording its old contents in the undo
+     *  log if a move is in progress. */
+    private void change(int sq, int cell) {
+        if (_moveCount > 0) {
+            log(sq, _cells[sq]);
+        }
+        recolor(sq, cell);
+    }
+
+    /** Append square #SQ, with old contents CELL, to the undo log. */
+    private void log(int sq, int cell) {
+        if (_logSize + 2 > _log.length) {
+            _log = Arrays.copyOf(_log, 2 * _log.length);
+        }
+        _log[_logSize] = sq;
+        _log[_logSize + 1] = cell;
+        _logSize += 2;
+    }
+
+    /** Set square #SQ to CELL, keeping the color counts and _accumulator
+     *  up to date. */
+    private void recolor(int sq, int cell) {
+        if (_accumulator != null) {
+            _accumulator.change(sq, _cells[sq], cell);
+        }
+        int old = _cells[sq] & COLOR_MASK, color = cell & COLOR_MASK;
+        if (old != color) {
+            if (old == RED.ordinal()) {
+                _numRed -= 1;
+            } else if (old == BLUE.ordinal()) {
+                _numBlue -= 1;
+            }
+            if (color == RED.ordinal()) {
+                _numRed += 1;
+            } else if (color == BLUE.ordinal()) {
+                _numBlue += 1;
+            }
+        }
+        _cells[sq] = cell;
+        _hashed = false;
+    }
+
+    /** Count the squares of each color. */
+    private void countColors() {
+        Evaluator eval = Evaluator.get();
+        _numRed = eval.count(_cells, _N * _N, RED);
+        _numBlue = eval.count(_cells, _N * _N, BLUE);
+        _hashed = false;
+    }
+
+    /** Recompute _accumulator from scratch, if my network fits me.  (It
+     *  needs no history: undo replays the log through recolor.) */
+    private void resetAccumulator() {
+        if (_network == null || _network.size() != _N) {
+            _accumulator = null;
+        } else {
+            if (_accumulator == null) {
+                _accumulator = _network.newAccumulator();
+            }
+            _accumulator.refresh(_cells);
+        }
+    }
+
+    /** Discard the undo log. */
+    private void clearHistory() {
+        _logSize = 0;
+        _moveCount = 0;
+        _hashed = false;
+    }
+
+    /** The colors, indexed by ordinal. */
+    private static final Color[] COLORS = Color.values();
+    /** Mask for the color of a square. */
+    private static final int COLOR_MASK = Evaluator.COLOR_MASK;
+    /** Initial sizes of _log and _marks. */
+    private static final int LOG_SIZE = 64;
+
+    /** Size of the board (squares along one edge). */
+    private int _N;
+    /** The squares, in square-number order. */
+    private int[] _cells;
+    /** Number of squares of each color. */
+    private int _numRed, _numBlue;
+    /** The undo log: pairs of square numbers and their previous
+     *  contents, in order of change. */
+    private int[] _log = new int[LOG_SIZE];
+    /** Number of ints used in _log. */
+    private int _logSize;
+    /** Index in _log of the start of each move that can be undone. */
+    private int[] _marks = new int[LOG_SIZE];
+    /** Number of moves that can be undone. */
+    private int _moveCount;
+    /** Cached value of hash(), if _hashed. */
+    private long _hash;
+    /** True iff _hash is up to date. */
+    private boolean _hashed;
+    /** Cascades on boards at least this size are resolved by
+     *  _wavefront. */
+    private int _waveSize = WAVE_SIZE;
+    /** Engine for cascades on large boards, or null until first
+     *  needed. */
+    private Wavefront _wavefront;
+    /** The network set by setNetwork, or null. */
+    private Network _network;
+    /** The first layer of _network for my squares, or null if _network
+     *  is null or does not fit me. */
+    private Network.Accumulator _accumulator;
+
+}
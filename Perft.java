@@ -0,0 +1,114 @@
+package jump61;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static jump61.GameException.error;
+
+/** Performance tests of move generation: counts of the positions
+ *  reachable from a given one in an exact number of moves, found by
+ *  playing every legal move with addSpot and taking it back with undo.
+ *  Play stops in won positions, which have no moves.  Since the counts
+ *  depend only on the rules, they check the correctness of MutableBoard
+ *  as well as measuring its speed.
+ *  @author Austin Gandy
+ */
+class Perft {
+
+    /** Return the number of positions reachable from B in exactly DEPTH
+     *  moves.  B is restored on return. */
+    static long count(MutableBoard b, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        int N = b.size();
+        if (b.getWinner() != null) {
+            return 0;
+        }
+        Color player = b.whoseMove();
+        long nodes = 0;
+        for (int r = 1; r <= N; r += 1) {
+            for (int c = 1; c <= N; c += 1) {
+                if (b.isLegal(player, r, c)) {
+                    if (depth == 1) {
+                        nodes += 1;
+                    } else {
+                        b.addSpot(player, r, c);
+                        nodes += count(b, depth - 1);
+                        b.undo();
+                    }
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /** Return the counts of positions reachable in DEPTH - 1 moves after
+     *  each legal move on B, indexed by square number (0 for illegal
+     *  moves), counting on THREADS threads.  B is unchanged. */
+    static long[] divide(Board b, int depth, int threads) {
+        return divide(b, depth, threads, BoardEngine.STRING);
+    }
+
+    /** Return divide(B, DEPTH, THREADS), counting on boards of ENGINE. */
+    static long[] divide(Board b, int depth, int threads,
+                         BoardEngine engine) {
+        int N = b.size();
+        long[] counts = new long[N * N];
+        if (depth == 0 || b.getWinner() != null) {
+            return counts;
+        }
+        ExecutorService workers =
+            Executors.newFixedThreadPool(threads, Threads.daemons("perft"));
+        ArrayList<Future<Long>> results = new ArrayList<Future<Long>>();
+        Color player = b.whoseMove();
+        for (int sq = 0; sq < N * N; sq += 1) {
+            final int r = sq / N + 1, c = sq % N + 1;
+            if (!b.isLegal(player, r, c)) {
+                results.add(null);
+                continue;
+            }
+            final MutableBoard position = engine.copy(b);
+            results.add(workers.submit(() -> {
+                position.addSpot(player, r, c);
+                return count(position, depth - 1);
+            }));
+        }
+        workers.shutdown();
+        try {
+            for (int sq = 0; sq < N * N; sq += 1) {
+                if (results.get(sq) != null) {
+                    counts[sq] = results.get(sq).get();
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            workers.shutdownNow();
+            throw error("perft failed: %s", excp);
+        }
+        return counts;
+    }
+
+    /** Return the number of positions reachable in exactly DEPTH moves
+     *  from the empty SIZE x SIZE board, if known, and otherwise -1. */
+    static long reference(int size, int depth) {
+        if (size < 2 || size - 2 >= REFERENCE.length
+            || depth < 0 || depth >= REFERENCE[size - 2].length) {
+            return -1;
+        }
+        return REFERENCE[size - 2][depth];
+    }
+
+    /** Known counts from the empty board: REFERENCE[N - 2][D] is the
+     *  number of positions reachable in D moves on an N x N board. */
+    private static final long[][] REFERENCE = {
+        { 1, 4, 12, 36, 84, 204, 340, 556, 628 },
+        { 1, 9, 72, 576, 4104, 29304, 187048 },
+        { 1, 16, 240, 3600, 50640, 712560 },
+        { 1, 25, 600, 14400, 331800 },
+        { 1, 36, 1260, 44100, 1500660 },
+    };
+
+}
@@ -0,0 +1,397 @@
+package jump61;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** The coordinator of a search split across SearchWorkers in other
+ *  processes.  Each legal move at the root is a separate job, sent to
+ *  whichever worker is free.  A worker that cannot be reached or whose
+ *  connection fails is dropped, and its job goes back on the queue.  Once
+ *  the queue is empty, each worker that falls idle takes another copy of
+ *  the unfinished job with the fewest copies running, so that a slow
+ *  worker cannot hold up the search; the first copy to finish wins, and
+ *  the workers running the others are interrupted by closing their
+ *  connections and reconnecting.  Jobs left when every worker has been
+ *  dropped are searched locally.
+ *  @author Austin Gandy
+ */
+class RemoteSearch {
+
+    /** A coordinator for the workers listening at ADDRESSES. */
+    RemoteSearch(List<InetSocketAddress> addresses) {
+        for (InetSocketAddress address : addresses) {
+            _links.add(new Link(address));
+        }
+        _threads = Executors.newCachedThreadPool(Threads.daemons("remote"));
+    }
+
+    /** Return the score and principal variation of every legal move for
+     *  the player to move on B, searched to DEPTH, in square-number order.
+     *  If cancel() is called first, moves not finished by then are left
+     *  out. */
+    synchronized ArrayList<Analysis.Line> scoreMoves(Board b, int depth) {
+        int n = b.size();
+        Color player = b.whoseMove();
+        _squares = new ArrayList<Integer>();
+        for (int sq = 0; sq < n * n; sq += 1) {
+            if (b.isLegal(player, sq / n + 1, sq % n + 1)) {
+                _squares.add(sq);
+            }
+        }
+        _results = new Analysis.Line[_squares.size()];
+        _copies = new int[_squares.size()];
+        _queued = 0;
+        _unfinished = _squares.size();
+        _cancelled = _over = false;
+        _running = 0;
+        for (Link link : _links) {
+            if (link.connect()) {
+                _running += 1;
+                _threads.execute(() -> work(link, b, depth));
+            }
+        }
+        while (_running > 0 && _unfinished > 0 && !_cancelled) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+        }
+        _over = true;
+        abandon(-1);
+        while (_running > 0) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!_cancelled) {
+            searchLocally(b, depth);
+        }
+        ArrayList<Analysis.Line> result = new ArrayList<Analysis.Line>();
+        for (Analysis.Line line : _results) {
+            if (line != null) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    /** Stop the search in progress, if any, as soon as possible. */
+    void cancel() {
+        AI local;
+        synchronized (_lock) {
+            _cancelled = true;
+            local = _local;
+            _lock.notifyAll();
+        }
+        if (local != null) {
+            local.stop();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /** Return the number of workers that could be reached by the latest
+     *  search and have not failed since. */
+    synchronized int live() {
+        int count = 0;
+        for (Link link : _links) {
+            count += link.isLive() ? 1 : 0;
+        }
+        return count;
+    }
+
+    /** Disconnect from all workers. */
+    synchronized void close() {
+        for (Link link : _links) {
+            link.close();
+        }
+        _threads.shutdownNow();
+    }
+
+    /** Run jobs for the position B to DEPTH on LINK until there are none
+     *  left or LINK fails. */
+    private void work(Link link, Board b, int depth) {
+        int[] id = new int[1];
+        int job;
+        while ((job = take(link)) >= 0) {
+            try {
+                Analysis.Line line =
+                    link.run(job, b, _squares.get(job), depth, id);
+                if (id[0] != job) {
+                    throw new IOException("result for wrong job");
+                }
+                finish(link, job, line);
+            } catch (IOException excp) {
+                release(link, job);
+                if (!link.abandoned()) {
+                    link.fail();
+                    break;
+                } else if (_over || !link.connect()) {
+                    break;
+                }
+            }
+        }
+        synchronized (this) {
+            _running -= 1;
+            notifyAll();
+        }
+    }
+
+    /** Return the next job for LINK, or -1 if there is none: an unstarted
+     *  job if there is one, and otherwise another copy of the unfinished
+     *  job with the fewest copies running. */
+    private synchronized int take(Link link) {
+        int job = -1;
+        if (_over || _cancelled || _unfinished == 0) {
+            job = -1;
+        } else if (_queued < _squares.size()) {
+            job = _queued;
+            _queued += 1;
+        } else {
+            for (int k = 0; k < _results.length; k += 1) {
+                if (_results[k] == null
+                    && (job < 0 || _copies[k] < _copies[job])) {
+                    job = k;
+                }
+            }
+        }
+        if (job >= 0) {
+            _copies[job] += 1;
+            link.start(job);
+        }
+        return job;
+    }
+
+    /** Record LINE as the result of JOB, run on LINK, and interrupt other
+     *  workers running it. */
+    private synchronized void finish(Link link, int job, Analysis.Line line) {
+        link.start(-1);
+        _copies[job] -= 1;
+        if (_results[job] == null) {
+            _results[job] = line;
+            _unfinished -= 1;
+            abandon(job);
+            notifyAll();
+        }
+    }
+
+    /** Record that LINK has given up JOB.  Once the queue is empty, take
+     *  hands out unfinished jobs that no worker is running first. */
+    private synchronized void release(Link link, int job) {
+        link.start(-1);
+        _copies[job] -= 1;
+        notifyAll();
+    }
+
+    /** Interrupt the workers running JOB, or all running workers if JOB is
+     *  -1. */
+    private synchronized void abandon(int job) {
+        for (Link link : _links) {
+            if (link.job() >= 0 && (job < 0 || link.job() == job)) {
+                link.abandon();
+            }
+        }
+    }
+
+    /** Search the moves on B that have no result to DEPTH on this
+     *  thread. */
+    private void searchLocally(Board b, int depth) {
+        int n = b.size();
+        MutableBoard position = new MutableBoard(b);
+        for (int k = 0; k < _results.length; k += 1) {
+            if (_results[k] != null) {
+                continue;
+            }
+            AI ai = new AI(b.whoseMove(), depth);
+            if (_cache == null) {
+                _cache = new SearchCache(CACHE_BITS);
+            }
+            ai.setCache(_cache);
+            synchronized (_lock) {
+                if (_cancelled) {
+                    return;
+                }
+                _local = ai;
+            }
+            int r = _squares.get(k) / n + 1, c = _squares.get(k) % n + 1;
+            int score = ai.scoreMove(position, r, c);
+            synchronized (_lock) {
+                _local = null;
+            }
+            if (ai.stopped()) {
+                return;
+            }
+            _results[k] = new Analysis.Line(r, c, depth, score,
+                                            _cache.variation(position, r, c,
+                                                             depth));
+        }
+    }
+
+    /** A connection to one worker. */
+    private static class Link {
+
+        /** A link to the worker at ADDRESS, initially unconnected. */
+        Link(InetSocketAddress address) {
+            _address = address;
+            _job = -1;
+        }
+
+        /** Connect to my worker, if not already connected, returning true
+         *  iff that succeeded. */
+        synchronized boolean connect() {
+            if (_socket != null) {
+                return true;
+            }
+            _abandoned = false;
+            _live = false;
+            Socket socket = new Socket();
+            try {
+                socket.connect(_address, CONNECT_MILLIS);
+                socket.setTcpNoDelay(true);
+                _in = new DataInputStream(
+                          new BufferedInputStream(socket.getInputStream()));
+                _out = new DataOutputStream(
+                          new BufferedOutputStream(socket.getOutputStream()));
+                _socket = socket;
+                _live = true;
+                return true;
+            } catch (IOException excp) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    /* Nothing more to do. */
+                }
+                return false;
+            }
+        }
+
+        /** Return true iff my last connection succeeded and has not
+         *  failed. */
+        synchronized boolean isLive() {
+            return _live;
+        }
+
+        /** Disconnect from my worker, which has failed. */
+        synchronized void fail() {
+            _live = false;
+            close();
+        }
+
+        /** Send job #ID, scoring the move to SQUARE on B to DEPTH, to my
+         *  worker and return its result, with the job number it gives
+         *  in IDS[0]. */
+        Analysis.Line run(int id, Board b, int square, int depth, int[] ids)
+            throws IOException {
+            DataInputStream in;
+            DataOutputStream out;
+            synchronized (this) {
+                if (_socket == null) {
+                    throw new IOException("not connected");
+                }
+                in = _in;
+                out = _out;
+            }
+            SearchWorker.writeJob(out, id, b, square, depth);
+            return SearchWorker.readResult(in, ids, b.size(), depth);
+        }
+
+        /** Record that I am running JOB, or nothing if JOB is -1. */
+        synchronized void start(int job) {
+            _job = job;
+        }
+
+        /** Return the job I am running, or -1 if none. */
+        synchronized int job() {
+            return _job;
+        }
+
+        /** Interrupt the job I am running by disconnecting. */
+        synchronized void abandon() {
+            _abandoned = true;
+            close();
+        }
+
+        /** Return true iff my last connection was closed by abandon. */
+        synchronized boolean abandoned() {
+            return _abandoned;
+        }
+
+        /** Disconnect from my worker. */
+        synchronized void close() {
+            if (_socket != null) {
+                try {
+                    _socket.close();
+                } catch (IOException excp) {
+                    /* Nothing more to do. */
+                }
+                _socket = null;
+            }
+        }
+
+        /** Where my worker listens. */
+        private final InetSocketAddress _address;
+        /** My connection, or null if not connected. */
+        private Socket _socket;
+        /** Streams of _socket. */
+        private DataInputStream _in;
+        /** Streams of _socket. */
+        private DataOutputStream _out;
+        /** The job I am running, or -1. */
+        private int _job;
+        /** True iff my connection was closed to interrupt a job. */
+        private boolean _abandoned;
+        /** True iff my worker has not failed since I last connected. */
+        private boolean _live;
+    }
+
+    /** Milliseconds allowed to connect to a worker. */
+    private static final int CONNECT_MILLIS = 1000;
+    /** Log base 2 of the number of entries in the cache for local
+     *  searches. */
+    private static final int CACHE_BITS = 18;
+
+    /** My workers. */
+    private final ArrayList<Link> _links = new ArrayList<Link>();
+    /** Threads that talk to the workers, one per link per search. */
+    private final ExecutorService _threads;
+    /** Guards _local against cancel, which may not wait for the search to
+     *  finish. */
+    private final Object _lock = new Object();
+    /** The local search in progress, if any. */
+    private AI _local;
+    /** Cache for local searches, created when first needed. */
+    private SearchCache _cache;
+
+    /** The squares of the moves being searched, indexed by job. */
+    private ArrayList<Integer> _squares;
+    /** The result of each job, or null if it is unfinished. */
+    private Analysis.Line[] _results;
+    /** The number of workers running each job. */
+    private int[] _copies;
+    /** Jobs below this have been started. */
+    private int _queued;
+    /** Number of jobs without results. */
+    private int _unfinished;
+    /** Number of links with threads in work. */
+    private int _running;
+    /** True iff the current search is cancelled. */
+    private volatile boolean _cancelled;
+    /** True once the current search has all the results it will get from
+     *  workers. */
+    private boolean _over;
+
+}
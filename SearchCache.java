@@ -0,0 +1,233 @@
+package jump61;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/** A transposition table: a fixed-size cache of search results keyed by
+ *  position hash, which may be shared by searches on several threads.
+ *  Each entry packs a score, the depth it was searched to, the kind of
+ *  bound the score is, and the best move found, into one long.  Entries
+ *  are stored as a (key ^ data, data) pair, so that an entry torn by racing
+ *  writers fails its key check rather than yielding wrong data; no locks are
+ *  needed.  Scores are from the point of view of the player to move in the
+ *  position.
+ *
+ *  Entries also record the generation in which they were stored, modulo
+ *  AGES.  A new generation starts with each newGeneration(); entries from
+ *  earlier generations may be replaced by shallower ones, so that results
+ *  of old searches give way to current ones.  Subclasses may keep entries
+ *  elsewhere than in arrays, by overriding check, entry, and put.
+ *  @author Austin Gandy
+ */
+class SearchCache {
+
+    /** Bound kinds: the score is exact, a lower bound, or an upper
+     *  bound. */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** A cache with 2**LOG2SIZE entries. */
+    SearchCache(int log2Size) {
+        this(log2Size, new long[1 << log2Size], new long[1 << log2Size]);
+    }
+
+    /** A cache with 2**LOG2SIZE entries, with key check values KEYS and
+     *  packed entries DATA, or, if these are null, whose entries are kept by
+     *  a subclass. */
+    SearchCache(int log2Size, long[] keys, long[] data) {
+        _keys = keys;
+        _data = data;
+        _mask = (1 << log2Size) - 1;
+    }
+
+    /** Return the global cache for this host: the file named by the
+     *  property jump61.cache, with 2**B entries, where B is the property
+     *  jump61.cache.bits (default SHARED_BITS), if the file is new.
+     *  Returns null if the property is unset or empty, or the file cannot
+     *  be opened. */
+    static synchronized SearchCache shared() {
+        if (_shared == null) {
+            String name = System.getProperty("jump61.cache", "");
+            if (name.isEmpty()) {
+                return null;
+            }
+            try {
+                int bits = Integer.getInteger("jump61.cache.bits",
+                                              SHARED_BITS);
+                _shared = MappedSearchCache.open(Paths.get(name), bits);
+            } catch (IOException excp) {
+                System.err.printf("cannot open search cache %s: %s%n", name,
+                                  excp.getMessage());
+                return null;
+            }
+        }
+        return _shared;
+    }
+
+    /** Start a new generation, after which entries stored earlier may be
+     *  replaced by shallower ones. */
+    void newGeneration() {
+        _generation += 1;
+    }
+
+    /** Empty every slot. */
+    void clear() {
+        for (int i = 0; i <= _mask; i += 1) {
+            put(i, 0, 0);
+        }
+    }
+
+    /** Return the current generation. */
+    long generation() {
+        return _generation;
+    }
+
+    /** Return the key of position B with PLAYER to move. */
+    static long key(MutableBoard b, Color player) {
+        return player == Color.RED ? b.hash() : ~b.hash();
+    }
+
+    /** Return the entry for position KEY, or 0 if there is none. */
+    long probe(long key) {
+        int i = (int) key & _mask;
+        long data = entry(i);
+        if (data != 0 && (check(i) ^ data) == key) {
+            return data;
+        }
+        return 0;
+    }
+
+    /** Record that position KEY, searched to DEPTH, has score SCORE, which
+     *  is a bound of kind BOUND, and best move #MOVE (-1 if none).  Keeps
+     *  an entry searched more deeply if it is for the same position or
+     *  from the current generation, and otherwise replaces it. */
+    void store(long key, int depth, int score, int bound, int move) {
+        int i = (int) key & _mask;
+        long old = entry(i);
+        int age = (int) (generation() % AGES);
+        if (old != 0 && depth(old) > depth
+            && (age(old) == age || (check(i) ^ old) == key)) {
+            return;
+        }
+        long data = pack(depth, score, bound, move, age);
+        put(i, key ^ data, data);
+    }
+
+    /** Return the key check value (key ^ entry) in slot I. */
+    long check(int i) {
+        return _keys[i];
+    }
+
+    /** Return the packed entry in slot I, or 0 if it is empty. */
+    long entry(int i) {
+        return _data[i];
+    }
+
+    /** Set slot I to hold key check value CHECK and packed entry DATA. */
+    void put(int i, long check, long data) {
+        _data[i] = data;
+        _keys[i] = check;
+    }
+
+    /** Return the entry packing DEPTH, SCORE, BOUND, and MOVE, stored in
+     *  generation AGE (modulo AGES).  Moves too large to pack are recorded
+     *  as no move. */
+    static long pack(int depth, int score, int bound, int move, int age) {
+        if (move + 1 > MOVE_MASK) {
+            move = -1;
+        }
+        return VALID | (long) age << AGE_SHIFT
+            | (long) (move + 1) << MOVE_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) (depth & DEPTH_MASK) << DEPTH_SHIFT
+            | (score & SCORE_MASK);
+    }
+
+    /** Return the depth of ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the score of ENTRY. */
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /** Return the bound kind of ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the generation of ENTRY, modulo AGES. */
+    static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & (AGES - 1);
+    }
+
+    /** Return the best move of ENTRY, or -1 if none. */
+    static int move(long entry) {
+        return (int) ((entry >>> MOVE_SHIFT) & MOVE_MASK) - 1;
+    }
+
+    /** Return the principal variation following the move at row R, column C
+     *  on B by the player to move, for a search to DEPTH, as recorded in
+     *  me: the squares of the best moves in turn, starting with R, C.  B is
+     *  restored on return. */
+    int[] variation(MutableBoard b, int r, int c, int depth) {
+        int[] pv = new int[Math.max(depth, 1)];
+        int n = b.size();
+        pv[0] = (r - 1) * n + c - 1;
+        b.addSpot(b.whoseMove(), r, c);
+        int len;
+        for (len = 1; len < depth; len += 1) {
+            Color player = b.whoseMove();
+            if (b.numOfColor(player.opposite()) == n * n) {
+                break;
+            }
+            long entry = probe(key(b, player));
+            int move = move(entry);
+            if (entry == 0 || move < 0
+                || !b.isLegal(player, b.row(move), b.col(move))) {
+                break;
+            }
+            pv[len] = move;
+            b.addSpot(player, b.row(move), b.col(move));
+        }
+        for (int k = 0; k < len; k += 1) {
+            b.undo();
+        }
+        return Arrays.copyOf(pv, len);
+    }
+
+    /** Return the number of entries. */
+    int capacity() {
+        return _mask + 1;
+    }
+
+    /** Number of generations distinguished by entries. */
+    static final int AGES = 8;
+
+    /** Position and width of each field of an entry. */
+    private static final int DEPTH_SHIFT = 32, DEPTH_MASK = 0xff,
+        BOUND_SHIFT = 40, BOUND_MASK = 0x3, MOVE_SHIFT = 42, AGE_SHIFT = 60;
+    /** Mask for the move field of an entry (after shifting). */
+    private static final long MOVE_MASK = (1L << 18) - 1;
+    /** Mask for the score field of an entry. */
+    private static final long SCORE_MASK = 0xffffffffL;
+    /** Set in every entry, so that no entry is 0. */
+    private static final long VALID = 1L << 63;
+
+    /** Key check values, as key ^ data. */
+    private final long[] _keys;
+    /** Packed entries. */
+    private final long[] _data;
+    /** Mask giving the index of a key. */
+    private final int _mask;
+    /** The current generation. */
+    private long _generation;
+
+    /** Default log base 2 of the number of entries in shared(). */
+    private static final int SHARED_BITS = 22;
+    /** The value of shared(), once opened. */
+    private static SearchCache _shared;
+
+}
@@ -0,0 +1,41 @@
+package jump61;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A flight-recorder event for one move by an AI in a game: the search
+ *  and waiting for it.  Disabled unless turned on by a recording's
+ *  settings (see jump61.jfc).
+ *  @author Austin Gandy
+ */
+@Name("jump61.Search")
+@Label("AI Move")
+@Category("Jump61")
+@Description("An AI's search for a move")
+@Enabled(false)
+@StackTrace(false)
+class SearchEvent extends Event {
+
+    /** The AI's color. */
+    @Label("Player")
+    String player;
+
+    /** Search depth. */
+    @Label("Depth")
+    int depth;
+
+    /** Number of positions visited. */
+    @Label("Nodes")
+    long nodes;
+
+    /** True iff a move was played (rather than the search being
+     *  abandoned because the game ended). */
+    @Label("Moved")
+    boolean moved;
+
+}
@@ -0,0 +1,360 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/** A scheduler for the searches of all the Games in a JVM, so that many
+ *  sessions (as under Server) share the processors fairly.  At most
+ *  slots() searches compute at once; the rest wait in a queue ordered by
+ *  Priority and then by arrival.  A search runs on a thread of its own,
+ *  but only while it holds a slot.  Searches are time-sliced: a search
+ *  that has held its slot for SLICE_NANOS gives it up, at its next
+ *  checkpoint, to any waiting search of the same or more urgent priority,
+ *  and rejoins the queue behind it.  (Java threads cannot be suspended
+ *  from outside, so preemption happens at checkpoints, which AI makes
+ *  every few hundred positions.)
+ *
+ *  Each search belongs to a Session, whose budget limits the total slot
+ *  time of all its searches: once the session has used it up, each of
+ *  its searches is told so at its next checkpoint, and should finish with
+ *  the best result it has.  When the
+ *  queue already holds MAX_QUEUED searches, submitting another search
+ *  that is not INTERACTIVE waits until there is room, so that a flood of
+ *  background work slows its sources rather than growing without bound.
+ *
+ *  The number of slots is taken from the property jump61.searchers, by
+ *  default the number of processors.
+ *  @author Austin Gandy
+ */
+class SearchScheduler {
+
+    /** Kinds of search, most urgent first. */
+    enum Priority {
+        /** Searches for an AI playing a human, who is waiting. */
+        INTERACTIVE,
+        /** Searches for games between AIs. */
+        BATCH,
+        /** Analyses, and other work that only matters in bulk. */
+        BACKGROUND;
+    }
+
+    /** A scheduler with SLOTS slots. */
+    SearchScheduler(int slots) {
+        _slots = Math.max(1, slots);
+    }
+
+    /** Return the scheduler shared by all Games in this JVM. */
+    static synchronized SearchScheduler shared() {
+        if (_shared == null) {
+            _shared = new SearchScheduler(
+                Integer.getInteger("jump61.searchers",
+                                   Runtime.getRuntime()
+                                   .availableProcessors()));
+        }
+        return _shared;
+    }
+
+    /** Return the search that the current thread is running for some
+     *  scheduler, or null if there is none. */
+    static Task current() {
+        return CURRENT.get();
+    }
+
+    /** Run SEARCH for SESSION at priority PRIORITY once a slot is free,
+     *  returning a future for its result, which completes once the
+     *  search's slot time has been charged to SESSION.  Waits first if the
+     *  queue is full and PRIORITY is not INTERACTIVE. */
+    <T> CompletableFuture<T> submit(Session session, Priority priority,
+                                    Supplier<T> search) {
+        Task task = new Task(session, priority);
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        task._body = () -> {
+            CURRENT.set(task);
+            T value = null;
+            Throwable failure = null;
+            try {
+                value = search.get();
+            } catch (Throwable excp) {
+                failure = excp;
+            } finally {
+                CURRENT.remove();
+                finish(task);
+            }
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        };
+        synchronized (this) {
+            while (priority != Priority.INTERACTIVE
+                   && _queue.size() >= MAX_QUEUED) {
+                _throttled += 1;
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    result.cancel(false);
+                    return result;
+                }
+            }
+            enqueue(task);
+            dispatch();
+        }
+        return result;
+    }
+
+    /** Return an Executor that runs each task given it as a search for
+     *  SESSION at priority PRIORITY. */
+    Executor executor(Session session, Priority priority) {
+        return (command) -> submit(session, priority, () -> {
+            command.run();
+            return null;
+        });
+    }
+
+    /** Return my number of slots. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return a description of my state and of the times searches have
+     *  waited for slots (over the last WAIT_SAMPLES waits). */
+    synchronized String report() {
+        long[] waits = Arrays.copyOf(_waits, (int) Math.min(_numWaits,
+                                                            WAIT_SAMPLES));
+        Arrays.sort(waits);
+        return String.format("%d slots, %d running, %d queued (most %d),"
+                             + " %d throttled; %d searches, %d preempted;"
+                             + " wait ms p50 %.1f p90 %.1f p99 %.1f"
+                             + " max %.1f",
+                             _slots, _running, _queue.size(), _maxQueued,
+                             _throttled, _started, _preempted,
+                             percentile(waits, 50), percentile(waits, 90),
+                             percentile(waits, 99),
+                             percentile(waits, 100));
+    }
+
+    /** Return the number of searches waiting for a slot. */
+    synchronized int queued() {
+        return _queue.size();
+    }
+
+    /** Return the Pth percentile of SORTED, in milliseconds, or 0 if it
+     *  is empty. */
+    private static double percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int k = (int) Math.ceil(sorted.length * p / 100.0) - 1;
+        return sorted[Math.max(k, 0)] / 1e6;
+    }
+
+    /** Add TASK to the queue. */
+    private void enqueue(Task task) {
+        task._queuedAt = System.nanoTime();
+        task._order = _arrivals;
+        _arrivals += 1;
+        _queue.add(task);
+        _maxQueued = Math.max(_maxQueued, _queue.size());
+    }
+
+    /** Give free slots to the searches at the head of the queue. */
+    private void dispatch() {
+        while (_running < _slots && !_queue.isEmpty()) {
+            Task task = _queue.poll();
+            long now = System.nanoTime();
+            _waits[(int) (_numWaits % WAIT_SAMPLES)] = now - task._queuedAt;
+            _numWaits += 1;
+            _running += 1;
+            task._sliceStart = now;
+            if (!task._begun) {
+                _started += 1;
+                task._begun = true;
+                THREADS.execute(task._body);
+            } else {
+                task._granted = true;
+            }
+        }
+        notifyAll();
+    }
+
+    /** Give up the slot of TASK if its slice is over and another search at
+     *  least as urgent is waiting, returning once it has a slot again. */
+    private synchronized void yieldSlot(Task task) {
+        long now = System.nanoTime();
+        boolean over = now - task._sliceStart >= SLICE_NANOS;
+        task.account(now);
+        Task next = _queue.peek();
+        if (!over || next == null
+            || next._priority.compareTo(task._priority) > 0) {
+            return;
+        }
+        _preempted += 1;
+        _running -= 1;
+        enqueue(task);
+        dispatch();
+        boolean interrupted = false;
+        while (!task._granted) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        task._granted = false;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        task._sliceStart = System.nanoTime();
+    }
+
+    /** Release the slot of TASK, which has finished. */
+    private synchronized void finish(Task task) {
+        task.account(System.nanoTime());
+        _running -= 1;
+        dispatch();
+    }
+
+    /** The sessions to which searches belong, each with its own budget. */
+    static class Session {
+
+        /** Limit my searches to BUDGETMILLIS milliseconds of slot time in
+         *  all, counted from now, or remove the limit if it is 0.  Once the
+         *  budget is used up, every checkpoint of my searches reports it,
+         *  until the budget is set again. */
+        void setBudget(long budgetMillis) {
+            _budgetStart = _used;
+            _budget = budgetMillis * MILLION;
+        }
+
+        /** Return my budget, in milliseconds, as last set, or 0 if there is
+         *  none. */
+        long budget() {
+            return _budget / MILLION;
+        }
+
+        /** Return the slot time left in my budget, in milliseconds (0 if
+         *  there is no budget, or it is used up). */
+        long left() {
+            return Math.max(0, _budget - (_used - _budgetStart)) / MILLION;
+        }
+
+        /** Return true iff I have a budget, and my searches have used it
+         *  up, counting an additional RUNNING nanoseconds not yet added
+         *  to my total. */
+        private boolean spent(long running) {
+            long budget = _budget;
+            return budget != 0 && _used - _budgetStart + running >= budget;
+        }
+
+        /** Return the total slot time used by my searches so far, in
+         *  milliseconds. */
+        long used() {
+            return _used / MILLION;
+        }
+
+        /** Limit on the slot time of my searches since _budgetStart, in
+         *  nanoseconds, or 0. */
+        private volatile long _budget;
+        /** Value of _used when _budget was set. */
+        private volatile long _budgetStart;
+        /** Total slot time of my searches in nanoseconds. */
+        private volatile long _used;
+    }
+
+    /** A search known to the scheduler. */
+    class Task {
+
+        /** A search for SESSION at priority PRIORITY. */
+        Task(Session session, Priority priority) {
+            _session = session;
+            _priority = priority;
+        }
+
+        /** Let other searches run, if my slice is over, and return false
+         *  iff my session has used up its budget.  To be called by my
+         *  search every so often, on its own thread. */
+        boolean checkpoint() {
+            if (System.nanoTime() - _sliceStart >= SLICE_NANOS) {
+                yieldSlot(this);
+            }
+            return !_session.spent(System.nanoTime() - _sliceStart);
+        }
+
+        /** Return my priority. */
+        Priority priority() {
+            return _priority;
+        }
+
+        /** Add the slot time since the start of my slice, up to NOW, to my
+         *  session's total. */
+        private void account(long now) {
+            _session._used += now - _sliceStart;
+            _sliceStart = now;
+        }
+
+        /** My session. */
+        private final Session _session;
+        /** My priority. */
+        private final Priority _priority;
+        /** The work to run on my thread. */
+        private Runnable _body;
+        /** Order of my latest arrival in the queue. */
+        private long _order;
+        /** Time at which I last joined the queue. */
+        private long _queuedAt;
+        /** Time at which my current slice began. */
+        private volatile long _sliceStart;
+        /** True once I have been started on a thread. */
+        private boolean _begun;
+        /** True when I have been given back a slot after yielding it. */
+        private boolean _granted;
+    }
+
+    /** Length of a time slice. */
+    static final long SLICE_NANOS = 10000000;
+    /** Number of queued searches beyond which submissions that are not
+     *  INTERACTIVE wait. */
+    static final int MAX_QUEUED = 256;
+    /** Number of waits kept for percentiles. */
+    private static final int WAIT_SAMPLES = 1024;
+    /** Nanoseconds per millisecond. */
+    private static final long MILLION = 1000000;
+
+    /** The shared scheduler, or null until first requested. */
+    private static SearchScheduler _shared;
+    /** The search running on each thread, if any. */
+    private static final ThreadLocal<Task> CURRENT = new ThreadLocal<Task>();
+    /** Threads on which searches run.  These are daemons, so that a
+     *  search left running does not keep the program alive. */
+    private static final ExecutorService THREADS =
+        Executors.newCachedThreadPool(Threads.daemons("search"));
+
+    /** Number of slots. */
+    private final int _slots;
+    /** Number of slots in use. */
+    private int _running;
+    /** Searches waiting for a slot, most urgent first. */
+    private final PriorityQueue<Task> _queue =
+        new PriorityQueue<Task>((a, b) -> a._priority != b._priority
+                                ? a._priority.compareTo(b._priority)
+                                : Long.compare(a._order, b._order));
+    /** Number of arrivals in the queue. */
+    private long _arrivals;
+    /** Recent waits for slots, in nanoseconds, in a circular buffer. */
+    private final long[] _waits = new long[WAIT_SAMPLES];
+    /** Number of waits recorded. */
+    private long _numWaits;
+    /** Statistics: searches started, slices given up, submissions made to
+     *  wait, and the longest queue. */
+    private long _started, _preempted, _throttled;
+    /** Longest the queue has been. */
+    private int _maxQueued;
+
+}
@@ -0,0 +1,239 @@
+package jump61;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static jump61.GameException.error;
+
+/** A search worker: a server that scores root moves for a RemoteSearch
+ *  running in another JVM, over TCP connections on the local host.  Each
+ *  connection carries a sequence of jobs, each answered in turn by a
+ *  result.  Connections are served concurrently.  Each has a SearchCache
+ *  of its own, so that the jobs of coordinators playing different colors
+ *  do not share entries, unless the host has a SearchCache.shared(),
+ *  which all of them use.
+ *
+ *  A job is
+ *      the byte JOB, the job number (int),
+ *      the search depth, board size N (bytes),
+ *      the number of moves made (int), the player to move (byte: Color
+ *      ordinal), the N * N squares in square-number order (bytes, encoded
+ *      as by MutableBoard.cell), the square of the move to score (short).
+ *  A result is
+ *      the byte RESULT, the job number (int),
+ *      the score, for the player making the move (int),
+ *      the length of the principal variation (byte), and its squares,
+ *      starting with the move scored (shorts).
+ *  @author Austin Gandy
+ */
+class SearchWorker {
+
+    /** Serve jobs as configured by ARGS, logging on LOG, until killed.
+     *  ARGS are options of the form
+     *     --port N    port to listen on (default 0: any free port)
+     *  The port actually used is logged as "worker listening on port N".
+     *  Returns an exit code.  Throws GameException on malformed
+     *  arguments. */
+    static int run(String[] args, PrintWriter log) {
+        int port = 0;
+        for (int i = 0; i < args.length; i += 2) {
+            try {
+                if (args[i].equals("--port")) {
+                    port = Integer.parseInt(args[i + 1]);
+                } else {
+                    throw error("unknown option: %s", args[i]);
+                }
+            } catch (NumberFormatException
+                     | ArrayIndexOutOfBoundsException excp) {
+                throw error("bad value for option: %s", args[i]);
+            }
+        }
+        try (ServerSocket listener = new ServerSocket()) {
+            InetAddress local = InetAddress.getLoopbackAddress();
+            listener.bind(new InetSocketAddress(local, port));
+            log.printf("worker listening on port %d%n",
+                       listener.getLocalPort());
+            log.flush();
+            new SearchWorker().serve(listener);
+            return 0;
+        } catch (IOException excp) {
+            log.printf("worker failed: %s%n", excp.getMessage());
+            log.flush();
+            return 1;
+        }
+    }
+
+    /** Accept connections on LISTENER until it is closed, serving each on
+     *  its own thread. */
+    void serve(ServerSocket listener) throws IOException {
+        while (!listener.isClosed()) {
+            final Socket socket = listener.accept();
+            socket.setTcpNoDelay(true);
+            _connections.newThread(() -> {
+                try (Socket s = socket) {
+                    serve(new DataInputStream(
+                              new BufferedInputStream(s.getInputStream())),
+                          new DataOutputStream(
+                              new BufferedOutputStream(s.getOutputStream())));
+                } catch (IOException excp) {
+                    /* Connection dropped: nothing more to do. */
+                }
+            }).start();
+        }
+    }
+
+    /** Answer the jobs on IN with results on OUT until IN ends.  Each job
+     *  runs on one of _searchers, while this thread waits for the next;
+     *  if the connection ends first, the job is stopped, which is how a
+     *  RemoteSearch cancels it.  The first job for each new root position
+     *  starts a new generation of the cache. */
+    private void serve(DataInputStream in, DataOutputStream out)
+        throws IOException {
+        SearchCache cache = null;
+        long root = 0;
+        AI searching = null;
+        try {
+            while (true) {
+                int tag = in.read();
+                if (tag < 0) {
+                    return;
+                } else if (tag != JOB) {
+                    throw new IOException("bad job");
+                }
+                int id = in.readInt();
+                int depth = in.readUnsignedByte();
+                MutableBoard board = new MutableBoard(Defaults.BOARD_SIZE);
+                int square = readPosition(in, board);
+                int n = board.size();
+                Color player = board.whoseMove();
+                int r = square / n + 1, c = square % n + 1;
+                if (!board.isLegal(player, r, c)) {
+                    throw new IOException("illegal move in job");
+                }
+                if (cache == null) {
+                    cache = SearchCache.shared() != null
+                        ? SearchCache.shared() : new SearchCache(CACHE_BITS);
+                }
+                long key = SearchCache.key(board, player);
+                if (key != root) {
+                    root = key;
+                    cache.newGeneration();
+                }
+                SearchCache jobCache = cache;
+                AI ai = new AI(player, depth);
+                ai.setCache(jobCache);
+                searching = ai;
+                _searchers.execute(() -> {
+                    int score = ai.scoreMove(board, r, c);
+                    if (!ai.stopped()) {
+                        writeResult(out, id, score,
+                                    jobCache.variation(board, r, c, depth));
+                    }
+                });
+            }
+        } finally {
+            if (searching != null) {
+                searching.stop();
+            }
+        }
+    }
+
+    /** Write the result of job #ID, SCORE and principal variation PV, on
+     *  OUT, ignoring failures, which mean the job was abandoned. */
+    private static void writeResult(DataOutputStream out, int id, int score,
+                                    int[] pv) {
+        try {
+            out.write(RESULT);
+            out.writeInt(id);
+            out.writeInt(score);
+            out.write(pv.length);
+            for (int sq : pv) {
+                out.writeShort(sq);
+            }
+            out.flush();
+        } catch (IOException excp) {
+            /* Connection dropped: nothing more to do. */
+        }
+    }
+
+    /** Write job #ID, scoring the move to SQUARE on B to DEPTH, on OUT. */
+    static void writeJob(DataOutputStream out, int id, Board b, int square,
+                         int depth) throws IOException {
+        int n = b.size();
+        out.write(JOB);
+        out.writeInt(id);
+        out.write(depth);
+        out.write(n);
+        out.writeInt(b.numMoves());
+        out.write(b.whoseMove().ordinal());
+        for (int k = 0; k < n * n; k += 1) {
+            out.write(MutableBoard.cell(b.color(k / n + 1, k % n + 1),
+                                        b.spots(k / n + 1, k % n + 1)));
+        }
+        out.writeShort(square);
+        out.flush();
+    }
+
+    /** Read the position of a job (after its depth) from IN into B, and
+     *  return the square of its move. */
+    private static int readPosition(DataInputStream in, MutableBoard b)
+        throws IOException {
+        int n = in.readUnsignedByte();
+        int numMoves = in.readInt();
+        Color player = COLORS[in.readUnsignedByte()];
+        int[] cells = new int[n * n];
+        for (int k = 0; k < cells.length; k += 1) {
+            cells[k] = in.readUnsignedByte();
+        }
+        b.setPosition(n, cells, numMoves, player);
+        return in.readUnsignedShort();
+    }
+
+    /** Read a result for a search to DEPTH on a board of size N from IN,
+     *  returning it, with its job number in ID[0]. */
+    static Analysis.Line readResult(DataInputStream in, int[] id, int n,
+                                    int depth) throws IOException {
+        if (in.read() != RESULT) {
+            throw new EOFException("bad result");
+        }
+        id[0] = in.readInt();
+        int score = in.readInt();
+        int[] pv = new int[in.readUnsignedByte()];
+        for (int k = 0; k < pv.length; k += 1) {
+            pv[k] = in.readUnsignedShort();
+        }
+        if (pv.length == 0) {
+            throw new IOException("bad result");
+        }
+        return new Analysis.Line(pv[0] / n + 1, pv[0] % n + 1, depth,
+                                 score, pv);
+    }
+
+    /** First byte of a job. */
+    private static final int JOB = 'J';
+    /** First byte of a result. */
+    private static final int RESULT = 'R';
+    /** Log base 2 of the number of entries in a connection's cache. */
+    private static final int CACHE_BITS = 20;
+    /** The colors, indexed by ordinal. */
+    private static final Color[] COLORS = Color.values();
+
+    /** Source of connection threads. */
+    private final ThreadFactory _connections = Threads.daemons("worker");
+    /** Threads that run jobs. */
+    private final ExecutorService _searchers =
+        Executors.newCachedThreadPool(Threads.daemons("worker-search"));
+
+}
@@ -0,0 +1,145 @@
+package jump61;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static jump61.GameException.error;
+
+/** A server that hosts many independent Jump61 sessions, one per TCP
+ *  connection on the local host.  Each session has its own Game (and so its
+ *  own MutableBoard and players), whose command loop runs on a virtual
+ *  thread where the JVM supports them.
+ *  @author Austin Gandy
+ */
+class Server {
+
+    /** Serve sessions as configured by ARGS, logging on LOG, until
+     *  killed.  ARGS are options of the form
+     *     --port N     port to listen on (default DEFAULT_PORT)
+     *     --backlog N  connection backlog (default 1024)
+     *  Returns an exit code.  Throws GameException on malformed
+     *  arguments. */
+    static int run(String[] args, PrintWriter log) {
+        int port = DEFAULT_PORT;
+        int backlog = DEFAULT_BACKLOG;
+        for (int i = 0; i < args.length; i += 2) {
+            try {
+                if (args[i].equals("--port")) {
+                    port = Integer.parseInt(args[i + 1]);
+                } else if (args[i].equals("--backlog")) {
+                    backlog = Integer.parseInt(args[i + 1]);
+                } else {
+                    throw error("unknown option: %s", args[i]);
+                }
+            } catch (NumberFormatException
+                     | ArrayIndexOutOfBoundsException excp) {
+                throw error("bad value for option: %s", args[i]);
+            }
+        }
+        try (ServerSocket listener = new ServerSocket()) {
+            InetAddress local = InetAddress.getLoopbackAddress();
+            listener.bind(new InetSocketAddress(local, port), backlog);
+            new Server(listener, log).serve();
+            return 0;
+        } catch (IOException excp) {
+            log.printf("server failed: %s%n", excp.getMessage());
+            log.flush();
+            return 1;
+        }
+    }
+
+    /** A server accepting connections on LISTENER and logging on LOG. */
+    Server(ServerSocket listener, PrintWriter log) {
+        _listener = listener;
+        _log = log;
+        _sessionThreads = Threads.virtual("session");
+        _inputThreads = Threads.virtual("input");
+    }
+
+    /** Accept connections until my listener is closed, starting a session
+     *  for each. */
+    void serve() throws IOException {
+        _log.printf("%s serving on %s (%s threads)%n", Defaults.VERSION,
+                    _listener.getLocalSocketAddress(),
+                    Threads.haveVirtual() ? "virtual" : "platform");
+        _log.flush();
+        while (!_listener.isClosed()) {
+            final Socket socket;
+            try {
+                socket = _listener.accept();
+            } catch (IOException excp) {
+                if (_listener.isClosed()) {
+                    break;
+                }
+                throw excp;
+            }
+            _sessionThreads.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    session(socket);
+                }
+            }).start();
+        }
+    }
+
+    /** Return the number of sessions now in progress. */
+    int sessions() {
+        return _sessions.get();
+    }
+
+    /** Run a session of Jump61 over SOCKET, closing it when done. */
+    private void session(Socket socket) {
+        _sessions.incrementAndGet();
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            Reader input =
+                new InputStreamReader(new BufferedInputStream(
+                                          s.getInputStream(), BUFFER_SIZE),
+                                      StandardCharsets.UTF_8);
+            Writer output =
+                new OutputStreamWriter(new BufferedOutputStream(
+                                           s.getOutputStream(), BUFFER_SIZE),
+                                       StandardCharsets.UTF_8);
+            Game game = new Game(input, output, output, output,
+                                 _inputThreads);
+            game.play();
+            output.flush();
+        } catch (IOException excp) {
+            /* The client went away; nothing more to do. */
+        } finally {
+            _sessions.decrementAndGet();
+        }
+    }
+
+    /** Port on which sessions are served by default. */
+    static final int DEFAULT_PORT = 6161;
+    /** Default length of the queue of unaccepted connections. */
+    private static final int DEFAULT_BACKLOG = 1024;
+    /** Size of each connection's input and output buffers. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Socket on which connections arrive. */
+    private final ServerSocket _listener;
+    /** Where events are logged. */
+    private final PrintWriter _log;
+    /** Makes the threads that run sessions' command loops. */
+    private final ThreadFactory _sessionThreads;
+    /** Makes the threads that read sessions' input. */
+    private final ThreadFactory _inputThreads;
+    /** Number of sessions in progress. */
+    private final AtomicInteger _sessions = new AtomicInteger();
+
+}
@@ -0,0 +1,353 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/** A depth-first proof-number (df-pn) solver, which determines whether
+ *  the player to move can force a win, however many moves that takes.
+ *  Since every move adds a spot, and a board can hold only so many before
+ *  someone wins, every game ends, and there are no draws; so a position
+ *  that is not a forced win for the player to move is a forced loss.
+ *
+ *  Each position has a proof number PHI, the least number of positions
+ *  that must still be shown lost (for the opponent) to prove it won for the
+ *  player to move, and a disproof number DELTA, the least number that must
+ *  still be shown won to prove it lost.  The search always expands the
+ *  most-proving position, going deeper while its numbers stay under
+ *  thresholds passed down from its parent, and keeps the numbers of the
+ *  positions it has seen in a fixed-size table, replacing the entries that
+ *  took the least work to compute.  Thresholds are widened by a factor of
+ *  1 + 1/EPSILON_DIVISOR over the second-best move (the "1 + epsilon"
+ *  trick) to limit switching between siblings.
+ *  @author Austin Gandy
+ */
+class Solver {
+
+    /** Results of solve. */
+    static final int LOSS = -1, UNKNOWN = 0, WIN = 1;
+
+    /** A solver whose table has 2**LOG2SIZE entries. */
+    Solver(int log2Size) {
+        int size = 1 << Math.max(log2Size, 2);
+        _keys = new long[size];
+        _phi = new int[size];
+        _delta = new int[size];
+        _work = new int[size];
+        _mask = size - 1;
+    }
+
+    /** Forget the results of all earlier calls to solve. */
+    void clear() {
+        Arrays.fill(_work, 0);
+    }
+
+    /** Return WIN if the player to move on B can force a win, LOSS if the
+     *  other player can, and UNKNOWN if that cannot be settled by
+     *  generating at most MAXNODES positions, or stop() is called first.
+     *  B is restored on return.  Results of earlier calls remain in the
+     *  table and are reused. */
+    int solve(MutableBoard b, long maxNodes) {
+        _stopped = false;
+        _nodes = 0;
+        _maxNodes = maxNodes;
+        _task = SearchScheduler.current();
+        _nextCheckpoint = CHECKPOINT_NODES;
+        _sized = false;
+        _move = -1;
+        long key = SearchCache.key(b, b.whoseMove());
+        if (b.getWinner() != null) {
+            return b.getWinner() == b.whoseMove() ? WIN : LOSS;
+        }
+        search(b, key, INFINITY - 1, INFINITY - 1);
+        int i = find(key);
+        if (i < 0 || _phi[i] != 0 && _delta[i] != 0) {
+            return UNKNOWN;
+        }
+        int result = _phi[i] == 0 ? WIN : LOSS;
+        if (result == WIN) {
+            _move = winningMove(b);
+        }
+        return result;
+    }
+
+    /** Return the square of a winning move found by the last solve that
+     *  returned WIN, and otherwise -1. */
+    int move() {
+        return _move;
+    }
+
+    /** Return the number of positions generated by the last solve. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of distinct positions in a proof of the last
+     *  result of solve, which was for B: for a win, one winning reply to
+     *  each of the loser's moves, and for a loss, every move.  B is
+     *  restored on return.  Parts of the proof that have dropped out of
+     *  the table are solved again, within the limit on positions generated
+     *  given to that solve (counting those it generated); returns -1 if
+     *  that limit is reached, or stop() is called, first. */
+    long proofSize(MutableBoard b) {
+        if (!_sized) {
+            _sized = true;
+            _cut = false;
+            _task = SearchScheduler.current();
+            long size = proofSize(b, new HashSet<Long>());
+            _proofSize = _cut ? -1 : size;
+        }
+        return _proofSize;
+    }
+
+    /** Cause any solve in progress to return UNKNOWN promptly. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return true iff B looks tactical enough to be worth solving: there
+     *  are no empty squares left, or at least a quarter of the squares
+     *  will jump if played. */
+    static boolean tactical(Board b) {
+        int n = b.size(), full = 0;
+        for (int sq = 0; sq < n * n; sq += 1) {
+            if (b.spots(sq) == b.neighbors(sq / n + 1, sq % n + 1)) {
+                full += 1;
+            }
+        }
+        return b.numOfColor(Color.WHITE) == 0 || 4 * full >= n * n;
+    }
+
+    /** Expand position B, with key KEY, until its proof number reaches
+     *  THPHI or its disproof number reaches THDELTA, or the search is
+     *  stopped, recording its numbers in the table.  B is restored. */
+    private void search(MutableBoard b, long key, int thPhi, int thDelta) {
+        int n = b.size(), all = n * n;
+        Color player = b.whoseMove();
+        int[] moves = new int[all];
+        long[] keys = new long[all];
+        int count = 0;
+        long work0 = _nodes;
+        for (int sq = 0; sq < all; sq += 1) {
+            if (!b.isLegal(player, sq / n + 1, sq % n + 1)) {
+                continue;
+            }
+            b.addSpot(player, sq / n + 1, sq % n + 1);
+            _nodes += 1;
+            boolean won = b.numOfColor(player) == all;
+            long childKey = SearchCache.key(b, player.opposite());
+            b.undo();
+            if (won) {
+                store(key, 0, INFINITY, _nodes - work0);
+                return;
+            }
+            moves[count] = sq;
+            keys[count] = childKey;
+            count += 1;
+        }
+        while (true) {
+            int phi = INFINITY, delta = 0, best = -1;
+            int bestDelta = INFINITY, secondDelta = INFINITY;
+            for (int k = 0; k < count; k += 1) {
+                int i = find(keys[k]);
+                int childPhi = i < 0 ? 1 : _phi[i];
+                int childDelta = i < 0 ? 1 : _delta[i];
+                delta = Math.min(INFINITY, delta + childPhi);
+                if (childDelta < bestDelta) {
+                    secondDelta = bestDelta;
+                    bestDelta = childDelta;
+                    best = k;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+            }
+            phi = bestDelta;
+            if (phi >= thPhi || delta >= thDelta || stopped()) {
+                store(key, phi, delta, _nodes - work0);
+                return;
+            }
+            int i = find(keys[best]);
+            int childPhi = i < 0 ? 1 : _phi[i];
+            int childThPhi = thDelta - delta + childPhi;
+            int childThDelta = (int) Math.min(thPhi, (long) secondDelta
+                                              + secondDelta / EPSILON_DIVISOR
+                                              + 1);
+            int sq = moves[best];
+            b.addSpot(player, sq / n + 1, sq % n + 1);
+            search(b, keys[best], childThPhi, childThDelta);
+            b.undo();
+        }
+    }
+
+    /** Return true iff the current solve should give up.  If the solve
+     *  is a scheduled search, lets other searches run every
+     *  CHECKPOINT_NODES positions (but is never stopped by its budget,
+     *  which would make the result depend on timing). */
+    private boolean stopped() {
+        if (_task != null && _nodes >= _nextCheckpoint) {
+            _nextCheckpoint = _nodes + CHECKPOINT_NODES;
+            _task.checkpoint();
+        }
+        return _stopped || _nodes >= _maxNodes;
+    }
+
+    /** Return the square of a move by the player to move on B to a
+     *  position proven lost for the opponent, or -1 if none is known. */
+    private int winningMove(MutableBoard b) {
+        int n = b.size(), all = n * n;
+        Color player = b.whoseMove();
+        for (int sq = 0; sq < all; sq += 1) {
+            if (b.isLegal(player, sq / n + 1, sq % n + 1)) {
+                b.addSpot(player, sq / n + 1, sq % n + 1);
+                int i = find(SearchCache.key(b, player.opposite()));
+                boolean wins = b.numOfColor(player) == all
+                    || i >= 0 && _delta[i] == 0;
+                b.undo();
+                if (wins) {
+                    return sq;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Return the number of positions not in SEEN in a proof of the
+     *  value of B, adding them to SEEN, or 0 once the proof is cut off
+     *  (see prove).  B is restored. */
+    private long proofSize(MutableBoard b, HashSet<Long> seen) {
+        int n = b.size(), all = n * n;
+        Color player = b.whoseMove();
+        long key = SearchCache.key(b, player);
+        if (_cut || !seen.add(key)) {
+            return 0;
+        }
+        if (b.getWinner() != null) {
+            return 1;
+        }
+        int i = prove(b, key);
+        if (i < 0) {
+            return 1;
+        }
+        if (_delta[i] == 0) {
+            long size = 1;
+            for (int sq = 0; sq < all; sq += 1) {
+                if (b.isLegal(player, sq / n + 1, sq % n + 1)) {
+                    b.addSpot(player, sq / n + 1, sq % n + 1);
+                    size += proofSize(b, seen);
+                    b.undo();
+                }
+            }
+            return size;
+        }
+        int move = winningMove(b);
+        for (int sq = 0; move < 0 && !_cut && sq < all; sq += 1) {
+            if (b.isLegal(player, sq / n + 1, sq % n + 1)) {
+                b.addSpot(player, sq / n + 1, sq % n + 1);
+                int j = prove(b, SearchCache.key(b, player.opposite()));
+                move = j >= 0 && _delta[j] == 0 ? sq : -1;
+                b.undo();
+            }
+        }
+        if (move < 0 || _cut) {
+            return 1;
+        }
+        b.addSpot(player, move / n + 1, move % n + 1);
+        long size = 1 + proofSize(b, seen);
+        b.undo();
+        return size;
+    }
+
+    /** Return the index of the table entry for B, whose key is KEY, after
+     *  searching B until it is proven or disproven if it is not already,
+     *  or -1 if there is no entry.  If the search is stopped first, sets
+     *  _cut and returns -1.  B is restored. */
+    private int prove(MutableBoard b, long key) {
+        int i = find(key);
+        if (i >= 0 && (_phi[i] == 0 || _delta[i] == 0)) {
+            return i;
+        }
+        if (!stopped()) {
+            search(b, key, INFINITY - 1, INFINITY - 1);
+            i = find(key);
+            if (i >= 0 && (_phi[i] == 0 || _delta[i] == 0)) {
+                return i;
+            }
+        }
+        _cut = stopped();
+        return _cut ? -1 : i;
+    }
+
+    /** Return the index of the table entry for KEY, or -1 if there is
+     *  none. */
+    private int find(long key) {
+        int base = (int) key & _mask & ~(BUCKET - 1);
+        for (int i = base; i < base + BUCKET; i += 1) {
+            if (_keys[i] == key && _work[i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Record that the position with key KEY has proof number PHI and
+     *  disproof number DELTA, found with WORK positions generated,
+     *  replacing the entry in its bucket that took least work. */
+    private void store(long key, int phi, int delta, long work) {
+        int base = (int) key & _mask & ~(BUCKET - 1);
+        int slot = base;
+        for (int i = base; i < base + BUCKET; i += 1) {
+            if (_keys[i] == key && _work[i] != 0) {
+                slot = i;
+                work += _work[i];
+                break;
+            } else if (_work[i] < _work[slot]) {
+                slot = i;
+            }
+        }
+        _keys[slot] = key;
+        _phi[slot] = phi;
+        _delta[slot] = delta;
+        _work[slot] = (int) Math.max(1, Math.min(work, Integer.MAX_VALUE));
+    }
+
+    /** Proof and disproof numbers of proven and disproven positions. */
+    private static final int INFINITY = 1 << 29;
+    /** Thresholds are widened by 1 / EPSILON_DIVISOR of the second-best
+     *  disproof number. */
+    private static final int EPSILON_DIVISOR = 4;
+    /** Number of entries in a bucket of the table. */
+    private static final int BUCKET = 4;
+    /** Number of positions between checkpoints of a scheduled solve. */
+    private static final int CHECKPOINT_NODES = 1024;
+
+    /** Keys of the positions in the table. */
+    private final long[] _keys;
+    /** Proof numbers of the positions in the table. */
+    private final int[] _phi;
+    /** Disproof numbers of the positions in the table. */
+    private final int[] _delta;
+    /** Positions generated to find each entry, or 0 for an empty
+     *  entry. */
+    private final int[] _work;
+    /** Mask giving the index of a key. */
+    private final int _mask;
+
+    /** Positions generated by the current or last solve. */
+    private volatile long _nodes;
+    /** Limit on _nodes for the current solve. */
+    private long _maxNodes;
+    /** True when the current solve should give up. */
+    private volatile boolean _stopped;
+    /** The scheduled search running the current solve, or null. */
+    private SearchScheduler.Task _task;
+    /** Value of _nodes at the next checkpoint of _task. */
+    private long _nextCheckpoint;
+    /** Winning move found by the last solve, or -1. */
+    private int _move;
+    /** True iff _proofSize has been computed for the last solve. */
+    private boolean _sized;
+    /** Proof size computed for the last solve, or -1 if unknown. */
+    private long _proofSize;
+    /** True iff the computation of _proofSize has been cut off. */
+    private boolean _cut;
+
+}
@@ -0,0 +1,54 @@
+package jump61;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Sources of threads used throughout jump61.
+ *  @author Austin Gandy
+ */
+class Threads {
+
+    /** Return a factory for daemon platform threads named jump61-NAME-#,
+     *  so that a thread left running does not keep the program alive. */
+    static ThreadFactory daemons(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jump61-" + name + "-"
+                                      + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /** Return a factory for virtual threads named jump61-NAME, if this JVM
+     *  has them (Java 21 and later), and otherwise for daemon platform
+     *  threads, as for daemons(NAME). */
+    static ThreadFactory virtual(String name) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = ofVirtual.invoke(null);
+            virtual = builder.getMethod("name", String.class, long.class)
+                .invoke(virtual, "jump61-" + name + "-", 1L);
+            return (ThreadFactory) builder.getMethod("factory")
+                .invoke(virtual);
+        } catch (ReflectiveOperationException excp) {
+            return daemons(name);
+        }
+    }
+
+    /** Return true iff virtual(NAME) makes virtual threads. */
+    static boolean haveVirtual() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException excp) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package jump61;
+
+import java.util.Arrays;
+
+import static jump61.GameException.error;
+
+/** The blank-separated tokens of one command line, found in place in a
+ *  character buffer.  Tokenizing allocates nothing once the token arrays
+ *  have grown to fit; Strings are made only for tokens that are asked for
+ *  with get.
+ *  @author Austin Gandy
+ */
+class Tokens {
+
+    /** Tokenize the line in BUF[START .. END).  BUF must not change while
+     *  I am in use. */
+    void reset(char[] buf, int start, int end) {
+        _buf = buf;
+        _size = 0;
+        int i = start;
+        while (true) {
+            while (i < end && isBlank(buf[i])) {
+                i += 1;
+            }
+            if (i == end) {
+                break;
+            }
+            if (_size == _starts.length) {
+                _starts = Arrays.copyOf(_starts, 2 * _size);
+                _ends = Arrays.copyOf(_ends, 2 * _size);
+            }
+            _starts[_size] = i;
+            while (i < end && !isBlank(buf[i])) {
+                i += 1;
+            }
+            _ends[_size] = i;
+            _size += 1;
+        }
+    }
+
+    /** Return the number of tokens. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the buffer holding my tokens. */
+    char[] buffer() {
+        return _buf;
+    }
+
+    /** Return the index in buffer() of the start of token #K. */
+    int start(int k) {
+        return _starts[k];
+    }
+
+    /** Return the index in buffer() just past the end of token #K. */
+    int end(int k) {
+        return _ends[k];
+    }
+
+    /** Return token #K, converted to lower case. */
+    String get(int k) {
+        char[] token = new char[_ends[k] - _starts[k]];
+        for (int i = 0; i < token.length; i += 1) {
+            token[i] = toLower(_buf[_starts[k] + i]);
+        }
+        return new String(token);
+    }
+
+    /** Return true iff token #K is an optionally signed decimal integer
+     *  that fits in an int. */
+    boolean isInt(int k) {
+        int i = _starts[k], end = _ends[k];
+        if (i < end && (_buf[i] == '-' || _buf[i] == '+')) {
+            i += 1;
+        }
+        if (i == end || end - i > MAX_DIGITS) {
+            return false;
+        }
+        for (; i < end; i += 1) {
+            if (_buf[i] < '0' || _buf[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the value of token #K, which must satisfy isInt(K). */
+    int intValue(int k) {
+        int i = _starts[k], end = _ends[k];
+        boolean negative = _buf[i] == '-';
+        if (_buf[i] == '-' || _buf[i] == '+') {
+            i += 1;
+        }
+        int result;
+        result = 0;
+        for (; i < end; i += 1) {
+            result = result * 10 + (_buf[i] - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    /** Return the value of argument #K of COMMAND as an int.  Throws a
+     *  GameException if it is missing or not an integer. */
+    int intArg(int k, String command) {
+        requireArgs(k, command);
+        if (!isInt(k)) {
+            throw error("Wrong argument for command %s: '%s'", command,
+                        get(k));
+        }
+        return intValue(k);
+    }
+
+    /** Return argument #K of COMMAND, in lower case.  Throws a
+     *  GameException if it is missing. */
+    String arg(int k, String command) {
+        requireArgs(k, command);
+        return get(k);
+    }
+
+    /** Throw a GameException unless COMMAND has at least N arguments
+     *  (tokens after the first). */
+    void requireArgs(int n, String command) {
+        if (_size <= n) {
+            throw error("Too few arguments for command: %s", command);
+        }
+    }
+
+    /** Return true iff C separates tokens. */
+    static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\f' || c == '\u000b';
+    }
+
+    /** Return C in lower case. */
+    static char toLower(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        } else if (c < ASCII_LIMIT) {
+            return c;
+        } else {
+            return Character.toLowerCase(c);
+        }
+    }
+
+    /** Most digits in a token accepted by isInt.  Ints of up to this many
+     *  digits cannot overflow. */
+    private static final int MAX_DIGITS = 9;
+    /** Characters below this are ASCII. */
+    private static final char ASCII_LIMIT = 128;
+    /** Initial capacity of the token arrays. */
+    private static final int INITIAL_TOKENS = 8;
+
+    /** The buffer holding the current line. */
+    private char[] _buf;
+    /** Start and end indices in _buf of each token. */
+    private int[] _starts = new int[INITIAL_TOKENS],
+        _ends = new int[INITIAL_TOKENS];
+    /** Number of tokens. */
+    private int _size;
+
+}
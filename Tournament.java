@@ -0,0 +1,326 @@
+package jump61;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static jump61.Color.*;
+import static jump61.GameException.error;
+
+/** A headless match between two AI engines, played directly on boards in
+ *  parallel, with no Game, input, or output per move.  Engine A plays red
+ *  in even-numbered games and blue in odd-numbered ones; each pair of games
+ *  uses the same board size and randomized opening.  Results are reported
+ *  from A's point of view, together with an Elo estimate and, optionally, a
+ *  sequential probability ratio test that may stop the match early.
+ *  @author Austin Gandy
+ */
+class Tournament {
+
+    /** Play a match configured by ARGS, reporting on OUT.  ARGS are
+     *  options of the form
+     *     --a SPEC, --b SPEC    engines (default 4 for both)
+     *     --games N             maximum number of games (default 1000)
+     *     --threads N           worker threads (default: all processors)
+     *     --sizes N,N,...       board sizes, used in rotation (default 6)
+     *     --random N            random plies at the start of each pair
+     *                           of games (default 4)
+     *     --seed N              seed for openings (default 0)
+     *     --sprt ELO0,ELO1      stop early once H0 (Elo difference ELO0)
+     *                           or H1 (ELO1) is accepted at
+     *                           alpha = beta = 0.05
+     *  An engine SPEC is a search depth optionally followed by
+     *  selective-search techniques, as in 4+lmr+futility.  Returns an exit
+     *  code.  Throws GameException on malformed arguments. */
+    static int run(String[] args, PrintWriter out) {
+        Tournament match = new Tournament();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw error("missing value for option: %s", args[i]);
+            }
+            match.setOption(args[i], args[i + 1]);
+        }
+        match.play(out);
+        return 0;
+    }
+
+    /** A new match with default settings. */
+    Tournament() {
+        _engineA = new Engine("4");
+        _engineB = new Engine("4");
+        _games = 1000;
+        _threads = Runtime.getRuntime().availableProcessors();
+        _sizes = new int[] { Defaults.BOARD_SIZE };
+        _randomPlies = 4;
+        _seed = 0;
+    }
+
+    /** Set option NAME to VALUE, as described for run. */
+    void setOption(String name, String value) {
+        try {
+            switch (name) {
+            case "--a":
+                _engineA = new Engine(value);
+                break;
+            case "--b":
+                _engineB = new Engine(value);
+                break;
+            case "--games":
+                _games = Integer.parseInt(value);
+                break;
+            case "--threads":
+                _threads = Math.max(1, Integer.parseInt(value));
+                break;
+            case "--sizes":
+                String[] sizes = value.split(",");
+                _sizes = new int[sizes.length];
+                for (int i = 0; i < sizes.length; i += 1) {
+                    _sizes[i] = Integer.parseInt(sizes[i]);
+                    if (_sizes[i] < 2) {
+                        throw error("board sizes must be at least 2");
+                    }
+                }
+                break;
+            case "--random":
+                _randomPlies = Integer.parseInt(value);
+                break;
+            case "--seed":
+                _seed = Long.parseLong(value);
+                break;
+            case "--sprt":
+                String[] elos = value.split(",");
+                _sprt = new double[] { Double.parseDouble(elos[0]),
+                                       Double.parseDouble(elos[1]) };
+                break;
+            default:
+                throw error("unknown option: %s", name);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw error("bad value for option %s: '%s'", name, value);
+        }
+    }
+
+    /** Play the match on my worker threads and print a report on OUT. */
+    void play(PrintWriter out) {
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < _threads; t += 1) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int g = next.getAndIncrement(); g < _games && !_done;
+                         g = next.getAndIncrement()) {
+                        record(playGame(g));
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        report(out, (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Play game #G and return its result for engine A: 1 for a win, 0 for
+     *  a loss, and 0.5 if the game is abandoned as too long.  An opening
+     *  that ends the game is scored as it stands. */
+    double playGame(int g) {
+        int size = _sizes[(g / 2) % _sizes.length];
+        MutableBoard board = new MutableBoard(size);
+        Random random = new Random(_seed * PAIRS + g / 2);
+        for (int k = 0; k < _randomPlies && board.getWinner() == null;
+             k += 1) {
+            Color player = board.whoseMove();
+            int r, c;
+            do {
+                r = random.nextInt(size) + 1;
+                c = random.nextInt(size) + 1;
+            } while (!board.isLegal(player, r, c));
+            board.addSpot(player, r, c);
+        }
+        Color colorA = g % 2 == 0 ? RED : BLUE;
+        AI a = _engineA.player(colorA);
+        AI b = _engineB.player(colorA.opposite());
+        int maxPlies = MAX_PLIES_PER_SQUARE * size * size;
+        for (int ply = 0; ply < maxPlies; ply += 1) {
+            Color player = board.whoseMove();
+            if (board.numOfColor(player.opposite()) == size * size) {
+                return player == colorA ? 0.0 : 1.0;
+            }
+            int[] move = (player == colorA ? a : b).chooseMove(board);
+            board.addSpot(player, move[0], move[1]);
+        }
+        return 0.5;
+    }
+
+    /** Add the result SCORE of one game to the totals, and decide whether
+     *  the match is over. */
+    synchronized void record(double score) {
+        if (_done) {
+            return;
+        }
+        if (score == 1.0) {
+            _wins += 1;
+        } else if (score == 0.0) {
+            _losses += 1;
+        } else {
+            _draws += 1;
+        }
+        if (_sprt != null) {
+            double llr = llr();
+            if (llr >= Math.log((1 - SPRT_BETA) / SPRT_ALPHA)) {
+                _verdict = "H1 accepted";
+                _done = true;
+            } else if (llr <= Math.log(SPRT_BETA / (1 - SPRT_ALPHA))) {
+                _verdict = "H0 accepted";
+                _done = true;
+            }
+        }
+    }
+
+    /** Print the results of the match, which took SECONDS, on OUT. */
+    synchronized void report(PrintWriter out, double seconds) {
+        int n = _wins + _losses + _draws;
+        out.printf("A: %s  B: %s%n", _engineA, _engineB);
+        out.printf("games %d: +%d -%d =%d  score %.3f%n", n, _wins, _losses,
+                   _draws, n == 0 ? 0.0 : score());
+        if (n > 0) {
+            double margin = CONFIDENCE_Z * Math.sqrt(variance() / n);
+            out.printf("Elo %.1f  95%% [%.1f, %.1f]%n", elo(score()),
+                       elo(score() - margin), elo(score() + margin));
+        }
+        if (_sprt != null) {
+            out.printf("SPRT(%.1f, %.1f): LLR %.2f  %s%n", _sprt[0], _sprt[1],
+                       n == 0 ? 0.0 : llr(),
+                       _verdict == null ? "inconclusive" : _verdict);
+        }
+        out.printf("%.1f games/s on %d threads%n", n / seconds, _threads);
+        out.flush();
+    }
+
+    /** Return A's mean score per game. */
+    private double score() {
+        return (_wins + 0.5 * _draws) / (_wins + _losses + _draws);
+    }
+
+    /** Return the variance of A's score for one game. */
+    private double variance() {
+        double s = score();
+        int n = _wins + _losses + _draws;
+        return (_wins * (1 - s) * (1 - s) + _draws * (0.5 - s) * (0.5 - s)
+                + _losses * s * s) / n;
+    }
+
+    /** Return the log-likelihood ratio of the SPRT hypotheses, using the
+     *  normal approximation to the distribution of the mean score. */
+    private double llr() {
+        int n = _wins + _losses + _draws;
+        double var = variance();
+        if (var == 0) {
+            return 0;
+        }
+        double s0 = expectedScore(_sprt[0]), s1 = expectedScore(_sprt[1]);
+        return n * (s1 - s0) * (2 * score() - s0 - s1) / (2 * var);
+    }
+
+    /** Return the Elo difference corresponding to mean score S. */
+    private static double elo(double s) {
+        s = Math.min(Math.max(s, SCORE_LIMIT), 1 - SCORE_LIMIT);
+        return -ELO_SCALE * Math.log10(1 / s - 1);
+    }
+
+    /** Return the mean score corresponding to Elo difference ELO. */
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / ELO_SCALE));
+    }
+
+    /** An engine configuration: a depth and a set of selective-search
+     *  techniques. */
+    static class Engine {
+
+        /** The engine described by SPEC, as for Tournament.run. */
+        Engine(String spec) {
+            String[] parts = spec.toLowerCase().split("\\+");
+            _spec = spec;
+            try {
+                _depth = Integer.parseInt(parts[0]);
+            } catch (NumberFormatException e) {
+                throw error("bad engine depth: '%s'", parts[0]);
+            }
+            for (int i = 1; i < parts.length; i += 1) {
+                try {
+                    _pruning.add(AI.Pruning.valueOf(parts[i].toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw error("bad engine option: '%s'", parts[i]);
+                }
+            }
+        }
+
+        /** Return a new AI with this configuration, playing COLOR. */
+        AI player(Color color) {
+            AI ai = new AI(color, _depth);
+            for (AI.Pruning which : _pruning) {
+                ai.setPruning(which, true);
+            }
+            return ai;
+        }
+
+        @Override
+        public String toString() {
+            return _spec;
+        }
+
+        /** Specification I was created from. */
+        private final String _spec;
+        /** Search depth. */
+        private int _depth;
+        /** Selective-search techniques enabled. */
+        private final ArrayList<AI.Pruning> _pruning =
+            new ArrayList<AI.Pruning>();
+    }
+
+    /** Elo points per factor of 10 in odds of winning. */
+    private static final double ELO_SCALE = 400;
+    /** Scores are clamped to within this of 0 and 1 to give finite Elo. */
+    private static final double SCORE_LIMIT = 1e-3;
+    /** Normal deviate for 95% confidence. */
+    private static final double CONFIDENCE_Z = 1.96;
+    /** Probability of accepting H1 when H0 holds. */
+    private static final double SPRT_ALPHA = 0.05;
+    /** Probability of accepting H0 when H1 holds. */
+    private static final double SPRT_BETA = 0.05;
+    /** Games longer than this many plies per square are abandoned. */
+    private static final int MAX_PLIES_PER_SQUARE = 20;
+    /** Spacing of opening seeds for different values of --seed. */
+    private static final long PAIRS = 1L << 32;
+
+    /** The engines compared. */
+    private Engine _engineA, _engineB;
+    /** Maximum number of games. */
+    private int _games;
+    /** Number of worker threads. */
+    private int _threads;
+    /** Board sizes, used in rotation by pairs of games. */
+    private int[] _sizes;
+    /** Number of random plies at the start of each game. */
+    private int _randomPlies;
+    /** Seed for random openings. */
+    private long _seed;
+    /** Elo differences for SPRT hypotheses H0 and H1, or null. */
+    private double[] _sprt;
+    /** Results for engine A so far. */
+    private int _wins, _losses, _draws;
+    /** Outcome of the SPRT, or null if it has not finished. */
+    private String _verdict;
+    /** True once no more games should be started. */
+    private volatile boolean _done;
+
+}
@@ -9,7 +9,7 @@ public class UnitTest {
 
     /** Run the JUnit tests in the tex61 package. */
     public static void main(String[] ignored) {
-        textui.runClasses(jump61.BoardTest.class);
+        textui.runClasses(jump61.BoardTest.class, jump61.JournalTest.class);
     }
 
 }
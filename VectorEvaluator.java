@@ -0,0 +1,114 @@
+package jump61;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/** An Evaluator that sums over cells using the lanes of the CPU's
+ *  preferred int vectors, and does a Network's arithmetic in its preferred
+ *  short vectors (widening to ints for products).  Must only be loaded when the
+ *  jdk.incubator.vector module is present (see Evaluator.get).
+ *  @author Austin Gandy
+ */
+class VectorEvaluator extends Evaluator {
+
+    @Override
+    int count(int[] cells, int n, Color color) {
+        int c = color.ordinal();
+        int bound = SPECIES.loopBound(n);
+        IntVector ones = IntVector.broadcast(SPECIES, 1);
+        IntVector acc = IntVector.zero(SPECIES);
+        int i;
+        for (i = 0; i < bound; i += SPECIES.length()) {
+            VectorMask<Integer> mine = IntVector.fromArray(SPECIES, cells, i)
+                .and(COLOR_MASK).compare(VectorOperators.EQ, c);
+            acc = acc.add(ones, mine);
+        }
+        int result = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i += 1) {
+            if ((cells[i] & COLOR_MASK) == c) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    void addRow(short[] sums, int base, short[] w, int row, int n) {
+        int bound = SHORTS.loopBound(n);
+        int j;
+        for (j = 0; j < bound; j += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, sums, base + j)
+                .add(ShortVector.fromArray(SHORTS, w, row + j))
+                .intoArray(sums, base + j);
+        }
+        for (; j < n; j += 1) {
+            sums[base + j] += w[row + j];
+        }
+    }
+
+    @Override
+    void subtractRow(short[] sums, int base, short[] w, int row, int n) {
+        int bound = SHORTS.loopBound(n);
+        int j;
+        for (j = 0; j < bound; j += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, sums, base + j)
+                .sub(ShortVector.fromArray(SHORTS, w, row + j))
+                .intoArray(sums, base + j);
+        }
+        for (; j < n; j += 1) {
+            sums[base + j] -= w[row + j];
+        }
+    }
+
+    @Override
+    int clippedDot(short[] sums, int base, short[] w, int wBase, int n,
+                   int clip) {
+        int bound = HALF_SHORTS.loopBound(n);
+        short top = (short) clip;
+        IntVector acc = IntVector.zero(SPECIES);
+        int j;
+        for (j = 0; j < bound; j += HALF_SHORTS.length()) {
+            IntVector x = (IntVector)
+                ShortVector.fromArray(HALF_SHORTS, sums, base + j)
+                .max((short) 0).min(top)
+                .convertShape(VectorOperators.S2I, SPECIES, 0);
+            IntVector y = (IntVector)
+                ShortVector.fromArray(HALF_SHORTS, w, wBase + j)
+                .convertShape(VectorOperators.S2I, SPECIES, 0);
+            acc = acc.add(x.mul(y));
+        }
+        int result = acc.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j += 1) {
+            result += Math.min(Math.max(sums[base + j], 0), clip)
+                * w[wBase + j];
+        }
+        return result;
+    }
+
+    @Override
+    String name() {
+        return "vector" + SPECIES.length();
+    }
+
+    @Override
+    int lanes() {
+        return SPECIES.length();
+    }
+
+    /** The vector shape used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+    /** Short vectors of the preferred shape, for sums of rows. */
+    private static final VectorSpecies<Short> SHORTS =
+        ShortVector.SPECIES_PREFERRED;
+    /** Short vectors with as many lanes as SPECIES, which widen to it. */
+    private static final VectorSpecies<Short> HALF_SHORTS =
+        VectorSpecies.of(short.class,
+                         VectorShape.forBitSize(SPECIES.vectorBitSize()
+                                                / 2));
+
+}
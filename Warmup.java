@@ -0,0 +1,190 @@
+package jump61;
+
+import java.io.PrintWriter;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+
+/** A warm-up of the JIT compiler, so that the first move of an AI in a new
+ *  JVM is not made by interpreted code.  It plays the part of a user: in
+ *  rounds, it searches a few random positions on boards of representative
+ *  sizes (SEARCHES) and plays random games to the end on others
+ *  (PLAYOUTS), which exercises cascades, until a round causes little more
+ *  compilation (QUIET_MILLIS), or MAX_MILLIS have passed.  All its work
+ *  is done as BACKGROUND searches of the SearchScheduler, which reach a
+ *  checkpoint at least once a move, so a real search started meanwhile
+ *  takes over the processor within a time slice, or the time of one move
+ *  if a cascade takes longer.
+ *
+ *  Warm-up is controlled by the property jump61.warmup: 'on' (the
+ *  default) to warm up, 'off' not to, and 'report' to warm up and print
+ *  how long it took.
+ *  @author Austin Gandy
+ */
+class Warmup implements Runnable {
+
+    /** A warm-up of searches on boards of ENGINE, reporting on REPORT
+     *  when done unless REPORT is null. */
+    Warmup(BoardEngine engine, PrintWriter report) {
+        _engine = engine;
+        _report = report;
+    }
+
+    /** Start a warm-up on a thread of its own, as directed by the property
+     *  jump61.warmup, with searches on boards of ENGINE, and return it, or
+     *  null if warm-up is off.  Reports go to ERR. */
+    static Warmup start(BoardEngine engine, PrintWriter err) {
+        String setting = System.getProperty("jump61.warmup", "on");
+        if (setting.equals("off")) {
+            return null;
+        }
+        Warmup warmup =
+            new Warmup(engine, setting.equals("report") ? err : null);
+        THREADS.newThread(warmup).start();
+        return warmup;
+    }
+
+    @Override
+    public void run() {
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean timed = jit != null
+            && jit.isCompilationTimeMonitoringSupported();
+        long start = System.nanoTime();
+        long compiling0 = timed ? jit.getTotalCompilationTime() : 0;
+        long compiling = compiling0;
+        Random random = new Random(SEED);
+        while (!_stopped) {
+            round(random);
+            _rounds += 1;
+            long elapsed = (System.nanoTime() - start) / MILLION;
+            long now = timed ? jit.getTotalCompilationTime() : 0;
+            boolean quiet = timed ? now - compiling < QUIET_MILLIS
+                : _rounds >= UNTIMED_ROUNDS;
+            compiling = now;
+            if (quiet || elapsed >= MAX_MILLIS) {
+                break;
+            }
+        }
+        _millis = (System.nanoTime() - start) / MILLION;
+        _done = true;
+        if (_report != null) {
+            _report.printf("warmup: %d rounds in %d ms%s%s%n", _rounds,
+                           _millis,
+                           timed ? String.format(", %d ms compiling",
+                                                 compiling - compiling0)
+                           : "",
+                           _stopped ? " (stopped)" : "");
+            _report.flush();
+        }
+    }
+
+    /** Stop warming up at the end of the current round. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return true iff I have finished. */
+    boolean isDone() {
+        return _done;
+    }
+
+    /** Return the number of rounds I have completed. */
+    int rounds() {
+        return _rounds;
+    }
+
+    /** Return how long I took, in milliseconds, once I am done. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Do one round of warm-up work, choosing positions with RANDOM. */
+    private void round(Random random) {
+        SearchScheduler.Session session = new SearchScheduler.Session();
+        for (int[] search : SEARCHES) {
+            if (!_stopped) {
+                MutableBoard b = _engine.newBoard(search[0]);
+                SearchScheduler.shared()
+                    .submit(session, SearchScheduler.Priority.BACKGROUND,
+                            () -> {
+                                playRandomly(b, random,
+                                             random.nextInt(b.size()
+                                                            * b.size()));
+                                if (b.getWinner() == null) {
+                                    new AI(b.whoseMove(), search[1])
+                                        .chooseMove(b);
+                                }
+                                return null;
+                            })
+                    .join();
+            }
+        }
+        for (int size : PLAYOUTS) {
+            if (!_stopped) {
+                MutableBoard b = _engine.newBoard(size);
+                SearchScheduler.shared()
+                    .submit(session, SearchScheduler.Priority.BACKGROUND,
+                            () -> {
+                                playRandomly(b, random, Integer.MAX_VALUE);
+                                return null;
+                            })
+                    .join();
+            }
+        }
+    }
+
+    /** Make up to MOVES random legal moves on B, using RANDOM, stopping if
+     *  the game ends.  Lets other searches run, if called by one, after
+     *  every move. */
+    private static void playRandomly(MutableBoard b, Random random,
+                                     int moves) {
+        SearchScheduler.Task task = SearchScheduler.current();
+        int n = b.size();
+        for (int k = 0; k < moves && b.getWinner() == null; k += 1) {
+            if (task != null) {
+                task.checkpoint();
+            }
+            int sq;
+            do {
+                sq = random.nextInt(n * n);
+            } while (!b.isLegal(b.whoseMove(), sq / n + 1, sq % n + 1));
+            b.addSpot(b.whoseMove(), sq / n + 1, sq % n + 1);
+        }
+    }
+
+    /** Board sizes and depths of the searches in each round. */
+    private static final int[][] SEARCHES = {
+        { 3, 4 }, { 4, 4 }, { 5, 3 }, { 6, 3 }, { 8, 2 }
+    };
+    /** Board sizes of the random games played in each round. */
+    private static final int[] PLAYOUTS = { 4, 6, 8, 12, 16 };
+    /** A round that adds less than this much compilation time, in
+     *  milliseconds, ends warm-up. */
+    private static final long QUIET_MILLIS = 10;
+    /** Longest warm-up, in milliseconds. */
+    private static final long MAX_MILLIS = 5000;
+    /** Number of rounds when compilation time cannot be measured. */
+    private static final int UNTIMED_ROUNDS = 3;
+    /** Seed for the choice of positions. */
+    private static final long SEED = 49;
+    /** Nanoseconds per millisecond. */
+    private static final long MILLION = 1000000;
+    /** Makes the thread of a warm-up. */
+    private static final ThreadFactory THREADS =
+        Threads.daemons("warmup");
+
+    /** Engine of the boards searched. */
+    private final BoardEngine _engine;
+    /** Where to report, or null. */
+    private final PrintWriter _report;
+    /** Number of rounds completed. */
+    private volatile int _rounds;
+    /** Duration of the warm-up, once done. */
+    private volatile long _millis;
+    /** True once done. */
+    private volatile boolean _done;
+    /** True when warm-up should stop. */
+    private volatile boolean _stopped;
+
+}
@@ -0,0 +1,201 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** A parallel engine for resolving cascades on large boards.  Rather
+ *  than jumping one square at a time, as MutableBoard.jump does, it works
+ *  in synchronous rounds: in each round, every overfull square jumps at
+ *  once, giving one spot to each neighbor.  Each round is one pass over
+ *  the rows that can change, split into stripes of rows that are updated
+ *  in parallel on a fork-join pool.  A stripe reads the jumping squares of
+ *  the rows bordering it (which belong to other stripes) from a flag array
+ *  that is fixed for the round, and writes the flags for the next round
+ *  into a second array; the two are swapped between rounds.
+ *
+ *  Since each jump just moves spots to neighbors, the final number of
+ *  spots on each square does not depend on the order of the jumps, and
+ *  every square reached by a cascade ends up with the mover's color.  So
+ *  the result is the same as jump's, except when the cascade wins the
+ *  game: both stop once the mover owns every square, but may then have
+ *  spots in different places.
+ *
+ *  Squares are encoded as by MutableBoard.cell.
+ *  @author Austin Gandy
+ */
+class Wavefront {
+
+    /** A new engine running on POOL. */
+    Wavefront(ForkJoinPool pool) {
+        _pool = pool;
+    }
+
+    /** Resolve all cascades in CELLS, the squares of an N x N board, the
+     *  only overfull one of which is square #SQ.  PLAYER (a color ordinal)
+     *  owns OWNED squares.  Stops early if PLAYER comes to own all
+     *  squares.  Returns the number of squares PLAYER then owns.
+     *  Afterwards, lowRow() and highRow() bound the rows changed. */
+    int resolve(int[] cells, int N, int sq, int player, int owned) {
+        if (_flags == null || _flags.length < N * N) {
+            _flags = new boolean[N * N];
+            _next = new boolean[N * N];
+        }
+        _cells = cells;
+        _N = N;
+        _player = player;
+        int row = sq / N;
+        _flags[sq] = true;
+        int lo = row, hi = row;
+        _lowRow = _highRow = row;
+        _topples = 0;
+        while (lo <= hi && owned < N * N) {
+            int from = Math.max(lo - 1, 0), to = Math.min(hi + 1, N - 1);
+            int[] stats = _pool.invoke(new Stripe(from, to + 1));
+            Arrays.fill(_flags, lo * N, (hi + 1) * N, false);
+            boolean[] t = _flags;
+            _flags = _next;
+            _next = t;
+            _lowRow = Math.min(_lowRow, from);
+            _highRow = Math.max(_highRow, to);
+            owned += stats[CONVERTED];
+            _topples += stats[TOPPLED];
+            lo = stats[LOW];
+            hi = stats[HIGH];
+        }
+        if (lo <= hi) {
+            Arrays.fill(_flags, lo * N, (hi + 1) * N, false);
+        }
+        _cells = null;
+        return owned;
+    }
+
+    /** Return the number of jumps made by the last resolve. */
+    int topples() {
+        return _topples;
+    }
+
+    /** Return the first (0-based) row changed by the last resolve. */
+    int lowRow() {
+        return _lowRow;
+    }
+
+    /** Return the last (0-based) row changed by the last resolve. */
+    int highRow() {
+        return _highRow;
+    }
+
+    /** One round's update of rows [FROM .. TO), splitting into halves
+     *  until there are at most STRIPE_ROWS rows.  Yields statistics
+     *  indexed by CONVERTED, LOW, HIGH, and TOPPLED: the number of squares
+     *  newly given to the mover, the first and last rows with squares
+     *  overfull for the next round (LOW > HIGH if there are none), and the
+     *  number of squares that jumped. */
+    private class Stripe extends RecursiveTask<int[]> {
+
+        /** Update rows [FROM .. TO). */
+        Stripe(int from, int to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (_to - _from <= STRIPE_ROWS) {
+                return update();
+            }
+            int mid = (_from + _to) / 2;
+            Stripe low = new Stripe(_from, mid);
+            low.fork();
+            int[] high = new Stripe(mid, _to).compute();
+            int[] result = low.join();
+            result[CONVERTED] += high[CONVERTED];
+            result[LOW] = Math.min(result[LOW], high[LOW]);
+            result[HIGH] = Math.max(result[HIGH], high[HIGH]);
+            result[TOPPLED] += high[TOPPLED];
+            return result;
+        }
+
+        /** Update my rows directly. */
+        private int[] update() {
+            int[] cells = _cells;
+            boolean[] flags = _flags, next = _next;
+            int N = _N, player = _player;
+            int converted = 0, low = N, high = -1, toppled = 0;
+            for (int r = _from; r < _to; r += 1) {
+                for (int c = 0, k = r * N; c < N; c += 1, k += 1) {
+                    int in = 0, neighbors = 0;
+                    if (r > 0) {
+                        neighbors += 1;
+                        in += flags[k - N] ? 1 : 0;
+                    }
+                    if (r < N - 1) {
+                        neighbors += 1;
+                        in += flags[k + N] ? 1 : 0;
+                    }
+                    if (c > 0) {
+                        neighbors += 1;
+                        in += flags[k - 1] ? 1 : 0;
+                    }
+                    if (c < N - 1) {
+                        neighbors += 1;
+                        in += flags[k + 1] ? 1 : 0;
+                    }
+                    if (in == 0 && !flags[k]) {
+                        continue;
+                    }
+                    int cell = cells[k];
+                    toppled += flags[k] ? 1 : 0;
+                    int spots = (cell >> Evaluator.COLOR_BITS) + in
+                        - (flags[k] ? neighbors : 0);
+                    if ((cell & Evaluator.COLOR_MASK) != player) {
+                        converted += 1;
+                    }
+                    cells[k] = (spots << Evaluator.COLOR_BITS) | player;
+                    if (spots > neighbors) {
+                        next[k] = true;
+                        low = Math.min(low, r);
+                        high = r;
+                    }
+                }
+            }
+            int[] result = new int[4];
+            result[CONVERTED] = converted;
+            result[LOW] = low;
+            result[HIGH] = high;
+            result[TOPPLED] = toppled;
+            return result;
+        }
+
+        /** My rows. */
+        private final int _from, _to;
+
+        /** Stripes are never serialized; this keeps the compiler quiet. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Indices of the statistics yielded by a Stripe. */
+    private static final int CONVERTED = 0, LOW = 1, HIGH = 2,
+        TOPPLED = 3;
+    /** Most rows updated by one task. */
+    private static final int STRIPE_ROWS = 16;
+
+    /** The pool on which rounds run. */
+    private final ForkJoinPool _pool;
+    /** Squares jumping in the current round. */
+    private boolean[] _flags;
+    /** Squares jumping in the next round.  All false at the start of a
+     *  round. */
+    private boolean[] _next;
+    /** The board being resolved. */
+    private int[] _cells;
+    /** Size of the board being resolved. */
+    private int _N;
+    /** Color ordinal of the mover. */
+    private int _player;
+    /** Number of jumps made by the last resolve. */
+    private int _topples;
+    /** Bounds of the rows changed by the last resolve. */
+    private int _lowRow, _highRow;
+
+}
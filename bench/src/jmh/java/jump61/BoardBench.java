@@ -0,0 +1,120 @@
+package jump61;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of MutableBoard: making and taking back moves, cascades,
+ *  and printing.
+ *  @author Austin Gandy
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BoardBench {
+
+    /** A position and a move in it. */
+    @State(Scope.Thread)
+    public static class Move {
+        /** Board size. */
+        @Param({ "4", "6", "10", "32" })
+        int size;
+
+        /** Kind of move: "quiet" (no square jumps) or "cascade" (from a
+         *  random middle-game position). */
+        @Param({ "quiet", "cascade" })
+        String kind;
+
+        /** The position. */
+        MutableBoard position;
+        /** The move. */
+        int row, col;
+
+        /** Build the fixture. */
+        @Setup
+        public void setUp() {
+            int sq;
+            if (kind.equals("quiet")) {
+                position = Fixtures.quiet(size);
+                sq = Fixtures.quietMove(position, new Random(Fixtures.SEED));
+            } else {
+                position = Fixtures.loaded(size);
+                sq = Fixtures.cascadeMove(position);
+            }
+            row = sq / size + 1;
+            col = sq % size + 1;
+        }
+    }
+
+    /** A saturated position and a move by red in it. */
+    @State(Scope.Thread)
+    public static class Saturated {
+        /** Board size. */
+        @Param({ "4", "6", "10", "32" })
+        int size;
+
+        /** The position. */
+        MutableBoard position;
+        /** The move. */
+        int row, col;
+
+        /** Build the fixture. */
+        @Setup
+        public void setUp() {
+            position = Fixtures.saturated(size);
+            int sq = Fixtures.cascadeMove(position);
+            row = sq / size + 1;
+            col = sq % size + 1;
+        }
+    }
+
+    /** A position to print. */
+    @State(Scope.Thread)
+    public static class Printed {
+        /** Board size. */
+        @Param({ "4", "6", "10", "32" })
+        int size;
+
+        /** The position. */
+        MutableBoard position;
+
+        /** Build the fixture. */
+        @Setup
+        public void setUp() {
+            position = Fixtures.quiet(size);
+        }
+    }
+
+    /** Make a move and take it back. */
+    @Benchmark
+    public int addSpotUndo(Move m) {
+        m.position.addSpot(m.position.whoseMove(), m.row, m.col);
+        int red = m.position.getNumRed();
+        m.position.undo();
+        return red;
+    }
+
+    /** Set off a cascade over a whole saturated board, and take it
+     *  back. */
+    @Benchmark
+    public int jump(Saturated s) {
+        s.position.addSpot(Color.RED, s.row, s.col);
+        int red = s.position.getNumRed();
+        s.position.undo();
+        return red;
+    }
+
+    /** Print the position. */
+    @Benchmark
+    public String boardToString(Printed p) {
+        return p.position.toString();
+    }
+
+}
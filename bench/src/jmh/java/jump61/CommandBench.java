@@ -0,0 +1,47 @@
+package jump61;
+
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmark of reading, parsing, and dispatching commands: a script of
+ *  LINES commands run by a batch-mode Game.  Results are per command.
+ *  @author Austin Gandy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CommandBench {
+
+    /** Commands per script. */
+    static final int LINES = 1000;
+
+    /** The script. */
+    private String _script;
+
+    /** Build the fixtures. */
+    @Setup
+    public void setUp() {
+        _script = Fixtures.script(LINES);
+    }
+
+    /** Run the script. */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int parseAndExecute() {
+        Game game = Game.batch(new StringReader(_script), Writer.nullWriter(),
+                               Writer.nullWriter());
+        game.play();
+        return game.commandCount();
+    }
+
+}
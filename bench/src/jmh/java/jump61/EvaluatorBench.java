@@ -0,0 +1,53 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of the Evaluator selected for the JVM: counting the squares
+ *  of each color, as a board does after a cascade.  Run with
+ *  -Psimd=false to measure the scalar Evaluator instead of the vectorized
+ *  one.
+ *  @author Austin Gandy
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EvaluatorBench {
+
+    /** The squares of a position. */
+    @State(Scope.Thread)
+    public static class Cells {
+        /** Board size. */
+        @Param({ "6", "16" })
+        int size;
+
+        /** The squares, encoded as by MutableBoard.cell. */
+        int[] cells;
+        /** The Evaluator measured. */
+        Evaluator eval;
+
+        /** Build the fixture. */
+        @Setup
+        public void setUp() {
+            cells = Arrays.copyOf(Fixtures.loaded(size).getCells(),
+                                  size * size);
+            eval = Evaluator.get();
+        }
+    }
+
+    /** Count the red and the blue squares. */
+    @Benchmark
+    public int countColors(Cells c) {
+        return c.eval.count(c.cells, c.cells.length, Color.RED)
+            - c.eval.count(c.cells, c.cells.length, Color.BLUE);
+    }
+
+}
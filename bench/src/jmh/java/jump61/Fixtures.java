@@ -0,0 +1,120 @@
+package jump61;
+
+import java.util.Random;
+
+/** Positions and scripts used by the benchmarks.  Each is built from a
+ *  fixed seed, so that every run (on any machine) measures the same
+ *  work.
+ *  @author Austin Gandy
+ */
+final class Fixtures {
+
+    /** Seed from which all fixtures are built. */
+    static final long SEED = 61;
+
+    /** Not instantiable. */
+    private Fixtures() {
+    }
+
+    /** Return a SIZE x SIZE position reached by SIZE * SIZE random moves
+     *  none of which makes its square jump, so that about half the board is
+     *  occupied by squares that are not yet full. */
+    static MutableBoard quiet(int size) {
+        Random random = new Random(SEED + size);
+        MutableBoard b = new MutableBoard(size);
+        for (int k = 0; k < size * size; k += 1) {
+            int sq = quietMove(b, random);
+            if (sq < 0) {
+                break;
+            }
+            b.addSpot(b.whoseMove(), sq);
+        }
+        return new MutableBoard(b);
+    }
+
+    /** Return a SIZE x SIZE position reached by random moves, in which the
+     *  player to move has a move that makes its square jump and the game is
+     *  not over. */
+    static MutableBoard loaded(int size) {
+        Random random = new Random(SEED + size);
+        MutableBoard b = new MutableBoard(size);
+        for (int k = 0; k < 2 * size * size || cascadeMove(b) < 0; k += 1) {
+            int sq;
+            do {
+                sq = random.nextInt(size * size);
+            } while (!b.isLegal(b.whoseMove(), sq / size + 1,
+                                sq % size + 1));
+            b.addSpot(b.whoseMove(), sq / size + 1, sq % size + 1);
+            if (b.getWinner() != null) {
+                b.undo();
+            }
+        }
+        return new MutableBoard(b);
+    }
+
+    /** Return a SIZE x SIZE position in which every square is full, the
+     *  squares being colored red or blue at random, with red to move.  Any
+     *  move then sets off a cascade over the whole board. */
+    static MutableBoard saturated(int size) {
+        Random random = new Random(SEED + size);
+        MutableBoard b = new MutableBoard(size);
+        for (int r = 1; r <= size; r += 1) {
+            for (int c = 1; c <= size; c += 1) {
+                Color color = (r + c) % 2 == 0 || random.nextBoolean()
+                    ? Color.RED : Color.BLUE;
+                b.set(r, c, b.neighbors(r, c), color);
+            }
+        }
+        b.set(size, size, b.neighbors(size, size), Color.BLUE);
+        b.setCurrentPlayer(Color.RED);
+        return new MutableBoard(b);
+    }
+
+    /** Return the square number of a move on B, chosen using RANDOM, that
+     *  is legal for the player to move and does not make its square jump,
+     *  or -1 if there is none. */
+    static int quietMove(Board b, Random random) {
+        int N = b.size(), start = random.nextInt(N * N);
+        for (int k = 0; k < N * N; k += 1) {
+            int sq = (start + k) % (N * N), r = sq / N + 1, c = sq % N + 1;
+            if (b.isLegal(b.whoseMove(), r, c)
+                && b.spots(r, c) < b.neighbors(r, c)) {
+                return sq;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the square number of the first move on B that is legal for
+     *  the player to move and makes its square jump, or -1 if there is
+     *  none. */
+    static int cascadeMove(Board b) {
+        int N = b.size();
+        for (int sq = 0; sq < N * N; sq += 1) {
+            int r = sq / N + 1, c = sq % N + 1;
+            if (b.color(r, c) == b.whoseMove()
+                && b.spots(r, c) == b.neighbors(r, c)) {
+                return sq;
+            }
+        }
+        return -1;
+    }
+
+    /** Return a script of LINES command lines (other than moves) of the
+     *  kinds a session typically contains, ending with 'quit'. */
+    static String script(int lines) {
+        String[] commands = {
+            "# a comment", "prune lmr on", "prune lmr off", "seed 17",
+            "3 4", "manual red", "move 5", "size 6", "set 2 2 1 r",
+        };
+        Random random = new Random(SEED);
+        StringBuilder script = new StringBuilder();
+        for (int k = 0; k < lines - 1; k += 1) {
+            script.append(commands[random.nextInt(commands.length)]);
+            script.append('\n');
+        }
+        script.append("quit\n");
+        return script.toString();
+    }
+
+}
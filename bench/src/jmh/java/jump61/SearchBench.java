@@ -0,0 +1,50 @@
+package jump61;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of AI search (minimax with alpha-beta pruning) to fixed
+ *  depths.  Size 32 is left out: even depth 2 there takes seconds per
+ *  search.
+ *  @author Austin Gandy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBench {
+
+    /** Board size. */
+    @Param({ "4", "6", "10" })
+    int size;
+
+    /** Search depth. */
+    @Param({ "1", "2", "3" })
+    int depth;
+
+    /** Position searched. */
+    private MutableBoard _position;
+    /** The searcher. */
+    private AI _ai;
+
+    /** Build the fixtures. */
+    @Setup
+    public void setUp() {
+        _position = Fixtures.quiet(size);
+        _ai = new AI(_position.whoseMove(), depth);
+    }
+
+    /** Choose a move. */
+    @Benchmark
+    public int[] chooseMove() {
+        return _ai.chooseMove(_position);
+    }
+
+}